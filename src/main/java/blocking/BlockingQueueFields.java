@@ -0,0 +1,98 @@
+package blocking;
+
+import java.util.AbstractQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Field layout of {@link MostRecentlyInsertedBlockingQueue}.
+ * <p>
+ * Takers only touch the take side and putters the put side, but the two
+ * would still contend if their fields shared a cache line. Superclass fields
+ * come before subclass fields in HotSpot's layout, so the padding classes in
+ * between keep the two sides 128 bytes apart. The locks and conditions
+ * themselves are separate heap objects and are not padded.
+ */
+final class BlockingQueueFields {
+
+    private BlockingQueueFields() {
+    }
+
+    abstract static class Pad0<E> extends AbstractQueue<E> {
+        long p000, p001, p002, p003, p004, p005, p006, p007;
+        long p008, p009, p010, p011, p012, p013, p014, p015;
+    }
+
+    abstract static class TakeSide<E> extends Pad0<E> {
+        /**
+         * Head of linked list, written under takeLock and read without
+         * locks by traversals.
+         * Invariant: head.item == null
+         */
+        volatile Node<E> head;
+
+        /**
+         * Lock held by take, poll, etc
+         */
+        final ReentrantLock takeLock = new ReentrantLock();
+
+        /**
+         * Wait queue for waiting takes
+         */
+        final Condition notEmpty = takeLock.newCondition();
+
+        /**
+         * Number of elements ever removed, written only under takeLock
+         */
+        volatile long takeCount;
+
+        /**
+         * Smallest element count a waiting drain needs, 0 if none waits;
+         * written only under takeLock
+         */
+        volatile int awaitedCount;
+
+        /**
+         * Number of drains waiting for their minimum, guarded by takeLock
+         */
+        int drainWaiters;
+
+        /**
+         * Journal sequence of the last head removal, guarded by takeLock
+         */
+        long removalSequence;
+    }
+
+    abstract static class Pad1<E> extends TakeSide<E> {
+        long p100, p101, p102, p103, p104, p105, p106, p107;
+        long p108, p109, p110, p111, p112, p113, p114, p115;
+    }
+
+    abstract static class PutSide<E> extends Pad1<E> {
+        /**
+         * Tail of linked list.
+         * Invariant: last.next == null
+         */
+        Node<E> tail;
+
+        /**
+         * Lock held by put, offer, etc
+         */
+        final ReentrantLock putLock = new ReentrantLock();
+
+        /**
+         * Wait queue for waiting puts
+         */
+        final Condition notFull = putLock.newCondition();
+
+        /**
+         * Number of elements ever inserted, written only under putLock
+         */
+        volatile long putCount;
+    }
+
+    abstract static class Pad2<E> extends PutSide<E> {
+        long p200, p201, p202, p203, p204, p205, p206, p207;
+        long p208, p209, p210, p211, p212, p213, p214, p215;
+    }
+}
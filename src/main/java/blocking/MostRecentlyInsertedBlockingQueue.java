@@ -1,106 +1,213 @@
 package blocking;
 
-import java.util.AbstractQueue;
+import checkpoint.CheckpointReader;
+import checkpoint.CheckpointWriter;
+import checkpoint.ElementCodec;
+import events.EvictionEvent;
+import events.QueueWaitEvent;
+import summary.QueueListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
-public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
+public class MostRecentlyInsertedBlockingQueue<E> extends BlockingQueueFields.Pad2<E>
         implements BlockingQueue<E> {
 
     /**
-     * Linked list node class
+     * Number of elements copied per lock acquisition while writing a checkpoint
      */
-    private static class Node<E> {
-        E item;
-        Node<E> next;
-
-        public Node(E item) {
-            this.item = item;
-        }
-    }
+    private static final int CHECKPOINT_BATCH = 1024;
 
     /**
-     * Head of linked list.
-     * Invariant: head.item == null
+     * Capacity bound, changed only while holding both locks
      */
-    Node<E> head;
+    private volatile int capacity;
 
     /**
-     * Tail of linked list.
-     * Invariant: last.next == null
+     * Write-ahead journal, or null if the queue is not persistent
      */
-    private Node<E> tail;
+    private final QueueJournal<E> journal;
 
     /**
-     * Current number of elements
+     * Overflow storage, or null if a full queue evicts its oldest element
      */
-    private final AtomicInteger amountOfElements = new AtomicInteger();
+    private final SpillStore<E> spill;
 
     /**
-     * Capacity bound
+     * Told about every element entering and leaving, or null
      */
-    private final int capacity;
+    private volatile QueueListener<? super E> listener;
 
     /**
-     * Lock held by take, poll, etc
+     * Signals a waiting take. Called only from put/offer (which do not
+     * otherwise ordinarily lock takeLock.)
      */
-    private final ReentrantLock takeLock = new ReentrantLock();
+    private void signalNotEmpty() {
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            wakeTakers();
+        } finally {
+            takeLock.unlock();
+        }
+    }
 
     /**
-     * Wait queue for waiting takes
+     * Wakes a waiting take, or every waiter while a drain waits: a drain
+     * still short of its minimum waits again without passing the signal
+     * on, which would leave a take asleep beside a queued element. Called
+     * with takeLock held.
      */
-    private final Condition notEmpty = takeLock.newCondition();
+    private void wakeTakers() {
+        if (drainWaiters > 0)
+            notEmpty.signalAll();
+        else
+            notEmpty.signal();
+    }
 
     /**
-     * Lock held by put, offer, etc
+     * Signals a waiting put. Called only from take/poll.
      */
-    private final ReentrantLock putLock = new ReentrantLock();
+    private void signalNotFull() {
+        final ReentrantLock putLock = this.putLock;
+        putLock.lock();
+        try {
+            freedSpace();
+        } finally {
+            putLock.unlock();
+        }
+    }
 
     /**
-     * Wait queue for waiting puts
+     * Moves spilled elements back into the space removals freed, if any
+     * were spilled, and signals a waiting put. Called while holding putLock.
      */
-    private final Condition notFull = putLock.newCondition();
+    private void freedSpace() {
+        if (spill != null)
+            refill();
+        notFull.signal();
+    }
 
     /**
-     * Signals a waiting take. Called only from put/offer (which do not
-     * otherwise ordinarily lock takeLock.)
+     * Moves as many spilled elements as fit to the tail, signalling takers
+     * as an insertion would. Called while holding putLock, and possibly
+     * takeLock.
      */
-    private void signalNotEmpty() {
-        final ReentrantLock takeLock = this.takeLock;
-        takeLock.lock();
-        try {
-            notEmpty.signal();
-        } finally {
-            takeLock.unlock();
+    private void refill() {
+        int room = capacity - count();
+        if (room <= 0 || spill.isEmpty())
+            return;
+        Node<E> first = null;
+        Node<E> last = null;
+        int n = 0;
+        for (E item; n < room && (item = spill.poll()) != null; n++) {
+            Node<E> node = new Node<>(item);
+            if (first == null)
+                first = node;
+            else
+                last.next = node;
+            last = node;
         }
+        insertChainToTail(first, last);
+        if (shouldSignal(inserted(n), n))
+            signalNotEmpty();
     }
 
     /**
-     * Signals a waiting put. Called only from take/poll.
+     * Inserts in overflow mode: into memory while it has room and nothing
+     * is spilled, otherwise at the end of the spill. When the spill is full
+     * too, the oldest element is evicted and the oldest spilled one takes
+     * its place in memory.
      */
-    private void signalNotFull() {
+    private void offerSpilling(E item) {
+        boolean signal = false;
         final ReentrantLock putLock = this.putLock;
         putLock.lock();
         try {
-            notFull.signal();
+            if (!spill.isEmpty() || count() == capacity) {
+                refill();
+                if (spill.isFull()) {
+                    evictHead();
+                    refill();
+                }
+            }
+            if (spill.isEmpty() && count() < capacity) {
+                insertItemToTail(new Node<>(item));
+                signal = shouldSignal(inserted(1), 1);
+            } else {
+                spill.append(item);
+            }
         } finally {
             putLock.unlock();
         }
+        if (signal)
+            signalNotEmpty();
     }
 
     /**
-     * Links node at end of queue.
+     * Returns whether takers must be woken after {@code n} insertions into
+     * a queue that held {@code before} elements: the queue was empty, or
+     * the minimum a waiting {@link #drain} asked for was just reached.
+     */
+    private boolean shouldSignal(int before, int n) {
+        if (before == 0)
+            return true;
+        int awaited = awaitedCount;
+        return before < awaited && before + n >= awaited;
+    }
+
+    /**
+     * Links node at end of queue. The insertion is journaled before the
+     * node becomes visible to takers, so a removal is never journaled
+     * ahead of the insertion it undoes.
      *
      * @param node the node
+     * @return the journal sequence of the insertion, 0 without journal
      */
-    private void insertItemToTail(Node<E> node) {
-        tail = tail.next = node;
+    private long insertItemToTail(Node<E> node) {
+        long sequence = journal == null ? 0 : journal.append(QueueJournal.ADD, node.item, 0);
+        QueueListener.reportInserted(listener, node.item);
+        tail.publishNext(node);
+        tail = node;
+        return sequence;
+    }
+
+    /**
+     * Links a chain of nodes at end of queue, journaling every insertion
+     * first, like {@link #insertItemToTail}.
+     *
+     * @return the journal sequence of the last insertion, 0 without journal
+     */
+    private long insertChainToTail(Node<E> first, Node<E> last) {
+        long sequence = 0;
+        if (journal != null) {
+            for (Node<E> p = first; p != null; p = p.next) {
+                sequence = journal.append(QueueJournal.ADD, p.item, 0);
+            }
+        }
+        QueueListener<? super E> l = listener;
+        for (Node<E> p = first; l != null && p != null; p = p.next) {
+            QueueListener.reportInserted(l, p.item);
+        }
+        tail.publishNext(first);
+        tail = last;
+        return sequence;
     }
 
     /**
@@ -109,15 +216,133 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
      * @return the node
      */
     private E removeNodeFromHead() {
+        return removeNodeFromHead(QueueJournal.REMOVE);
+    }
+
+    /**
+     * Removes a node from head of queue, journaling the removal as the
+     * given record type.
+     *
+     * @return the node
+     */
+    private E removeNodeFromHead(byte recordType) {
+        if (journal != null)
+            removalSequence = journal.append(recordType, null, 0);
         Node<E> h = head;
         Node<E> first = h.next;
         h.next = h; // help GC
         head = first;
         E x = first.item;
         first.item = null;
+        if (recordType == QueueJournal.EVICT)
+            QueueListener.reportEvicted(listener, x);
+        else
+            QueueListener.reportRemoved(listener, x);
         return x;
     }
 
+    /**
+     * Removes the head to make room for a new element. Called only from
+     * offer while holding putLock.
+     *
+     * @return the journal sequence of the eviction, 0 without journal
+     */
+    private long evictHead() {
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            if (count() == 0)
+                return 0;
+            removeNodeFromHead(QueueJournal.EVICT);
+            removed(1);
+            EvictionEvent.emit(this, capacity, 1);
+            return removalSequence;
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes as many head elements as {@code incoming} new ones would
+     * overflow the capacity by, in one takeLock acquisition. Called only
+     * from offerAll while holding putLock.
+     *
+     * @param skipped  elements of the batch evicted before they were linked,
+     *                 for the eviction event
+     * @param capacity the capacity read under putLock
+     */
+    private void evictSurplus(int incoming, int skipped, int capacity) {
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            int surplus = Math.max(0, count() + incoming - capacity);
+            for (int i = 0; i < surplus; i++) {
+                removeNodeFromHead(QueueJournal.EVICT);
+            }
+            if (surplus > 0)
+                removed(surplus);
+            if (surplus + skipped > 0)
+                EvictionEvent.emit(this, capacity, surplus + skipped);
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the journal holds the operation with the given sequence
+     * (as the fsync policy requires) and compacts the journal when it grew
+     * too long. Called without holding any lock.
+     */
+    private void commit(long sequence) {
+        if (journal == null)
+            return;
+        journal.awaitDurable(sequence);
+        if (journal.needsCompaction(capacity)) {
+            fullyLock();
+            try {
+                if (journal.needsCompaction(capacity))
+                    journal.compact(new Itr());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                fullyUnlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of elements. The take count is read first, so the
+     * result is exact under putLock (it can only drop meanwhile) as well as
+     * under takeLock (it can only grow meanwhile).
+     */
+    private int count() {
+        long removed = takeCount;
+        return (int) (putCount - removed);
+    }
+
+    /**
+     * Counts insertions. Called only while holding putLock.
+     *
+     * @return the number of elements before the insertions
+     */
+    private int inserted(int n) {
+        long p = putCount + n;
+        putCount = p;
+        // read after the write, so that a taker that saw no element is signalled
+        return (int) (p - n - takeCount);
+    }
+
+    /**
+     * Counts removals. Called only while holding takeLock.
+     *
+     * @return the number of elements before the removals
+     */
+    private int removed(int n) {
+        long t = takeCount;
+        takeCount = t + n;
+        return (int) (putCount - t);
+    }
+
     /**
      * Locks to prevent both puts and takes.
      */
@@ -143,7 +368,164 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
      */
     public MostRecentlyInsertedBlockingQueue(int capacity) {
         this.capacity = capacity;
+        this.journal = null;
+        this.spill = null;
+        tail = head = new Node<>(null);
+    }
+
+    /**
+     * Creates a queue that spills instead of evicting when it is full.
+     * The elements beyond the capacity are appended to the store and moved
+     * back into memory as takes make room, so takes still see every element
+     * in FIFO order. Inserting never blocks; once the store is full as well,
+     * every insertion evicts the oldest element. Iterators, {@code toArray},
+     * the bulk removals and checkpoints only see the elements in memory;
+     * {@link #size()} counts the spilled ones too.
+     *
+     * @param capacity the number of elements kept in memory
+     * @param spill    where the elements beyond the capacity go
+     */
+    public MostRecentlyInsertedBlockingQueue(int capacity, SpillStore<E> spill) {
+        if (spill == null)
+            throw new NullPointerException("Spill store can not be null!");
+        this.capacity = capacity;
+        this.journal = null;
+        this.spill = spill;
+        tail = head = new Node<>(null);
+    }
+
+    /**
+     * Creates a persistent queue with the given (fixed) capacity.
+     * The contents are restored by replaying the journal, which is then
+     * compacted to the restored window. Every later operation is journaled.
+     *
+     * @param capacity the capacity of this queue
+     * @param journal  the journal to replay and append to
+     * @throws IOException if the journal can not be read or compacted
+     */
+    public MostRecentlyInsertedBlockingQueue(int capacity, QueueJournal<E> journal) throws IOException {
+        if (journal == null)
+            throw new NullPointerException("Journal can not be null!");
+        this.capacity = capacity;
         tail = head = new Node<>(null);
+        LinkedList<E> items = journal.replay();
+        while (items.size() > capacity) {
+            items.removeFirst();
+        }
+        for (E item : items) {
+            tail = tail.next = new Node<>(item);
+        }
+        putCount = items.size();
+        journal.compact(items.iterator());
+        this.journal = journal;
+        this.spill = null;
+    }
+
+    /**
+     * Sets the listener told about every element that enters or leaves the
+     * memory of this queue, for example a
+     * {@link summary.Summaries#window window summary}. Elements already in
+     * the queue are not reported. The listener runs while a lock of this
+     * queue is held. In overflow mode an element is reported as inserted
+     * when it is moved from the spill store into memory, and {@link #clear()}
+     * does not report the spilled elements it discards.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setListener(QueueListener<? super E> listener) {
+        this.listener = listener;
+    }
+
+    private void reportRemoved(E item) {
+        QueueListener.reportRemoved(listener, item);
+    }
+
+    /**
+     * Returns the number of elements this queue keeps in memory.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns whether this queue is in overflow mode, spilling what does
+     * not fit to a {@link SpillStore} instead of evicting it.
+     */
+    public boolean isSpilling() {
+        return spill != null;
+    }
+
+    /**
+     * Changes the capacity. Shrinking evicts the oldest elements that no
+     * longer fit, as a full queue's offers do; growing wakes the puts
+     * waiting for space.
+     *
+     * @param capacity the new capacity
+     * @throws IllegalArgumentException      if {@code capacity} is not positive
+     * @throws UnsupportedOperationException in overflow mode, where the
+     *                                       elements beyond the capacity would
+     *                                       have to go to the front of the
+     *                                       spill store
+     */
+    public void setCapacity(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+        if (spill != null)
+            throw new UnsupportedOperationException("Can not resize a spilling queue");
+        long sequence = 0;
+        fullyLock();
+        try {
+            int surplus = count() - capacity;
+            for (int i = 0; i < surplus; i++) {
+                removeNodeFromHead(QueueJournal.EVICT);
+                sequence = removalSequence;
+            }
+            if (surplus > 0) {
+                removed(surplus);
+                EvictionEvent.emit(this, capacity, surplus);
+            }
+            this.capacity = capacity;
+            if (count() < capacity)
+                notFull.signalAll();
+        } finally {
+            fullyUnlock();
+        }
+        commit(sequence);
+    }
+
+    /**
+     * Returns the number of threads waiting in {@code put} or
+     * {@code putAll} for space.
+     */
+    public int waitingProducers() {
+        final ReentrantLock putLock = this.putLock;
+        putLock.lock();
+        try {
+            return putLock.getWaitQueueLength(notFull);
+        } finally {
+            putLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of threads waiting in {@code take}, {@code poll}
+     * or {@code drain} for elements.
+     */
+    public int waitingConsumers() {
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            return takeLock.getWaitQueueLength(notEmpty);
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the listener set by {@link #setListener}, or null.
+     */
+    public QueueListener<? super E> getListener() {
+        return listener;
     }
 
     /**
@@ -152,7 +534,8 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
      * @return the number of elements in this queue
      */
     public int size() {
-        return amountOfElements.get();
+        int inMemory = Math.max(0, Math.min(capacity, count()));
+        return spill == null ? inMemory : (int) Math.min(Integer.MAX_VALUE, inMemory + spill.size());
     }
 
     /**
@@ -164,11 +547,15 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
      */
     public void put(E item) throws InterruptedException {
         checkNotNull(item);
+        if (spill != null) {
+            offerSpilling(item);
+            return;
+        }
 
         int c = -1;
+        long sequence;
         Node<E> node = new Node<>(item);
         final ReentrantLock putLock = this.putLock;
-        final AtomicInteger count = this.amountOfElements;
         putLock.lockInterruptibly();
         try {
             /*
@@ -179,61 +566,74 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
              * signalled if it ever changes from capacity. Similarly
              * for all other uses of count in other wait guards.
              */
-            while (count.get() == capacity) {
+            QueueWaitEvent wait = null;
+            while (count() == capacity) {
+                if (wait == null)
+                    wait = QueueWaitEvent.start();
                 notFull.await();
             }
-            insertItemToTail(node);
-            c = count.getAndIncrement();
+            if (wait != null)
+                wait.finish(this, "put", capacity, size());
+            sequence = insertItemToTail(node);
+            c = inserted(1);
             if (c + 1 < capacity)
                 notFull.signal();
         } finally {
             putLock.unlock();
         }
-        if (c == 0)
+        if (shouldSignal(c, 1))
             signalNotEmpty();
-
+        commit(sequence);
     }
 
     /**
-     * Inserts the specified element at the tail of this queue, waiting if
-     * necessary up to the specified wait time for space to become available.
+     * Inserts the specified element at the tail of this queue, evicting the
+     * head if the queue is full. It never waits: a positive timeout only
+     * allows the eviction.
      *
-     * @return {@code true} if successful, or {@code false} if
-     * the specified waiting time elapses before space is available
+     * @return {@code true} if successful, or {@code false} if the queue is
+     * full and the timeout is not positive
      * @throws InterruptedException {@inheritDoc}
      * @throws NullPointerException {@inheritDoc}
      */
     public boolean offer(E item, long timeout, TimeUnit unit) throws InterruptedException {
         checkNotNull(item);
+        if (spill != null) {
+            offerSpilling(item);
+            return true;
+        }
 
         long nanos = unit.toNanos(timeout);
         putLock.lock();
         Node<E> node = new Node<>(item);
         final ReentrantLock putLock = this.putLock;
 
-        if (amountOfElements.intValue() < capacity) {
+        long sequence;
+        boolean signal = false;
+        if (count() < capacity) {
             try {
-                insertItemToTail(node);
-                amountOfElements.getAndIncrement();
+                sequence = insertItemToTail(node);
+                signal = shouldSignal(inserted(1), 1);
             } finally {
                 putLock.unlock();
             }
-            return true;
         } else {
             try {
                 if (nanos <= 0) {
                     return false;
                 }
                 signalNotEmpty();
-                poll();
-                insertItemToTail(node);
-                amountOfElements.incrementAndGet();
-                notFull.awaitNanos(nanos);
+                evictHead();
+                sequence = insertItemToTail(node);
+                inserted(1);
             } finally {
                 putLock.unlock();
             }
-            return true;
         }
+        if (signal)
+            signalNotEmpty();
+        commit(sequence);
+        return true;
     }
 
     /**
@@ -243,29 +643,170 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
      */
     public boolean offer(E item) {
         checkNotNull(item);
+        if (spill != null) {
+            offerSpilling(item);
+            return true;
+        }
 
         putLock.lock();
         Node<E> node = new Node<>(item);
         final ReentrantLock putLock = this.putLock;
 
-        if (amountOfElements.intValue() < capacity) {
+        long sequence;
+        boolean signal = false;
+        if (count() < capacity) {
             try {
-                insertItemToTail(node);
-                amountOfElements.getAndIncrement();
+                sequence = insertItemToTail(node);
+                signal = shouldSignal(inserted(1), 1);
             } finally {
                 putLock.unlock();
             }
-            return true;
         } else {
             try {
                 signalNotEmpty();
-                poll();
-                insertItemToTail(node);
-                amountOfElements.incrementAndGet();
+                evictHead();
+                sequence = insertItemToTail(node);
+                inserted(1);
             } finally {
                 putLock.unlock();
             }
-            return true;
+        }
+        if (signal)
+            signalNotEmpty();
+        commit(sequence);
+        return true;
+    }
+
+    /**
+     * Inserts all elements of the collection at the tail of this queue, in
+     * iteration order, evicting the oldest elements to make room. The nodes
+     * are built before locking; the whole chain is linked and the surplus
+     * evicted under one putLock acquisition, and waiting takers are
+     * signalled once. Of a collection larger than the capacity only the
+     * last {@code capacity} elements are linked; the listener is told the
+     * others were inserted and evicted at once.
+     *
+     * @return {@code true} if this queue changed
+     * @throws NullPointerException if the collection or any of its elements
+     *                              is null; the queue is then left unchanged
+     */
+    public boolean offerAll(Collection<? extends E> c) {
+        if (spill != null)
+            return offerAllSpilling(c);
+        Node<E>[] nodes = chain(c.toArray());
+        if (nodes.length == 0)
+            return false;
+        boolean signal;
+        long sequence;
+        final ReentrantLock putLock = this.putLock;
+        putLock.lock();
+        try {
+            // setCapacity holds putLock too, so the batch is cut to the capacity it is linked under
+            int capacity = this.capacity;
+            int skipped = Math.max(0, nodes.length - capacity);
+            int linked = nodes.length - skipped;
+            evictSurplus(linked, skipped, capacity);
+            reportSkipped(nodes, skipped);
+            sequence = insertChainToTail(nodes[skipped], nodes[nodes.length - 1]);
+            signal = shouldSignal(inserted(linked), linked);
+        } finally {
+            putLock.unlock();
+        }
+        if (signal)
+            signalNotEmpty();
+        commit(sequence);
+        return true;
+    }
+
+    /**
+     * Inserts all elements of the collection at the tail of this queue, in
+     * iteration order, waiting for space as necessary; nothing is evicted.
+     * Every time space is available, as many elements as fit are linked
+     * under one putLock acquisition, with at most one signal to takers.
+     * If interrupted, the elements inserted so far stay in the queue.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws NullPointerException if the collection or any of its elements
+     *                              is null; the queue is then left unchanged
+     */
+    public void putAll(Collection<? extends E> c) throws InterruptedException {
+        if (spill != null) {
+            offerAllSpilling(c);
+            return;
+        }
+        Node<E>[] nodes = chain(c.toArray());
+        final ReentrantLock putLock = this.putLock;
+        for (int from = 0; from < nodes.length; ) {
+            int before;
+            int linked;
+            long sequence;
+            putLock.lockInterruptibly();
+            try {
+                QueueWaitEvent wait = null;
+                while (count() == capacity) {
+                    if (wait == null)
+                        wait = QueueWaitEvent.start();
+                    notFull.await();
+                }
+                if (wait != null)
+                    wait.finish(this, "putAll", capacity, size());
+                linked = Math.min(nodes.length - from, capacity - count());
+                nodes[from + linked - 1].next = null;
+                sequence = insertChainToTail(nodes[from], nodes[from + linked - 1]);
+                before = inserted(linked);
+                if (before + linked < capacity)
+                    notFull.signal();
+            } finally {
+                putLock.unlock();
+            }
+            from += linked;
+            if (shouldSignal(before, linked))
+                signalNotEmpty();
+            commit(sequence);
+        }
+    }
+
+    /**
+     * Inserts the elements one at a time in overflow mode, after checking
+     * them all for null.
+     */
+    private boolean offerAllSpilling(Collection<? extends E> c) {
+        Node<E>[] nodes = chain(c.toArray());
+        for (Node<E> node : nodes) {
+            offerSpilling(node.item);
+        }
+        return nodes.length > 0;
+    }
+
+    /**
+     * Builds the linked nodes of the items, without locking, after checking
+     * them all for null.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> Node<E>[] chain(Object[] items) {
+        for (Object item : items) {
+            checkNotNull(item);
+        }
+        Node<E>[] nodes = (Node<E>[]) new Node<?>[items.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node<>((E) items[i]);
+            if (i > 0)
+                nodes[i - 1].next = nodes[i];
+        }
+        return nodes;
+    }
+
+    /**
+     * Reports the first {@code skipped} nodes, which offerAll evicts before
+     * linking them, as inserted and evicted. Called while holding putLock,
+     * after the queue's own surplus was evicted, so that evictions are
+     * reported oldest first.
+     */
+    private void reportSkipped(Node<E>[] nodes, int skipped) {
+        QueueListener<? super E> l = listener;
+        for (int i = 0; l != null && i < skipped; i++) {
+            QueueListener.reportInserted(l, nodes[i].item);
+            QueueListener.reportEvicted(l, nodes[i].item);
         }
     }
 
@@ -273,47 +814,64 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
     public E take() throws InterruptedException {
         E x;
         int c = -1;
-        final AtomicInteger count = this.amountOfElements;
+        long sequence;
         final ReentrantLock takeLock = this.takeLock;
         takeLock.lockInterruptibly();
         try {
-            while (count.get() == 0) {
+            QueueWaitEvent wait = null;
+            while (count() == 0) {
+                if (wait == null)
+                    wait = QueueWaitEvent.start();
                 notEmpty.await();
             }
+            if (wait != null)
+                wait.finish(this, "take", capacity, size());
             x = removeNodeFromHead();
-            c = count.getAndDecrement();
+            sequence = removalSequence;
+            c = removed(1);
             if (c > 1)
-                notEmpty.signal();
+                wakeTakers();
         } finally {
             takeLock.unlock();
         }
         if (c == capacity)
             signalNotFull();
+        commit(sequence);
         return x;
     }
 
     public E poll(long timeout, TimeUnit unit) throws InterruptedException {
         E x = null;
         int c = -1;
+        long sequence;
         long nanos = unit.toNanos(timeout);
-        final AtomicInteger count = this.amountOfElements;
         final ReentrantLock takeLock = this.takeLock;
         takeLock.lockInterruptibly();
         try {
-            while (count.get() == 0) {
-                if (nanos <= 0)
+            QueueWaitEvent wait = null;
+            while (count() == 0) {
+                if (nanos <= 0) {
+                    if (wait != null)
+                        wait.finish(this, "poll", capacity, 0);
                     return null;
+                }
+                if (wait == null)
+                    wait = QueueWaitEvent.start();
                 nanos = notEmpty.awaitNanos(nanos);
             }
+            if (wait != null)
+                wait.finish(this, "poll", capacity, size());
             x = removeNodeFromHead();
-            c = count.getAndDecrement();
+            sequence = removalSequence;
+            c = removed(1);
             if (c > 1)
-                notEmpty.signal();
+                wakeTakers();
         } finally {
             takeLock.unlock();
         }
         if (c == capacity)
             signalNotFull();
+        commit(sequence);
         return x;
     }
 
@@ -324,25 +882,31 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
      * @throws NoSuchElementException if this queue is empty
      */
     public E poll() {
-        final AtomicInteger count = this.amountOfElements;
-        if (count.get() == 0)
-            throw new NoSuchElementException("Empty queue!!");
+        if (count() == 0) {
+            if (spill == null || spill.isEmpty())
+                throw new NoSuchElementException("Empty queue!!");
+            // a take made room, but has not refilled it yet
+            signalNotFull();
+        }
         E x = null;
         int c = -1;
+        long sequence = 0;
         final ReentrantLock takeLock = this.takeLock;
         takeLock.lock();
         try {
-            if (count.get() > 0) {
+            if (count() > 0) {
                 x = removeNodeFromHead();
-                c = count.getAndDecrement();
+                sequence = removalSequence;
+                c = removed(1);
                 if (c > 1)
-                    notEmpty.signal();
+                    wakeTakers();
             }
         } finally {
             takeLock.unlock();
         }
         if (c == capacity)
             signalNotFull();
+        commit(sequence);
         return x;
     }
 
@@ -353,8 +917,10 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
      * @throws NoSuchElementException if this queue is empty
      */
     public E peek() {
-        if (amountOfElements.get() == 0) {
-            throw new NoSuchElementException("Empty queue!!");
+        if (count() == 0) {
+            if (spill == null || spill.isEmpty())
+                throw new NoSuchElementException("Empty queue!!");
+            signalNotFull();
         }
 
         final ReentrantLock takeLock = this.takeLock;
@@ -375,15 +941,87 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
      * Unlinks interior Node p with predecessor trail.
      */
     void unlink(Node<E> p, Node<E> trail) {
+        splice(p, trail);
+        if (removed(1) == capacity)
+            freedSpace();
+    }
+
+    /**
+     * Unlinks interior Node p with predecessor trail, leaving the count
+     * to the caller.
+     */
+    private void splice(Node<E> p, Node<E> trail) {
         // assert isFullyLocked();
         // p.next is not changed, to allow iterators that are
         // traversing p to maintain their weak-consistency guarantee.
+        reportRemoved(p.item);
         p.item = null;
-        trail.next = p.next;
+        trail.publishNext(p.next);
         if (tail == p)
             tail = trail;
-        if (amountOfElements.getAndDecrement() == capacity)
-            notFull.signal();
+    }
+
+    /**
+     * Removes the elements matching the filter in a single traversal under
+     * one acquisition of both locks, signalling a waiting put at most once.
+     *
+     * @throws NullPointerException if the filter is null
+     */
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        return bulkRemove(filter);
+    }
+
+    /**
+     * Removes the elements contained in the collection in a single
+     * traversal, see {@link #removeIf}.
+     *
+     * @throws NullPointerException if the collection is null
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return bulkRemove(e -> c.contains(e));
+    }
+
+    /**
+     * Removes the elements not contained in the collection in a single
+     * traversal, see {@link #removeIf}.
+     *
+     * @throws NullPointerException if the collection is null
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return bulkRemove(e -> !c.contains(e));
+    }
+
+    private boolean bulkRemove(Predicate<? super E> filter) {
+        int removed = 0;
+        long sequence = 0;
+        fullyLock();
+        try {
+            int index = 0;
+            for (Node<E> trail = head, p = trail.next; p != null; p = p.next) {
+                if (filter.test(p.item)) {
+                    if (journal != null)
+                        sequence = journal.append(QueueJournal.REMOVE_AT, null, index);
+                    splice(p, trail);
+                    removed++;
+                } else {
+                    trail = p;
+                    index++;
+                }
+            }
+        } finally {
+            // count what was unlinked even if the filter threw
+            if (removed > 0 && removed(removed) == capacity)
+                freedSpace();
+            fullyUnlock();
+            commit(sequence);
+        }
+        return removed > 0;
     }
 
     /**
@@ -391,19 +1029,116 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
      * The queue will be empty after this call returns.
      */
     public void clear() {
+        long sequence = 0;
         fullyLock();
         try {
+            if (journal != null)
+                sequence = journal.append(QueueJournal.CLEAR, null, 0);
             for (Node<E> p, h = head; (p = h.next) != null; h = p) {
                 h.next = h;
+                reportRemoved(p.item);
                 p.item = null;
             }
             head = tail;
             // assert head.item == null && head.next == null;
-            if (amountOfElements.getAndSet(0) == capacity)
+            if (spill != null)
+                spill.clear();
+            if (removed(count()) == capacity)
                 notFull.signal();
         } finally {
             fullyUnlock();
         }
+        commit(sequence);
+    }
+
+    /**
+     * Removes at most {@code maxElements} elements into the collection,
+     * waiting up to the timeout for at least {@code minElements} of them.
+     * When the timeout elapses first, whatever is there (possibly nothing)
+     * is removed. The waiting happens on takeLock's condition, and producers
+     * signal it once when the minimum is reached rather than per element,
+     * so a whole batch costs one lock acquisition and about one wake-up.
+     * <p>
+     * Concurrent drains with different minimums share one threshold, the
+     * smallest, so a drain may wake up early and wait again. While a drain
+     * waits, every signal wakes all waiters, as the drain does not pass one
+     * on to a take.
+     *
+     * @param c           the collection to transfer elements into
+     * @param minElements the number of elements worth waiting for
+     * @param maxElements the maximum number of elements to transfer
+     * @param timeout     how long to wait for {@code minElements}
+     * @param unit        the unit of {@code timeout}
+     * @return the number of elements transferred
+     * @throws InterruptedException     if interrupted while waiting
+     * @throws NullPointerException     if the collection is null
+     * @throws IllegalArgumentException if the collection is this queue, or
+     *                                  {@code minElements} is greater than
+     *                                  {@code maxElements} or the capacity
+     */
+    public int drain(Collection<? super E> c, int minElements, int maxElements, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this || minElements > maxElements || minElements > capacity)
+            throw new IllegalArgumentException();
+        if (maxElements <= 0)
+            return 0;
+        boolean signalNotFull = false;
+        long sequence = 0;
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lockInterruptibly();
+        try {
+            if (count() < minElements && nanos > 0) {
+                QueueWaitEvent wait = QueueWaitEvent.start();
+                int awaited = awaitedCount;
+                awaitedCount = awaited == 0 ? minElements : Math.min(awaited, minElements);
+                drainWaiters++;
+                try {
+                    while (count() < minElements && nanos > 0) {
+                        nanos = notEmpty.awaitNanos(nanos);
+                    }
+                } finally {
+                    if (--drainWaiters == 0)
+                        awaitedCount = 0;
+                }
+                wait.finish(this, "drain", capacity, size());
+            }
+            int n = Math.min(maxElements, count());
+            // reading putCount provides visibility to first n Nodes
+            Node<E> h = head;
+            int i = 0;
+            try {
+                while (i < n) {
+                    Node<E> p = h.next;
+                    // journaled first, like poll: a failed append leaves the element only in the queue
+                    if (journal != null)
+                        sequence = journal.append(QueueJournal.REMOVE, null, 0);
+                    c.add(p.item);
+                    reportRemoved(p.item);
+                    p.item = null;
+                    h.next = h;
+                    h = p;
+                    ++i;
+                }
+                return n;
+            } finally {
+                // Restore invariants even if c.add() threw
+                if (i > 0) {
+                    head = h;
+                    int before = removed(i);
+                    signalNotFull = before == capacity;
+                    if (before > i)
+                        wakeTakers();
+                }
+            }
+        } finally {
+            takeLock.unlock();
+            if (signalNotFull)
+                signalNotFull();
+            commit(sequence);
+        }
     }
 
     /**
@@ -430,17 +1165,22 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
         if (maxElements <= 0)
             return 0;
         boolean signalNotFull = false;
+        long sequence = 0;
         final ReentrantLock takeLock = this.takeLock;
         takeLock.lock();
         try {
-            int n = Math.min(maxElements, amountOfElements.get());
-            // count.get provides visibility to first n Nodes
+            int n = Math.min(maxElements, count());
+            // reading putCount provides visibility to first n Nodes
             Node<E> h = head;
             int i = 0;
             try {
                 while (i < n) {
                     Node<E> p = h.next;
+                    // journaled first, like poll: a failed append leaves the element only in the queue
+                    if (journal != null)
+                        sequence = journal.append(QueueJournal.REMOVE, null, 0);
                     c.add(p.item);
+                    reportRemoved(p.item);
                     p.item = null;
                     h.next = h;
                     h = p;
@@ -452,13 +1192,14 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
                 if (i > 0) {
                     // assert h.item == null;
                     head = h;
-                    signalNotFull = (amountOfElements.getAndAdd(-i) == capacity);
+                    signalNotFull = (removed(i) == capacity);
                 }
             }
         } finally {
             takeLock.unlock();
             if (signalNotFull)
                 signalNotFull();
+            commit(sequence);
         }
     }
 
@@ -474,7 +1215,7 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
      * insert or remove an element.
      */
     public int remainingCapacity() {
-        return capacity - amountOfElements.get();
+        return capacity - Math.max(0, Math.min(capacity, count()));
     }
 
 
@@ -488,15 +1229,111 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
             throw new NullPointerException("You can't put a 'null' element");
     }
 
+    /**
+     * Writes the elements of this queue to the stream in FIFO order.
+     * <p>
+     * Both locks are held only while a batch of elements is copied, never
+     * while encoding or writing, so puts and takes proceed during the dump.
+     * The result is weakly consistent, like {@link #iterator()}.
+     *
+     * @param out   the stream, left open
+     * @param codec converts the elements to bytes
+     */
+    public void writeTo(OutputStream out, ElementCodec<? super E> codec) throws IOException {
+        writeTo(out, codec, false);
+    }
+
+    /**
+     * Writes the elements of this queue to the stream in FIFO order,
+     * optionally compressing every chunk.
+     */
+    public void writeTo(OutputStream out, ElementCodec<? super E> codec, boolean compress) throws IOException {
+        writeTo(new CheckpointWriter<E>(out, codec, compress));
+    }
+
+    /**
+     * Writes the elements of this queue to the channel in FIFO order.
+     */
+    public void writeTo(WritableByteChannel channel, ElementCodec<? super E> codec) throws IOException {
+        writeTo(channel, codec, false);
+    }
+
+    /**
+     * Writes the elements of this queue to the channel in FIFO order,
+     * optionally compressing every chunk.
+     */
+    public void writeTo(WritableByteChannel channel, ElementCodec<? super E> codec, boolean compress)
+            throws IOException {
+        writeTo(new CheckpointWriter<E>(channel, codec, compress));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeTo(CheckpointWriter<E> writer) throws IOException {
+        Object[] batch = new Object[CHECKPOINT_BATCH];
+        Node<E> last = null;
+        boolean exhausted = false;
+        while (!exhausted) {
+            int n = 0;
+            fullyLock();
+            try {
+                // Like Itr.nextNode: a dequeued node links to itself
+                Node<E> p = (last == null || last.next == last) ? head.next : last.next;
+                for (; p != null && n < batch.length; p = p.next) {
+                    if (p.item != null)
+                        batch[n++] = p.item;
+                    last = p;
+                }
+                exhausted = p == null;
+            } finally {
+                fullyUnlock();
+            }
+            for (int i = 0; i < n; i++) {
+                writer.write((E) batch[i]);
+                batch[i] = null;
+            }
+        }
+        writer.finish();
+    }
+
+    /**
+     * Offers every element of a checkpoint to this queue, in the order they
+     * were written.
+     *
+     * @param in    the stream, left open
+     * @param codec converts bytes to elements
+     * @return the number of elements read
+     */
+    public int readFrom(InputStream in, ElementCodec<? extends E> codec) throws IOException {
+        return readFrom(new CheckpointReader<E>(in, codec));
+    }
+
+    /**
+     * Offers every element of a checkpoint read from the channel to this queue.
+     *
+     * @return the number of elements read
+     */
+    public int readFrom(ReadableByteChannel channel, ElementCodec<? extends E> codec) throws IOException {
+        return readFrom(new CheckpointReader<E>(channel, codec));
+    }
+
+    private int readFrom(CheckpointReader<E> reader) throws IOException {
+        int n = 0;
+        for (E item; (item = reader.read()) != null; n++) {
+            offer(item);
+        }
+        return n;
+    }
+
     public Iterator<E> iterator() {
         return new Itr();
     }
 
     private class Itr implements Iterator<E> {
         /*
-         * Basic weakly-consistent iterator.  At all times hold the next
-         * item to hand out so that if hasNext() reports true, we will
-         * still have it to return even if lost race with a take etc.
+         * Weakly-consistent iterator that takes no lock to move: links are
+         * read with acquire semantics (see Node). At all times hold the next
+         * item to hand out so that if hasNext() reports true, we will still
+         * have it to return even if lost race with a take etc.
          */
 
         private Node<E> current;
@@ -504,64 +1341,43 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
         private E currentElement;
 
         Itr() {
-            fullyLock();
-            try {
-                current = head.next;
-                if (current != null)
-                    currentElement = current.item;
-            } finally {
-                fullyUnlock();
-            }
+            current = firstLiveNode(head);
+            if (current != null)
+                currentElement = current.item;
         }
 
         public boolean hasNext() {
             return current != null;
         }
 
-        /**
-         * Returns the next live successor of p, or null if no such.
-         * <p>
-         * Unlike other traversal methods, iterators need to handle both:
-         * - dequeued nodes (p.next == p)
-         * - (possibly multiple) interior removed nodes (p.item == null)
-         */
-        private Node<E> nextNode(Node<E> p) {
-            for (; ; ) {
-                Node<E> s = p.next;
-                if (s == p)
-                    return head.next;
-                if (s == null || s.item != null)
-                    return s;
-                p = s;
-            }
-        }
-
         public E next() {
-            fullyLock();
-            try {
-                if (current == null)
-                    throw new NoSuchElementException();
-                E x = currentElement;
-                lastRet = current;
-                current = nextNode(current);
+            if (current == null)
+                throw new NoSuchElementException();
+            E x = currentElement;
+            lastRet = current;
+            // the item may have been taken since we read the node
+            do {
+                current = nextLiveNode(current);
                 currentElement = (current == null) ? null : current.item;
-                return x;
-            } finally {
-                fullyUnlock();
-            }
+            } while (current != null && currentElement == null);
+            return x;
         }
 
         public void remove() {
             if (lastRet == null)
                 throw new IllegalStateException();
+            long sequence = 0;
             fullyLock();
             try {
                 Node<E> node = lastRet;
                 lastRet = null;
+                int index = 0;
                 for (Node<E> trail = head, p = trail.next;
                      p != null;
-                     trail = p, p = p.next) {
+                     trail = p, p = p.next, index++) {
                     if (p == node) {
+                        if (journal != null)
+                            sequence = journal.append(QueueJournal.REMOVE_AT, null, index);
                         unlink(p, trail);
                         break;
                     }
@@ -569,28 +1385,87 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E>
             } finally {
                 fullyUnlock();
             }
+            commit(sequence);
         }
     }
 
+    /**
+     * Returns the first node after {@code h} holding an item, or null.
+     */
+    private Node<E> firstLiveNode(Node<E> h) {
+        Node<E> p = h.acquireNext();
+        return (p == null || p.item != null) ? p : nextLiveNode(p);
+    }
+
+    /**
+     * Returns the next live successor of p, or null if no such, without
+     * locking.
+     * <p>
+     * Unlike other traversal methods, lock-free traversals need to handle both:
+     * - dequeued nodes (p.next == p), from which they continue at head
+     * - (possibly multiple) interior removed nodes (p.item == null)
+     */
+    private Node<E> nextLiveNode(Node<E> p) {
+        for (; ; ) {
+            Node<E> s = p.acquireNext();
+            if (s == p)
+                return firstLiveNode(head);
+            if (s == null || s.item != null)
+                return s;
+            p = s;
+        }
+    }
+
+    /**
+     * Performs the action for each element, in FIFO order, without locking.
+     * The traversal is weakly consistent, like {@link #iterator()}: it never
+     * stalls puts or takes, and may or may not see concurrent changes.
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Node<E> p = firstLiveNode(head); p != null; p = nextLiveNode(p)) {
+            E item = p.item;
+            if (item != null)
+                action.accept(item);
+        }
+    }
+
+    /**
+     * Returns the elements in FIFO order, collected without locking by a
+     * weakly consistent traversal.
+     */
+    @Override
+    public Object[] toArray() {
+        List<Object> items = new ArrayList<>(Math.max(0, size()));
+        forEach(items::add);
+        return items.toArray();
+    }
+
+    /**
+     * Returns the elements in FIFO order, collected without locking by a
+     * weakly consistent traversal.
+     */
+    @Override
+    public <T> T[] toArray(T[] a) {
+        List<Object> items = new ArrayList<>(Math.max(0, size()));
+        forEach(items::add);
+        return items.toArray(a);
+    }
+
+    /**
+     * Returns a string of the elements, collected without locking by a
+     * weakly consistent traversal.
+     */
     public String toString() {
-        fullyLock();
-        try {
-            Node<E> p = head.next;
-            if (p == null)
-                return "[]";
-
-            StringBuilder sb = new StringBuilder();
-            sb.append('[');
-            for (; ; ) {
-                E item = p.item;
-                sb.append(item == this ? "(this Collection)" : item);
-                p = p.next;
-                if (p == null)
-                    return sb.append(']').toString();
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        forEach(item -> {
+            if (sb.length() > 1)
                 sb.append(',').append(' ');
-            }
-        } finally {
-            fullyUnlock();
-        }
+            sb.append(item == this ? "(this Collection)" : item);
+        });
+        return sb.append(']').toString();
     }
 }
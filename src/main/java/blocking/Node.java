@@ -0,0 +1,48 @@
+package blocking;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Linked list node class
+ * <p>
+ * Fields are plain and normally accessed under the queue's locks. Links
+ * that make a node reachable are written with release semantics, and
+ * lock-free traversals read them with acquire semantics, so a traversal
+ * that reaches a node also sees its item. Other writes (clearing an item,
+ * self-linking a dequeued node) may be seen late by such traversals, which
+ * only makes them weakly consistent.
+ */
+class Node<E> {
+    private static final VarHandle NEXT;
+
+    static {
+        try {
+            NEXT = MethodHandles.lookup().findVarHandle(Node.class, "next", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    E item;
+    Node<E> next;
+
+    Node(E item) {
+        this.item = item;
+    }
+
+    /**
+     * Links the successor, publishing it and everything written before.
+     */
+    void publishNext(Node<E> successor) {
+        NEXT.setRelease(this, successor);
+    }
+
+    /**
+     * Reads the successor outside the locks.
+     */
+    @SuppressWarnings("unchecked")
+    Node<E> acquireNext() {
+        return (Node<E>) NEXT.getAcquire(this);
+    }
+}
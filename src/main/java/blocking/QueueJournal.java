@@ -0,0 +1,454 @@
+package blocking;
+
+import checkpoint.ElementCodec;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of a {@link MostRecentlyInsertedBlockingQueue}.
+ * <p>
+ * Every insertion, removal and eviction is appended as a record
+ * ({@code byte type, int length, byte[length] payload, int crc32}) to an
+ * in-memory buffer. The buffer reaches the file according to the
+ * {@link FsyncPolicy}. With {@link FsyncPolicy#EVERY_OP} the first thread that
+ * needs durability writes and forces everything buffered so far, and threads
+ * arriving meanwhile wait for that force or the next one (group commit), so
+ * concurrent producers share fsyncs instead of paying one each.
+ * <p>
+ * Once the journal holds many more records than the queue can retain it is
+ * compacted: rewritten as the insertions of the live window only.
+ *
+ * @param <E> the type of elements journaled
+ */
+public final class QueueJournal<E> implements Closeable {
+
+    /**
+     * When the journal is forced to the storage device.
+     */
+    public enum FsyncPolicy {
+        /**
+         * Every operation returns only after its record was forced (group commit)
+         */
+        EVERY_OP,
+        /**
+         * Records are written and forced every interval by a background thread
+         */
+        INTERVAL,
+        /**
+         * Records are written every interval, flushing is left to the OS
+         */
+        OS
+    }
+
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+    static final byte EVICT = 3;
+    static final byte REMOVE_AT = 4;
+    static final byte CLEAR = 5;
+
+    /**
+     * Pending bytes after which records are written without waiting for the interval
+     */
+    private static final int WRITE_THRESHOLD = 64 * 1024;
+
+    /**
+     * Records never trigger a compaction below this count
+     */
+    private static final long MIN_COMPACTION_RECORDS = 4096;
+
+    private final Path file;
+    private final ElementCodec<E> codec;
+    private final FsyncPolicy policy;
+    private final ScheduledExecutorService flusher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+
+    private FileChannel channel;
+    private final Buffer pending = new Buffer(WRITE_THRESHOLD);
+    private final Buffer record = new Buffer(256);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Sequence of the last appended record
+     */
+    private long appended;
+
+    /**
+     * Sequence of the last record known to be forced
+     */
+    private long durable;
+
+    /**
+     * True while a thread is forcing on behalf of the others
+     */
+    private boolean syncing;
+
+    /**
+     * Records in the file and buffer since the last compaction
+     */
+    private long records;
+
+    /**
+     * The first failure of a background flush, rethrown by every later
+     * operation
+     */
+    private IOException failure;
+
+    private QueueJournal(Path file, ElementCodec<E> codec, FsyncPolicy policy, long intervalMillis)
+            throws IOException {
+        if (codec == null || policy == null)
+            throw new NullPointerException();
+        if (policy != FsyncPolicy.EVERY_OP && intervalMillis <= 0)
+            throw new IllegalArgumentException("Interval must be positive");
+        this.file = file;
+        this.codec = codec;
+        this.policy = policy;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (policy == FsyncPolicy.EVERY_OP) {
+            flusher = null;
+        } else {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "queue-journal-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Opens the journal file, creating it if needed.
+     *
+     * @param file           the journal file
+     * @param codec          converts elements to bytes and back
+     * @param policy         when records are forced
+     * @param intervalMillis flush interval, ignored by {@link FsyncPolicy#EVERY_OP}
+     */
+    public static <E> QueueJournal<E> open(Path file, ElementCodec<E> codec, FsyncPolicy policy,
+                                           long intervalMillis) throws IOException {
+        return new QueueJournal<>(file, codec, policy, intervalMillis);
+    }
+
+    /**
+     * Replays the journal, returning the elements it leaves in the queue in
+     * FIFO order. A torn record at the end of the file (crash while writing)
+     * ends the replay and is cut off.
+     */
+    LinkedList<E> replay() throws IOException {
+        LinkedList<E> items = new LinkedList<>();
+        lock.lock();
+        try {
+            channel.position(0);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            long valid = 0;
+            byte[] payload = new byte[256];
+            for (; ; ) {
+                byte type;
+                int length;
+                try {
+                    type = in.readByte();
+                    length = in.readInt();
+                    if (length < 0 || length > channel.size())
+                        break;
+                    if (payload.length < length)
+                        payload = new byte[length];
+                    in.readFully(payload, 0, length);
+                    crc.reset();
+                    crc.update(type);
+                    crc.update(payload, 0, length);
+                    if (in.readInt() != (int) crc.getValue())
+                        break;
+                } catch (EOFException e) {
+                    break;
+                }
+                DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+                switch (type) {
+                    case ADD:
+                        items.addLast(codec.read(recordIn));
+                        break;
+                    case REMOVE:
+                    case EVICT:
+                        items.pollFirst();
+                        break;
+                    case REMOVE_AT:
+                        int index = recordIn.readInt();
+                        Iterator<E> it = items.iterator();
+                        for (int i = 0; it.hasNext(); i++) {
+                            it.next();
+                            if (i == index) {
+                                it.remove();
+                                break;
+                            }
+                        }
+                        break;
+                    case CLEAR:
+                        items.clear();
+                        break;
+                    default:
+                        throw new IOException("Unknown journal record " + type);
+                }
+                valid += 1 + 4 + length + 4;
+                records++;
+            }
+            channel.truncate(valid);
+            channel.position(valid);
+        } finally {
+            lock.unlock();
+        }
+        return items;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param type    record type
+     * @param element the element of an {@link #ADD} record, otherwise null
+     * @param index   the index of a {@link #REMOVE_AT} record
+     * @return the sequence of the record, to pass to {@link #awaitDurable(long)}
+     */
+    long append(byte type, E element, int index) {
+        lock.lock();
+        try {
+            checkFailure();
+            encode(type, element, index);
+            if (policy != FsyncPolicy.EVERY_OP && pending.size() >= WRITE_THRESHOLD)
+                writePending();
+            return appended;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void encode(byte type, E element, int index) throws IOException {
+        record.reset();
+        if (type == ADD)
+            codec.write(element, recordOut);
+        else if (type == REMOVE_AT)
+            recordOut.writeInt(index);
+        crc.reset();
+        crc.update(type);
+        crc.update(record.bytes(), 0, record.size());
+        pending.write(type);
+        writeInt(pending, record.size());
+        record.writeTo(pending);
+        writeInt(pending, (int) crc.getValue());
+        records++;
+        appended++;
+    }
+
+    /**
+     * Returns once the record with the given sequence has been forced, if
+     * the policy is {@link FsyncPolicy#EVERY_OP}; returns at once otherwise.
+     * Must be called without holding the queue locks so that concurrent
+     * operations can join the same force.
+     */
+    void awaitDurable(long sequence) {
+        if (policy != FsyncPolicy.EVERY_OP || sequence == 0)
+            return;
+        lock.lock();
+        try {
+            if (failure != null)
+                throw new UncheckedIOException(failure);
+            while (durable < sequence) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long upTo = appended;
+                try {
+                    writePending();
+                    FileChannel c = channel;
+                    lock.unlock();
+                    try {
+                        c.force(false);
+                    } finally {
+                        lock.lock();
+                    }
+                    if (upTo > durable)
+                        durable = upTo;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    syncing = false;
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the journal holds enough records beyond the live
+     * window of a queue of the given capacity to be worth compacting.
+     */
+    boolean needsCompaction(int capacity) {
+        lock.lock();
+        try {
+            return records > Math.max(MIN_COMPACTION_RECORDS, 4L * capacity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the journal with the insertions of the given live window.
+     * The caller must guarantee that no record is appended concurrently and
+     * that {@code live} reflects every record appended so far.
+     */
+    void compact(Iterator<E> live) throws IOException {
+        lock.lock();
+        try {
+            checkFailure();
+            while (syncing) {
+                synced.awaitUninterruptibly();
+            }
+            Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+            long count = 0;
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                pending.reset();
+                while (live.hasNext()) {
+                    encode(ADD, live.next(), 0);
+                    count++;
+                    if (pending.size() >= WRITE_THRESHOLD)
+                        drain(out);
+                }
+                drain(out);
+                out.force(true);
+            }
+            channel.close();
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            records = count;
+            durable = appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes and forces every buffered record.
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            checkFailure();
+            writePending();
+            channel.force(false);
+            durable = appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the journal and closes the file. After a background flush
+     * failed, the file is closed without writing and the failure thrown.
+     */
+    public void close() throws IOException {
+        if (flusher != null)
+            flusher.shutdownNow();
+        lock.lock();
+        try {
+            if (channel.isOpen()) {
+                try {
+                    checkFailure();
+                    writePending();
+                    channel.force(false);
+                    durable = appended;
+                } finally {
+                    channel.close();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null)
+            throw failure;
+    }
+
+    private void flushQuietly() {
+        lock.lock();
+        try {
+            if (!channel.isOpen() || syncing || failure != null)
+                return;
+            writePending();
+            if (policy == FsyncPolicy.INTERVAL)
+                channel.force(false);
+            durable = appended;
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writePending() throws IOException {
+        drain(channel);
+    }
+
+    private void drain(FileChannel target) throws IOException {
+        if (pending.size() == 0)
+            return;
+        ByteBuffer buffer = ByteBuffer.wrap(pending.bytes(), 0, pending.size());
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        pending.reset();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+
+    /**
+     * Byte buffer whose storage can be read without copying
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package blocking;
+
+import checkpoint.ElementCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * Overflow storage of a {@link MostRecentlyInsertedBlockingQueue}: the
+ * elements that do not fit in memory, in FIFO order, in append-only segment
+ * files of a directory.
+ * <p>
+ * Every element is a record ({@code int length, byte[length] payload}).
+ * Records are appended to a write buffer that reaches the newest segment
+ * when it fills up, or when a read gets to the buffered records. A segment
+ * file is rolled over once it holds {@code segmentBytes}, and deleted as a
+ * whole when its last record was read back, so deletion costs one file
+ * operation per segment rather than per element.
+ * <p>
+ * The store is an overflow buffer, not a persistence mechanism: nothing is
+ * forced to the device, and opening a directory discards the segments left
+ * in it. Apart from {@link #size()}, the methods are called by the queue
+ * while holding its putLock.
+ *
+ * @param <E> the type of elements spilled
+ */
+public final class SpillStore<E> implements Closeable {
+
+    private static final String PREFIX = "spill-";
+    private static final String SUFFIX = ".seg";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final ElementCodec<E> codec;
+    private final long maxElements;
+    private final long segmentBytes;
+
+    /**
+     * Segments, oldest first; the last one is being appended to
+     */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+    private final Buffer record = new Buffer(256);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Number of the next segment file
+     */
+    private long nextSegment;
+
+    private volatile long size;
+
+    private static final class Segment {
+        final Path file;
+        final FileChannel channel;
+
+        /**
+         * Bytes appended, including those still in the write buffer
+         */
+        long appended;
+
+        /**
+         * Bytes of the file already copied into the read buffer
+         */
+        long read;
+
+        /**
+         * Bytes of records already handed out
+         */
+        long consumed;
+
+        Segment(Path file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+
+    private SpillStore(Path directory, ElementCodec<E> codec, long maxElements, long segmentBytes)
+            throws IOException {
+        if (directory == null || codec == null)
+            throw new NullPointerException();
+        if (maxElements <= 0 || segmentBytes <= 0)
+            throw new IllegalArgumentException();
+        this.directory = directory;
+        this.codec = codec;
+        this.maxElements = maxElements;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stale) {
+                Files.delete(file);
+            }
+        }
+        readBuffer.flip();
+    }
+
+    /**
+     * Opens a store in the directory, creating it if needed and deleting
+     * the segments a previous store left there.
+     *
+     * @param directory    where the segment files go
+     * @param codec        converts elements to bytes and back
+     * @param maxElements  the most elements spilled; beyond that the queue
+     *                     evicts its oldest element for every new one
+     * @param segmentBytes the size at which a segment file is rolled over
+     * @throws IllegalArgumentException if a bound is not positive
+     */
+    public static <E> SpillStore<E> open(Path directory, ElementCodec<E> codec, long maxElements,
+                                         long segmentBytes) throws IOException {
+        return new SpillStore<>(directory, codec, maxElements, segmentBytes);
+    }
+
+    /**
+     * Returns the number of elements spilled.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of segment files.
+     */
+    int segments() {
+        return segments.size();
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean isFull() {
+        return size >= maxElements;
+    }
+
+    /**
+     * Appends the element after the last one.
+     */
+    void append(E element) {
+        try {
+            record.reset();
+            recordOut.writeInt(0);
+            codec.write(element, recordOut);
+            byte[] bytes = record.bytes();
+            int length = record.size();
+            int payload = length - 4;
+            bytes[0] = (byte) (payload >>> 24);
+            bytes[1] = (byte) (payload >>> 16);
+            bytes[2] = (byte) (payload >>> 8);
+            bytes[3] = (byte) payload;
+
+            Segment last = segments.peekLast();
+            if (last == null || last.appended >= segmentBytes)
+                last = roll();
+            if (writeBuffer.remaining() < length)
+                flushWrites();
+            if (length > writeBuffer.capacity())
+                writeFully(last.channel, ByteBuffer.wrap(bytes, 0, length), last.appended - writeBuffer.position());
+            else
+                writeBuffer.put(bytes, 0, length);
+            last.appended += length;
+            size++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Removes and returns the first element.
+     *
+     * @return the first element, or null if the store is empty
+     */
+    E poll() {
+        if (size == 0)
+            return null;
+        try {
+            Segment first = segments.peekFirst();
+            while (first.consumed == first.appended) {
+                // a segment is complete once the next one exists
+                delete(segments.pollFirst());
+                readBuffer.clear().flip();
+                first = segments.peekFirst();
+            }
+            fill(first, 4);
+            int length = readBuffer.getInt();
+            fill(first, length);
+            int position = readBuffer.position();
+            E element = codec.read(new DataInputStream(
+                    new ByteArrayInputStream(readBuffer.array(), position, length)));
+            readBuffer.position(position + length);
+            first.consumed += 4 + length;
+            size--;
+            return element;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Removes every element, deleting all segments.
+     */
+    void clear() {
+        try {
+            close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Removes every element, closing and deleting every segment. The store
+     * can still be appended to afterwards.
+     */
+    public void close() throws IOException {
+        size = 0;
+        writeBuffer.clear();
+        readBuffer.clear().flip();
+        while (!segments.isEmpty()) {
+            delete(segments.pollFirst());
+        }
+    }
+
+    /**
+     * Makes at least {@code n} bytes of the segment readable in the read
+     * buffer.
+     */
+    private void fill(Segment segment, int n) throws IOException {
+        if (readBuffer.remaining() >= n)
+            return;
+        readBuffer.compact();
+        if (readBuffer.capacity() < n)
+            readBuffer = ByteBuffer.allocate(n).put(readBuffer.flip());
+        if (segment == segments.peekLast())
+            flushWrites();
+        while (readBuffer.position() < n) {
+            int read = segment.channel.read(readBuffer, segment.read);
+            if (read <= 0)
+                throw new IOException("Truncated spill segment " + segment.file);
+            segment.read += read;
+        }
+        readBuffer.flip();
+    }
+
+    private Segment roll() throws IOException {
+        flushWrites();
+        Path file = directory.resolve(PREFIX + nextSegment++ + SUFFIX);
+        Segment segment = new Segment(file, FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segments.addLast(segment);
+        return segment;
+    }
+
+    /**
+     * Writes the buffered records to the end of the newest segment.
+     */
+    private void flushWrites() throws IOException {
+        if (writeBuffer.position() == 0)
+            return;
+        Segment last = segments.peekLast();
+        writeBuffer.flip();
+        writeFully(last.channel, writeBuffer, last.appended - writeBuffer.remaining());
+        writeBuffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void delete(Segment segment) throws IOException {
+        segment.channel.close();
+        Files.deleteIfExists(segment.file);
+    }
+
+    @Override
+    public String toString() {
+        return "SpillStore[" + directory + ", size=" + size + ", segments=" + segments.size() + "]";
+    }
+
+    /**
+     * Byte buffer whose storage can be read without copying
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package checkpoint;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZ4-style block compressor.
+ * <p>
+ * A compressed block is a sequence of tokens. Every token holds a run of
+ * literals followed by a back-reference (2-byte offset, at least 4 bytes long)
+ * into the output decoded so far. The high nibble of the token is the literal
+ * length, the low nibble is the match length minus 4; a nibble of 15 is
+ * continued by extra bytes, each of them added until one is less than 255.
+ * The last token of a block carries literals only.
+ * <p>
+ * Instances keep their hash table between calls and are not thread-safe.
+ */
+public final class BlockCompressor {
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_LOG = 12;
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    /**
+     * Returns the size of the buffer that is always large enough to hold
+     * the compressed form of {@code length} bytes.
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses {@code src[0, length)} into {@code dst}, starting at {@code dstOffset}.
+     *
+     * @param dst buffer with at least {@link #maxCompressedLength(int)} bytes
+     *            available after {@code dstOffset}
+     * @return the number of bytes written to {@code dst}
+     */
+    public int compress(byte[] src, int length, byte[] dst, int dstOffset) {
+        Arrays.fill(hashTable, -1);
+        int anchor = 0;
+        int ip = 0;
+        int op = dstOffset;
+        int matchLimit = length - LAST_LITERALS;
+        while (ip + MIN_MATCH <= matchLimit) {
+            int sequence = readInt(src, ip);
+            int h = hash(sequence);
+            int ref = hashTable[h];
+            hashTable[h] = ip;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength++;
+            }
+            op = writeToken(src, anchor, ip - anchor, matchLength - MIN_MATCH, dst, op);
+            int offset = ip - ref;
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            op = writeLength(matchLength - MIN_MATCH, dst, op);
+            ip += matchLength;
+            anchor = ip;
+        }
+        return writeToken(src, anchor, length - anchor, 0, dst, op) - dstOffset;
+    }
+
+    /**
+     * Decompresses {@code src[0, length)} into {@code dst}.
+     *
+     * @param rawLength the expected number of decompressed bytes
+     * @throws IOException if the block is corrupted
+     */
+    public static void decompress(byte[] src, int length, byte[] dst, int rawLength) throws IOException {
+        int ip = 0;
+        int op = 0;
+        while (ip < length) {
+            int token = src[ip++] & 0xFF;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    if (ip >= length)
+                        throw corrupted();
+                    b = src[ip++] & 0xFF;
+                    literals += b;
+                } while (b == 255);
+            }
+            if (ip + literals > length || op + literals > rawLength)
+                throw corrupted();
+            System.arraycopy(src, ip, dst, op, literals);
+            ip += literals;
+            op += literals;
+            if (ip == length)
+                break;
+
+            if (ip + 2 > length)
+                throw corrupted();
+            int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (ip >= length)
+                        throw corrupted();
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            int ref = op - offset;
+            if (offset == 0 || ref < 0 || op + matchLength > rawLength)
+                throw corrupted();
+            // byte by byte: the match may overlap the bytes it produces
+            for (int end = op + matchLength; op < end; ) {
+                dst[op++] = dst[ref++];
+            }
+        }
+        if (op != rawLength)
+            throw corrupted();
+    }
+
+    private static int writeToken(byte[] src, int from, int literals, int matchNibble,
+                                  byte[] dst, int op) {
+        int token = (Math.min(literals, 15) << 4) | Math.min(matchNibble, 15);
+        dst[op++] = (byte) token;
+        op = writeLength(literals, dst, op);
+        System.arraycopy(src, from, dst, op, literals);
+        return op + literals;
+    }
+
+    private static int writeLength(int length, byte[] dst, int op) {
+        if (length < 15)
+            return op;
+        length -= 15;
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static IOException corrupted() {
+        return new IOException("Corrupted compressed block");
+    }
+}
@@ -0,0 +1,130 @@
+package checkpoint;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import static checkpoint.CheckpointWriter.CHUNK_HEADER_LENGTH;
+import static checkpoint.CheckpointWriter.ENCODING_LZ;
+import static checkpoint.CheckpointWriter.ENCODING_RAW;
+import static checkpoint.CheckpointWriter.MAGIC;
+import static checkpoint.CheckpointWriter.VERSION;
+
+/**
+ * Streams elements back out of the format written by {@link CheckpointWriter}.
+ * Only one chunk is held in memory at a time.
+ * <p>
+ * The underlying stream or channel is not closed by this reader.
+ *
+ * @param <E> the type of elements read
+ */
+public final class CheckpointReader<E> {
+
+    private final InputStream in;
+    private final ReadableByteChannel channel;
+    private final ElementCodec<? extends E> codec;
+
+    private final ChunkBuffer chunk = new ChunkBuffer(CheckpointWriter.CHUNK_SIZE + CheckpointWriter.CHUNK_SIZE / 4);
+    private final DataInputStream chunkIn = new DataInputStream(chunk.input());
+    private final byte[] frame = new byte[CHUNK_HEADER_LENGTH];
+    private byte[] compressed;
+    private int remaining;
+    private boolean finished;
+
+    public CheckpointReader(InputStream in, ElementCodec<? extends E> codec) throws IOException {
+        this(in, null, codec);
+    }
+
+    public CheckpointReader(ReadableByteChannel channel, ElementCodec<? extends E> codec) throws IOException {
+        this(null, channel, codec);
+    }
+
+    private CheckpointReader(InputStream in, ReadableByteChannel channel,
+                             ElementCodec<? extends E> codec) throws IOException {
+        if (codec == null)
+            throw new NullPointerException("Codec can not be null!");
+        this.in = in;
+        this.channel = channel;
+        this.codec = codec;
+
+        readFully(frame, 0, 6);
+        if (getInt(frame, 0) != MAGIC)
+            throw new IOException("Not a queue checkpoint");
+        if (frame[4] != VERSION)
+            throw new IOException("Unsupported checkpoint version " + frame[4]);
+    }
+
+    /**
+     * Reads the next element.
+     *
+     * @return the next element, or {@code null} once the end marker is reached
+     */
+    public E read() throws IOException {
+        if (remaining == 0 && !nextChunk())
+            return null;
+        remaining--;
+        E element = codec.read(chunkIn);
+        if (element == null)
+            throw new IOException("Codec returned a 'null' element");
+        return element;
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (finished)
+            return false;
+        readFully(frame, 0, 4);
+        int count = getInt(frame, 0);
+        if (count == 0) {
+            finished = true;
+            return false;
+        }
+        readFully(frame, 4, CHUNK_HEADER_LENGTH - 4);
+        byte encoding = frame[4];
+        int rawLength = getInt(frame, 5);
+        int storedLength = getInt(frame, 9);
+        if (count < 0 || rawLength < 0 || storedLength < 0)
+            throw new IOException("Corrupted chunk header");
+
+        chunk.ensureCapacity(rawLength);
+        if (encoding == ENCODING_RAW) {
+            if (storedLength != rawLength)
+                throw new IOException("Corrupted chunk header");
+            readFully(chunk.bytes(), 0, rawLength);
+        } else if (encoding == ENCODING_LZ) {
+            if (compressed == null || compressed.length < storedLength)
+                compressed = new byte[Math.max(storedLength, CheckpointWriter.CHUNK_SIZE)];
+            readFully(compressed, 0, storedLength);
+            BlockCompressor.decompress(compressed, storedLength, chunk.bytes(), rawLength);
+        } else {
+            throw new IOException("Unknown chunk encoding " + encoding);
+        }
+        chunk.filled(rawLength);
+        remaining = count;
+        return true;
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        if (in != null) {
+            while (len > 0) {
+                int n = in.read(b, off, len);
+                if (n < 0)
+                    throw new EOFException("Truncated checkpoint");
+                off += n;
+                len -= n;
+            }
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0)
+                    throw new EOFException("Truncated checkpoint");
+            }
+        }
+    }
+
+    private static int getInt(byte[] b, int i) {
+        return (b[i] & 0xFF) << 24 | (b[i + 1] & 0xFF) << 16 | (b[i + 2] & 0xFF) << 8 | (b[i + 3] & 0xFF);
+    }
+}
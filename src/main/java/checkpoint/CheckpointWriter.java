@@ -0,0 +1,156 @@
+package checkpoint;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams elements into the checkpoint format.
+ * <p>
+ * Layout (all integers big-endian):
+ * <pre>
+ * header : int MAGIC, byte VERSION, byte flags
+ * chunk  : int count (&gt; 0), byte encoding, int rawLength, int storedLength, byte[storedLength]
+ * end    : int 0
+ * </pre>
+ * Elements are encoded into a reusable buffer and written out one chunk at a
+ * time, so the memory used does not depend on the number of elements.
+ * A chunk is stored raw when compression does not make it smaller.
+ * <p>
+ * The underlying stream or channel is not closed by this writer.
+ *
+ * @param <E> the type of elements written
+ */
+public final class CheckpointWriter<E> {
+
+    static final int MAGIC = 0x4D524951; // "MRIQ"
+    static final byte VERSION = 1;
+    static final byte FLAG_COMPRESSED = 1;
+    static final byte ENCODING_RAW = 0;
+    static final byte ENCODING_LZ = 1;
+    static final int CHUNK_HEADER_LENGTH = 13;
+
+    /**
+     * Raw size after which a chunk is written out
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final ElementCodec<? super E> codec;
+    private final boolean compress;
+
+    private final ChunkBuffer chunk = new ChunkBuffer(CHUNK_SIZE + CHUNK_SIZE / 4);
+    private final DataOutputStream chunkOut = new DataOutputStream(chunk.output());
+    private final byte[] frame = new byte[CHUNK_HEADER_LENGTH];
+    private final BlockCompressor compressor;
+    private byte[] compressed;
+    private int count;
+    private boolean finished;
+
+    public CheckpointWriter(OutputStream out, ElementCodec<? super E> codec, boolean compress) throws IOException {
+        this(out, null, codec, compress);
+    }
+
+    public CheckpointWriter(WritableByteChannel channel, ElementCodec<? super E> codec, boolean compress)
+            throws IOException {
+        this(null, channel, codec, compress);
+    }
+
+    private CheckpointWriter(OutputStream out, WritableByteChannel channel,
+                             ElementCodec<? super E> codec, boolean compress) throws IOException {
+        if (codec == null)
+            throw new NullPointerException("Codec can not be null!");
+        this.out = out;
+        this.channel = channel;
+        this.codec = codec;
+        this.compress = compress;
+        this.compressor = compress ? new BlockCompressor() : null;
+
+        int n = putInt(frame, 0, MAGIC);
+        frame[n++] = VERSION;
+        frame[n++] = compress ? FLAG_COMPRESSED : 0;
+        emit(frame, 0, n);
+    }
+
+    /**
+     * Appends an element to the current chunk, writing the chunk out
+     * once it is full.
+     */
+    public void write(E element) throws IOException {
+        if (finished)
+            throw new IllegalStateException("Checkpoint is already finished");
+        codec.write(element, chunkOut);
+        count++;
+        if (chunk.length() >= CHUNK_SIZE)
+            writeChunk();
+    }
+
+    /**
+     * Writes out the pending chunk and the end marker, then flushes the
+     * underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        writeChunk();
+        putInt(frame, 0, 0);
+        emit(frame, 0, 4);
+        if (out != null)
+            out.flush();
+        finished = true;
+    }
+
+    private void writeChunk() throws IOException {
+        if (count == 0)
+            return;
+        int rawLength = chunk.length();
+        byte[] payload = chunk.bytes();
+        if (compress) {
+            int bound = CHUNK_HEADER_LENGTH + BlockCompressor.maxCompressedLength(rawLength);
+            if (compressed == null || compressed.length < bound)
+                compressed = new byte[bound];
+            int storedLength = compressor.compress(payload, rawLength, compressed, CHUNK_HEADER_LENGTH);
+            if (storedLength < rawLength) {
+                putChunkHeader(compressed, ENCODING_LZ, rawLength, storedLength);
+                emit(compressed, 0, CHUNK_HEADER_LENGTH + storedLength);
+                chunk.clear();
+                count = 0;
+                return;
+            }
+        }
+        putChunkHeader(frame, ENCODING_RAW, rawLength, rawLength);
+        emit(frame, 0, CHUNK_HEADER_LENGTH);
+        emit(payload, 0, rawLength);
+        chunk.clear();
+        count = 0;
+    }
+
+    private void putChunkHeader(byte[] b, byte encoding, int rawLength, int storedLength) {
+        int n = putInt(b, 0, count);
+        b[n++] = encoding;
+        n = putInt(b, n, rawLength);
+        putInt(b, n, storedLength);
+    }
+
+    private void emit(byte[] b, int off, int len) throws IOException {
+        if (out != null) {
+            out.write(b, off, len);
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static int putInt(byte[] b, int i, int v) {
+        b[i] = (byte) (v >>> 24);
+        b[i + 1] = (byte) (v >>> 16);
+        b[i + 2] = (byte) (v >>> 8);
+        b[i + 3] = (byte) v;
+        return i + 4;
+    }
+}
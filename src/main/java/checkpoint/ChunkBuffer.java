@@ -0,0 +1,95 @@
+package checkpoint;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer reused for every chunk of a checkpoint.
+ * Written through {@link #output()} and read back through {@link #input()}.
+ */
+final class ChunkBuffer {
+
+    private byte[] bytes;
+    private int length;
+    private int position;
+
+    private final OutputStream output = new OutputStream() {
+        @Override
+        public void write(int b) {
+            ensureCapacity(length + 1);
+            bytes[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(length + len);
+            System.arraycopy(b, off, bytes, length, len);
+            length += len;
+        }
+    };
+
+    private final InputStream input = new InputStream() {
+        @Override
+        public int read() {
+            return position < length ? bytes[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= length)
+                return -1;
+            int n = Math.min(len, length - position);
+            System.arraycopy(bytes, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return length - position;
+        }
+    };
+
+    ChunkBuffer(int initialCapacity) {
+        bytes = new byte[initialCapacity];
+    }
+
+    OutputStream output() {
+        return output;
+    }
+
+    InputStream input() {
+        return input;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * Empties the buffer, keeping its storage.
+     */
+    void clear() {
+        length = 0;
+        position = 0;
+    }
+
+    /**
+     * Prepares the buffer to be read from the start after {@code length}
+     * bytes were copied into {@link #bytes()}.
+     */
+    void filled(int length) {
+        this.length = length;
+        this.position = 0;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length << 1));
+    }
+}
@@ -0,0 +1,34 @@
+package checkpoint;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts queue elements to and from their binary form.
+ * <p>
+ * An element is written into the chunk it belongs to, so a codec does not
+ * have to prefix its output with a length: the chunk itself is length-prefixed.
+ *
+ * @param <E> the type of elements handled by this codec
+ */
+public interface ElementCodec<E> {
+
+    /**
+     * Writes the element to the output.
+     *
+     * @param element the element, never null
+     * @param out     the output of the current chunk
+     * @throws IOException if the element can not be written
+     */
+    void write(E element, DataOutput out) throws IOException;
+
+    /**
+     * Reads an element previously written by {@link #write}.
+     *
+     * @param in the input of the current chunk
+     * @return the element, never null
+     * @throws IOException if the element can not be read
+     */
+    E read(DataInput in) throws IOException;
+}
@@ -0,0 +1,254 @@
+package concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Broadcast (fan-out) variant of {@link ConcurrentMostRecentlyInsertedQueue}:
+ * every element offered is delivered to every registered consumer, while
+ * being stored only once, in a shared {@link MostRecentlyInsertedRing}.
+ * <p>
+ * Each consumer is a {@link java.util.Queue} view with its own read position
+ * and poll semantics. Producers never wait for consumers: a consumer that
+ * falls more than {@code capacity} elements behind skips the evicted ones
+ * and counts them in {@link Consumer#missed()}. Slots are released once
+ * every consumer has passed them, instead of when they are overwritten.
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public class BroadcastMostRecentlyInsertedQueue<E> {
+
+    private final MostRecentlyInsertedRing<E> ring;
+    private final CopyOnWriteArrayList<Consumer> consumers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Every element below this sequence has been released, guarded by
+     * the consumers list
+     */
+    private long released;
+
+    /**
+     * Number of polls between two attempts of a consumer to release slots
+     */
+    private final int releaseInterval;
+
+    public BroadcastMostRecentlyInsertedQueue(int capacity) {
+        this.ring = new MostRecentlyInsertedRing<>(capacity);
+        this.releaseInterval = Math.max(1, capacity / 8);
+    }
+
+    /**
+     * Inserts the element for every consumer, evicting the oldest element
+     * if the ring is full.
+     *
+     * @throws NullPointerException if the element is null
+     */
+    public boolean offer(E element) {
+        ring.offer(element);
+        return true;
+    }
+
+    /**
+     * Registers a consumer that receives every element offered from now on.
+     */
+    public Consumer register() {
+        synchronized (consumers) {
+            Consumer consumer = new Consumer(ring.nextSequence());
+            consumers.add(consumer);
+            return consumer;
+        }
+    }
+
+    /**
+     * Returns the number of registered consumers.
+     */
+    public int consumers() {
+        return consumers.size();
+    }
+
+    public int capacity() {
+        return ring.capacity();
+    }
+
+    /**
+     * Releases the slots that every consumer has passed. Consumers take turns
+     * doing this every few polls; the lock keeps a consumer registering
+     * meanwhile from losing elements it has not read yet.
+     */
+    private void releasePassed() {
+        synchronized (consumers) {
+            long min = ring.nextSequence();
+            for (Consumer consumer : consumers) {
+                min = Math.min(min, consumer.position);
+            }
+            // slots older than a full lap were overwritten already
+            for (long s = Math.max(released, ring.oldestSequence()); s < min; s++) {
+                ring.release(s);
+            }
+            released = Math.max(released, min);
+        }
+    }
+
+    /**
+     * Read view of one registered consumer. A consumer is meant to be
+     * polled by one thread at a time.
+     */
+    public class Consumer extends AbstractQueue<E> {
+
+        /**
+         * Sequence of the next element to poll
+         */
+        private volatile long position;
+        private long missed;
+        private int pollsSinceRelease;
+        private final Object[] slot = new Object[1];
+
+        Consumer(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Consumers only read; elements are offered to the broadcast queue.
+         *
+         * @throws UnsupportedOperationException always
+         */
+        public boolean offer(E e) {
+            throw new UnsupportedOperationException("Offer to the broadcast queue instead");
+        }
+
+        /**
+         * Retrieves and removes the head of this consumer's view.
+         *
+         * @return the head of this consumer's view
+         * @throws NoSuchElementException if there is no element left to read
+         */
+        public E poll() {
+            E element = next(true);
+            if (element == null)
+                throw new NoSuchElementException("Empty queue");
+            return element;
+        }
+
+        /**
+         * Retrieves, but does not remove, the head of this consumer's view
+         *
+         * @return the head of this consumer's view, or null if there is none
+         */
+        public E peek() {
+            return next(false);
+        }
+
+        /**
+         * Removes up to {@code maxElements} elements into the collection.
+         *
+         * @return the number of elements removed
+         */
+        public int drainTo(Collection<? super E> c, int maxElements) {
+            int n = 0;
+            for (E element; n < maxElements && (element = next(true)) != null; n++) {
+                c.add(element);
+            }
+            return n;
+        }
+
+        /**
+         * Returns the number of elements this consumer lost because the
+         * ring overwrote them before they were polled.
+         */
+        public long missed() {
+            return missed;
+        }
+
+        /**
+         * Returns the number of elements left to read.
+         */
+        public int size() {
+            long lag = ring.nextSequence() - position;
+            return (int) Math.max(0, Math.min(lag, ring.capacity()));
+        }
+
+        /**
+         * Skips every element not read yet.
+         */
+        public void clear() {
+            position = ring.nextSequence();
+        }
+
+        /**
+         * Unregisters this consumer; the slots it had not read yet no longer
+         * wait for it.
+         */
+        public void close() {
+            consumers.remove(this);
+        }
+
+        /**
+         * Returns a weakly consistent iterator over the unread elements.
+         * Iterating does not move this consumer.
+         */
+        public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                private long cursor = position;
+                private final Object[] into = new Object[1];
+                private E nextItem = advance();
+
+                @SuppressWarnings("unchecked")
+                private E advance() {
+                    for (; ; ) {
+                        int r = ring.read(cursor, into);
+                        if (r == 0)
+                            return null;
+                        if (r < 0) {
+                            cursor = Math.max(cursor + 1, ring.oldestSequence());
+                            continue;
+                        }
+                        cursor++;
+                        E x = (E) into[0];
+                        into[0] = null;
+                        return x;
+                    }
+                }
+
+                public boolean hasNext() {
+                    return nextItem != null;
+                }
+
+                public E next() {
+                    if (nextItem == null) throw new NoSuchElementException();
+                    E x = nextItem;
+                    nextItem = advance();
+                    return x;
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        private E next(boolean consume) {
+            for (; ; ) {
+                long p = position;
+                int r = ring.read(p, slot);
+                if (r == 0)
+                    return null;
+                if (r < 0) {
+                    long skipTo = Math.max(p + 1, ring.oldestSequence());
+                    missed += skipTo - p;
+                    position = skipTo;
+                    continue;
+                }
+                E element = (E) slot[0];
+                slot[0] = null;
+                if (consume) {
+                    position = p + 1;
+                    if (++pollsSinceRelease >= releaseInterval) {
+                        pollsSinceRelease = 0;
+                        releasePassed();
+                    }
+                }
+                return element;
+            }
+        }
+    }
+}
@@ -1,110 +1,341 @@
 package concurrent;
 
-import java.util.AbstractQueue;
+import checkpoint.CheckpointReader;
+import checkpoint.CheckpointWriter;
+import checkpoint.ElementCodec;
+import events.ContentionEvent;
+import events.EvictionEvent;
+import summary.QueueListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Predicate;
 
-public class ConcurrentMostRecentlyInsertedQueue<E> extends AbstractQueue<E>
+public class ConcurrentMostRecentlyInsertedQueue<E> extends ConcurrentQueueFields.Pad2<E>
         implements Queue<E> {
 
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(ConcurrentQueueFields.Head.class, "head", Node.class);
+            TAIL = lookup.findVarHandle(ConcurrentQueueFields.Tail.class, "tail", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private AtomicInteger capacity;
-    private AtomicInteger countOfNodes = new AtomicInteger(0);
-    private volatile Node<E> head = new Node<>(null, null);
-    private volatile Node<E> tail = head;
 
-    private static class Node<E> {
-        private volatile E element;
-        private volatile Node next;
+    /**
+     * Elements removed by iterators whose nodes are still linked. Only such
+     * removals need a shared counter: everything else is derived from the
+     * node sequences.
+     */
+    private final AtomicInteger removedInside = new AtomicInteger();
 
-        private final AtomicReferenceFieldUpdater<Node, Object> elementUpdater =
-                AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "element");
+    /**
+     * Pool of dequeued nodes, or null if nodes are not recycled
+     */
+    private final EpochRecycler<Node<E>> recycler;
 
-        private final AtomicReferenceFieldUpdater<Node, Node> nextUpdater =
-                AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+    private final ContentionPolicy contention;
 
+    /**
+     * Exchange slots for offers and polls, or null without elimination
+     */
+    private final EliminationArray<E> elimination;
 
-        public Node(E element, Node next) {
-            this.element = element;
-            this.next = next;
-        }
+    /**
+     * Told about every element entering and leaving, or null
+     */
+    private volatile QueueListener<? super E> listener;
 
-        public E getElement() {
-            return element;
-        }
+    public ConcurrentMostRecentlyInsertedQueue(int capacity) {
+        this(capacity, false);
+    }
 
-        public boolean casElement(E expect, E update) {
-            return elementUpdater.compareAndSet(this, expect, update);
-        }
+    /**
+     * Creates a queue with the given capacity.
+     *
+     * @param capacity     the number of most recent elements retained
+     * @param recycleNodes whether dequeued nodes are pooled per thread and
+     *                     reused, so that a steady offer/evict cycle does not allocate
+     */
+    public ConcurrentMostRecentlyInsertedQueue(int capacity, boolean recycleNodes) {
+        this(capacity, recycleNodes, ContentionPolicy.NONE);
+    }
 
-        public void setElement(E element) {
-            elementUpdater.set(this, element);
-        }
+    /**
+     * Creates a queue with the given capacity and contention management.
+     *
+     * @param capacity     the number of most recent elements retained
+     * @param recycleNodes whether dequeued nodes are pooled per thread and reused
+     * @param contention   what threads do after losing a race on head or tail
+     */
+    public ConcurrentMostRecentlyInsertedQueue(int capacity, boolean recycleNodes, ContentionPolicy contention) {
+        if (contention == null)
+            throw new NullPointerException("Contention policy can not be null!");
+        this.capacity = new AtomicInteger(capacity);
+        this.recycler = recycleNodes ? new EpochRecycler<>() : null;
+        this.contention = contention;
+        this.elimination = contention.eliminates()
+                ? new EliminationArray<>(contention.eliminationSlots(), contention.eliminationSpins(), this::isDrained)
+                : null;
+        head = tail = new Node<>(null);
+    }
 
-        public Node getNext() {
-            return next;
-        }
+    /**
+     * Creates a queue in broadcast mode: one shared ring of the given
+     * capacity, read by any number of consumers through their own
+     * {@link java.util.Queue} views.
+     *
+     * @param capacity the number of most recent elements retained
+     * @return the broadcast queue
+     */
+    public static <E> BroadcastMostRecentlyInsertedQueue<E> broadcast(int capacity) {
+        return new BroadcastMostRecentlyInsertedQueue<>(capacity);
+    }
 
-        public boolean casNext(Node<E> expect, Node<E> update) {
-            return nextUpdater.compareAndSet(this, expect, update);
-        }
+    /**
+     * Sets the listener told about every element that enters or leaves this
+     * queue, for example a {@link summary.Summaries#window window summary}.
+     * Elements already in the queue are not reported.
+     * <p>
+     * An element is reported as inserted once linked, and as evicted once
+     * unlinked, which may be after a newer element pushed it out of the
+     * window. Reports from different threads are not ordered, so an element
+     * may be reported removed before it is reported inserted; summaries whose
+     * updates commute, like those of the {@code summary} package, end up the
+     * same either way.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setListener(QueueListener<? super E> listener) {
+        this.listener = listener;
+    }
 
-        public void setNext(Node next) {
-            nextUpdater.set(this, next);
-        }
+    /**
+     * Returns the listener set by {@link #setListener}, or null.
+     */
+    public QueueListener<? super E> getListener() {
+        return listener;
     }
 
-    public ConcurrentMostRecentlyInsertedQueue(int capacity) {
-        this.capacity = new AtomicInteger(capacity);
+    /**
+     * Returns the number of most recent elements retained.
+     */
+    public int capacity() {
+        return capacity.intValue();
+    }
+
+    /**
+     * Changes the number of most recent elements retained. Shrinking evicts
+     * the oldest elements at once; elements that an offer running meanwhile
+     * evicts are unlinked by that offer.
+     *
+     * @param capacity the new capacity
+     * @throws IllegalArgumentException if {@code capacity} is not positive
+     */
+    public void setCapacity(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+        this.capacity.set(capacity);
+        unlinkEvicted(tail.sequence, 0);
+    }
+
+    private boolean casHead(Node<E> expect, Node<E> update) {
+        return HEAD.compareAndSet(this, expect, update);
     }
 
-    private final AtomicReferenceFieldUpdater<ConcurrentMostRecentlyInsertedQueue, Node> tailUpdater =
-            AtomicReferenceFieldUpdater.newUpdater(ConcurrentMostRecentlyInsertedQueue.class, Node.class, "tail");
-    private final AtomicReferenceFieldUpdater<ConcurrentMostRecentlyInsertedQueue, Node> headUpdater =
-            AtomicReferenceFieldUpdater.newUpdater(ConcurrentMostRecentlyInsertedQueue.class, Node.class, "head");
+    private boolean casTail(Node<E> expect, Node<E> update) {
+        return TAIL.compareAndSet(this, expect, update);
+    }
+
+    private void enter() {
+        if (recycler != null)
+            recycler.enter();
+    }
 
-    public boolean casHead(Node<E> expect, Node<E> update) {
-        return headUpdater.compareAndSet(this, expect, update);
+    private void exit() {
+        if (recycler != null)
+            recycler.exit();
     }
 
-    public boolean casTail(Node<E> expect, Node<E> update) {
-        return tailUpdater.compareAndSet(this, expect, update);
+    private Node<E> newNode(E element) {
+        Node<E> node = recycler == null ? null : recycler.reuse();
+        if (node == null)
+            return new Node<>(element);
+        node.reinitialize(element);
+        return node;
     }
 
     public boolean offer(E element) {
         if (element == null)
             throw new NullPointerException("Element can not be null!");
-        Node<E> elementForAdding = new Node<E>(element, null);
-        for (; ; ) {
-            Node<E> expected = tail;
-            Node<E> updated = expected.getNext();
-            if (expected == tail && countOfNodes.intValue() < capacity.intValue()) {
+        enter();
+        try {
+            Node<E> elementForAdding = newNode(element);
+            for (int backoff = 0, retries = 0; ; backoff = contended(backoff), retries++) {
+                Node<E> expected = tail;
+                Node<E> updated = expected.next;
+                if (expected != tail)
+                    continue;
                 if (updated == null) {
-                    if (expected.casNext(updated, elementForAdding)) {
+                    long sequence = expected.sequence + 1;
+                    elementForAdding.setSequence(sequence);
+                    if (expected.casNext(null, elementForAdding)) {
                         casTail(expected, elementForAdding);
-                        countOfNodes.incrementAndGet();
+                        ContentionEvent.emit(this, "offer", retries);
+                        QueueListener.reportInserted(listener, element);
+                        unlinkEvicted(sequence, 0);
+                        return true;
+                    }
+                    // lost the race for tail: an empty queue can hand the element to a waiting poll,
+                    // which reports the removal
+                    if (elimination != null && head.next == null && elimination.tryHandOff(element)) {
+                        QueueListener.reportInserted(listener, element);
                         return true;
                     }
                 } else {
                     casTail(expected, updated);
                 }
-            } else if (expected == tail && countOfNodes.intValue() >= capacity.intValue()) {
+            }
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * Inserts the elements in order as one chain of nodes, linked with a
+     * single CAS on the tail, so a batch costs one round of shared-line
+     * traffic instead of one per element. Of more elements than the
+     * capacity only the last {@code capacity} are linked; the others count
+     * as inserted and evicted at once.
+     *
+     * @return true if the collection was not empty
+     * @throws NullPointerException if the collection or an element is null
+     */
+    public boolean offerAll(Collection<? extends E> c) {
+        Object[] items = c.toArray();
+        for (Object item : items) {
+            if (item == null)
+                throw new NullPointerException("Element can not be null!");
+        }
+        return offerAll(items, 0, items.length);
+    }
+
+    /**
+     * Links {@code items[from..to)}, none of them null, as one chain.
+     */
+    @SuppressWarnings("unchecked")
+    boolean offerAll(Object[] items, int from, int to) {
+        if (from >= to)
+            return false;
+        QueueListener<? super E> l = listener;
+        int skipped = Math.max(0, to - from - capacity.intValue());
+        for (int i = from; l != null && i < from + skipped; i++) {
+            QueueListener.reportInserted(l, (E) items[i]);
+            QueueListener.reportEvicted(l, (E) items[i]);
+        }
+        enter();
+        try {
+            Node<E> first = null;
+            Node<E> last = null;
+            for (int i = from + skipped; i < to; i++) {
+                Node<E> node = newNode((E) items[i]);
+                if (first == null)
+                    first = node;
+                else
+                    last.setNext(node);
+                last = node;
+            }
+            for (int backoff = 0, retries = 0; ; backoff = contended(backoff), retries++) {
+                Node<E> expected = tail;
+                Node<E> updated = expected.next;
+                if (expected != tail)
+                    continue;
                 if (updated == null) {
-                    if (expected.casNext(updated, elementForAdding)) {
-                        poll();
-                        casTail(expected, elementForAdding);
-                        countOfNodes.incrementAndGet();
+                    long sequence = expected.sequence;
+                    for (Node<E> p = first; p != null; p = p.next) {
+                        p.setSequence(++sequence);
+                    }
+                    if (expected.casNext(null, first)) {
+                        casTail(expected, last);
+                        ContentionEvent.emit(this, "offerAll", retries);
+                        for (int i = from + skipped; l != null && i < to; i++) {
+                            QueueListener.reportInserted(l, (E) items[i]);
+                        }
+                        unlinkEvicted(sequence, skipped);
                         return true;
                     }
                 } else {
                     casTail(expected, updated);
                 }
             }
+        } finally {
+            exit();
         }
     }
 
+    /**
+     * Unlinks the oldest elements while more than {@code capacity} of those
+     * up to the given sequence are in the queue. Elements removed from
+     * inside leave their nodes linked, so the count is the linked nodes
+     * less {@code removedInside}, not the sequences: a removal makes room
+     * instead of moving the window.
+     * <p>
+     * Each round unlinks at most the excess nodes counted from the head it
+     * read, so threads evicting at once, or polls meanwhile, never take one
+     * element too many; holes among those nodes leave the rest for the next
+     * round.
+     *
+     * @param skipped elements evicted before they were linked, for the
+     *                eviction event
+     */
+    private void unlinkEvicted(long sequence, int skipped) {
+        int n = skipped;
+        enter();
+        try {
+            for (; ; ) {
+                // head before removedInside: a hole unlinked in between then lies in the range
+                long first = head.sequence;
+                long excess = sequence - first - removedInside.get() - capacity.intValue();
+                if (excess <= 0)
+                    break;
+                for (E old; (old = pollFirst(first + excess)) != null; n++) {
+                    reportEvicted(old);
+                }
+            }
+        } finally {
+            exit();
+        }
+        if (n > 0)
+            EvictionEvent.emit(this, capacity.intValue(), n);
+    }
+
+    /**
+     * Backs off after a lost race, as the contention policy says.
+     *
+     * @return the bound for the next backoff
+     */
+    private int contended(int backoff) {
+        return contention.backsOff() ? contention.backoff(backoff) : 0;
+    }
+
     /**
      * Retrieves and removes the head of this queue.
      *
@@ -112,46 +343,107 @@ public class ConcurrentMostRecentlyInsertedQueue<E> extends AbstractQueue<E>
      * @throws NoSuchElementException if this queue is empty
      */
     public E poll() {
-        for (; ; ) {
-            Node<E> beforeFirstNode = head;
-            Node<E> tailOnPolling = tail;
-            Node<E> firstNode = beforeFirstNode.getNext();
-            if (beforeFirstNode == head) {
+        boolean holes = removedInside.get() > 0;
+        E element = pollFirst(Long.MAX_VALUE);
+        // an offer that counted a hole this poll unlinked may have evicted one element too few
+        if (holes)
+            unlinkEvicted(tail.sequence, 0);
+        if (element == null && elimination != null) {
+            element = elimination.awaitOffer();
+            // refused because an element was linked meanwhile
+            if (element == null)
+                element = pollFirst(Long.MAX_VALUE);
+        }
+        if (element == null)
+            throw new NoSuchElementException("Empty queue");
+        reportRemoved(element);
+        return element;
+    }
+
+    /**
+     * Removes the head of this queue if its sequence is at most
+     * {@code upTo}. Nodes whose elements were removed from inside are
+     * unlinked on the way.
+     *
+     * @return the head, or null if this queue is empty or its head is
+     * past {@code upTo}
+     */
+    private E pollFirst(long upTo) {
+        enter();
+        try {
+            for (int backoff = 0, retries = 0; ; ) {
+                Node<E> beforeFirstNode = head;
+                Node<E> tailOnPolling = tail;
+                Node<E> firstNode = beforeFirstNode.next;
+                if (beforeFirstNode != head)
+                    continue;
                 if (beforeFirstNode == tailOnPolling) {
                     if (firstNode == null)
-                        throw new NoSuchElementException("Empty queue");
-                    else
-                        casTail(tailOnPolling, firstNode);
-                } else if (casHead(beforeFirstNode, firstNode)) {
-                    E element = firstNode.getElement();
-                    if (element != null) {
-                        firstNode.setElement(null);
-                        countOfNodes.decrementAndGet();
-                        return element;
+                        return null;
+                    casTail(tailOnPolling, firstNode);
+                } else {
+                    long sequence = firstNode.sequence;
+                    if (sequence > upTo)
+                        return null;
+                    if (!casHead(beforeFirstNode, firstNode)) {
+                        backoff = contended(backoff);
+                        retries++;
+                        continue;
                     }
+                    ContentionEvent.emit(this, "poll", retries);
+                    retries = 0;
+                    if (recycler != null)
+                        recycler.retire(beforeFirstNode);
+                    // firstNode is the new dummy; its element may have been removed by an iterator
+                    E element = firstNode.takeElement();
+                    if (element != null)
+                        return element;
+                    removedInside.decrementAndGet();
                 }
             }
+        } finally {
+            exit();
         }
     }
 
+    /**
+     * Returns whether no node follows the head, as the elimination array
+     * checks before a poll takes an offered element. A node left by a
+     * removal inside counts, erring towards linking the element.
+     */
+    private boolean isDrained() {
+        enter();
+        try {
+            return head.next == null;
+        } finally {
+            exit();
+        }
+    }
+
+    private void reportEvicted(E element) {
+        QueueListener.reportEvicted(listener, element);
+    }
+
+    private void reportRemoved(E element) {
+        QueueListener.reportRemoved(listener, element);
+    }
+
     /**
      * Retrieves, but does not remove, the head of this queue
      *
-     * @return the head of this queue
-     * @throws NoSuchElementException if this queue is empty
+     * @return the head of this queue, or null if this queue is empty
      */
     public E peek() {
-        restartFromHead:
-        for (; ; ) {
-            for (Node<E> h = head, p = h, q; ; ) {
+        enter();
+        try {
+            for (Node<E> p = head.next; p != null; p = p.next) {
                 E item = p.element;
-                if (item != null || (q = p.next) == null) {
+                if (item != null)
                     return item;
-                } else if (p == q)
-                    continue restartFromHead;
-                else
-                    p = q;
             }
+            return null;
+        } finally {
+            exit();
         }
     }
 
@@ -161,84 +453,295 @@ public class ConcurrentMostRecentlyInsertedQueue<E> extends AbstractQueue<E>
      * @return the number of items in this queue
      */
     public int size() {
-        return countOfNodes.intValue();
+        enter();
+        try {
+            // head first: the difference can then only be too large, and the capacity caps it
+            long first = head.sequence;
+            Node<E> last = tail;
+            for (Node<E> p; (p = last.next) != null; ) {
+                last = p;
+            }
+            long live = last.sequence - first - removedInside.get();
+            return (int) Math.max(0, Math.min(live, capacity.intValue()));
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * Returns the sequence of the last linked element, or of one a little
+     * older while the tail lags behind.
+     */
+    long lastSequence() {
+        return tail.sequence;
     }
 
 
     public void clear() {
-        while (!isEmpty()) {
-            poll();
+        for (E element; (element = pollFirst(Long.MAX_VALUE)) != null; ) {
+            reportRemoved(element);
         }
     }
 
+    /**
+     * Writes the elements of this queue to the stream in FIFO order.
+     * The traversal is weakly consistent, like {@link #iterator()}.
+     *
+     * @param out   the stream, left open
+     * @param codec converts the elements to bytes
+     */
+    public void writeTo(OutputStream out, ElementCodec<? super E> codec) throws IOException {
+        writeTo(out, codec, false);
+    }
+
+    /**
+     * Writes the elements of this queue to the stream in FIFO order,
+     * optionally compressing every chunk.
+     */
+    public void writeTo(OutputStream out, ElementCodec<? super E> codec, boolean compress) throws IOException {
+        writeTo(new CheckpointWriter<E>(out, codec, compress));
+    }
+
+    /**
+     * Writes the elements of this queue to the channel in FIFO order.
+     */
+    public void writeTo(WritableByteChannel channel, ElementCodec<? super E> codec) throws IOException {
+        writeTo(channel, codec, false);
+    }
+
+    /**
+     * Writes the elements of this queue to the channel in FIFO order,
+     * optionally compressing every chunk.
+     */
+    public void writeTo(WritableByteChannel channel, ElementCodec<? super E> codec, boolean compress)
+            throws IOException {
+        writeTo(new CheckpointWriter<E>(channel, codec, compress));
+    }
+
+    private void writeTo(CheckpointWriter<E> writer) throws IOException {
+        for (E element : this) {
+            writer.write(element);
+        }
+        writer.finish();
+    }
+
+    /**
+     * Offers every element of a checkpoint to this queue, in the order they
+     * were written.
+     *
+     * @param in    the stream, left open
+     * @param codec converts bytes to elements
+     * @return the number of elements read
+     */
+    public int readFrom(InputStream in, ElementCodec<? extends E> codec) throws IOException {
+        return readFrom(new CheckpointReader<E>(in, codec));
+    }
+
+    /**
+     * Offers every element of a checkpoint read from the channel to this queue.
+     *
+     * @return the number of elements read
+     */
+    public int readFrom(ReadableByteChannel channel, ElementCodec<? extends E> codec) throws IOException {
+        return readFrom(new CheckpointReader<E>(channel, codec));
+    }
+
+    private int readFrom(CheckpointReader<E> reader) throws IOException {
+        int n = 0;
+        for (E element; (element = reader.read()) != null; n++) {
+            offer(element);
+        }
+        return n;
+    }
+
+    /**
+     * Removes the elements matching the filter in a single weakly consistent
+     * traversal. Each element is cleared with a CAS, as by
+     * {@link Iterator#remove()}, and left for a later poll to unlink, so
+     * neither offers nor polls are held up.
+     *
+     * @throws NullPointerException if the filter is null
+     */
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        return bulkRemove(filter);
+    }
+
+    /**
+     * Removes the elements contained in the collection in a single
+     * traversal, see {@link #removeIf}.
+     *
+     * @throws NullPointerException if the collection is null
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return bulkRemove(e -> c.contains(e));
+    }
+
+    /**
+     * Removes the elements not contained in the collection in a single
+     * traversal, see {@link #removeIf}.
+     *
+     * @throws NullPointerException if the collection is null
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return bulkRemove(e -> !c.contains(e));
+    }
+
+    private boolean bulkRemove(Predicate<? super E> filter) {
+        int removed = 0;
+        // nodes reached before exit are not recycled, so no sequence checks are needed
+        enter();
+        try {
+            for (Node<E> p = head.next; p != null; p = p.next) {
+                E item = p.element;
+                if (item != null && filter.test(item) && removeInside(p, item)) {
+                    removed++;
+                    reportRemoved(item);
+                }
+            }
+        } finally {
+            exit();
+        }
+        return removed > 0;
+    }
+
+    /**
+     * Clears the element of a node left linked inside the queue. The hole
+     * is counted before it exists, so that an offer evicting meanwhile
+     * never unlinks an uncounted hole and then evicts for room it freed.
+     *
+     * @return whether the element was still there to remove
+     */
+    private boolean removeInside(Node<E> node, E item) {
+        removedInside.incrementAndGet();
+        if (node.casElement(item, null))
+            return true;
+        removedInside.decrementAndGet();
+        return false;
+    }
+
     public Iterator<E> iterator() {
         return new ConcurrentMostRecentlyInsertedIterator();
     }
 
+    /**
+     * Weakly consistent iterator. It remembers the node of the next element
+     * together with that node's sequence, and checks every hop against the
+     * sequences: if a node was dequeued and recycled meanwhile, the walk
+     * restarts from the head, skipping sequences it has already passed.
+     * An element that an offer running meanwhile evicts may still be
+     * returned, as one polled meanwhile may.
+     */
     private class ConcurrentMostRecentlyInsertedIterator implements Iterator<E> {
 
         private Node<E> currentNode;
-        private Node<E> lastNode;
+        private long currentSequence;
         private E nextItem;
 
+        private Node<E> lastNode;
+        private long lastSequence;
+        private E lastItem;
+
         ConcurrentMostRecentlyInsertedIterator() {
+            currentSequence = Node.UNLINKED;
             advance();
         }
 
-        private E advance() {
-            lastNode = currentNode;
-            E x = nextItem;
-
-            Node<E> newNode = (currentNode == null) ? firstNode() : currentNode.getNext();
-            for (; ; ) {
-                if (newNode == null) {
-                    currentNode = null;
-                    nextItem = null;
-                    return x;
+        private void advance() {
+            enter();
+            try {
+                Node<E> p = currentNode;
+                long after = currentSequence;
+                Node<E> q = (p == null) ? head.next : p.next;
+                // a hop must land on the very next sequence; after a restart any later one will do
+                boolean hop = p != null;
+                if (hop && p.sequence != after) {
+                    q = restart(after);
+                    hop = false;
+                }
+                for (; ; ) {
+                    if (q == null) {
+                        currentNode = null;
+                        nextItem = null;
+                        return;
+                    }
+                    long s = q.sequence;
+                    E item = q.element;
+                    Node<E> next = q.next;
+                    if (q.sequence != s || (hop ? s != after + 1 : s <= after)) {
+                        q = restart(after);
+                        hop = false;
+                        continue;
+                    }
+                    if (item != null) {
+                        currentNode = q;
+                        currentSequence = s;
+                        nextItem = item;
+                        return;
+                    }
+                    after = s;
+                    hop = true;
+                    q = next;
                 }
-                E item = newNode.getElement();
-                if (item != null) {
-                    currentNode = newNode;
-                    nextItem = item;
-                    return x;
-                } else
-                    newNode = newNode.getNext();
+            } finally {
+                exit();
             }
         }
 
+        /**
+         * Returns the first node past the given sequence, walking from the head.
+         */
+        private Node<E> restart(long after) {
+            Node<E> q = head.next;
+            while (q != null && q.sequence <= after) {
+                q = q.next;
+            }
+            return q;
+        }
+
         public boolean hasNext() {
             return currentNode != null;
         }
 
         public E next() {
             if (currentNode == null) throw new NoSuchElementException();
-            return advance();
+            lastNode = currentNode;
+            lastSequence = currentSequence;
+            lastItem = nextItem;
+            advance();
+            return lastItem;
         }
 
         public void remove() {
             Node<E> l = lastNode;
             if (l == null) throw new IllegalStateException();
-            l.setElement(null);
             lastNode = null;
-        }
-    }
-
-    Node<E> firstNode() {
-        for (; ; ) {
-            Node<E> h = head;
-            Node<E> t = tail;
-            Node<E> first = h.getNext();
-            if (h == head) {
-                if (h == t) {
-                    if (first == null)
-                        return null;
-                    else
-                        casTail(t, first);
-                } else {
-                    if (first.getElement() != null)
-                        return first;
-                    else casHead(h, first);
+            if (recycler == null) {
+                if (removeInside(l, lastItem))
+                    reportRemoved(lastItem);
+                return;
+            }
+            // the node may have been recycled: look it up from the head, where
+            // every node reached is protected from recycling until exit
+            enter();
+            try {
+                for (Node<E> p = head.next; p != null; p = p.next) {
+                    long s = p.sequence;
+                    if (s == lastSequence) {
+                        if (removeInside(p, lastItem))
+                            reportRemoved(lastItem);
+                        break;
+                    }
+                    if (s > lastSequence)
+                        break;
                 }
+            } finally {
+                exit();
             }
         }
     }
@@ -246,16 +749,13 @@ public class ConcurrentMostRecentlyInsertedQueue<E> extends AbstractQueue<E>
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        Node tmp = head.getNext();
         sb.append("[");
-        while (tmp != null) {
-            if (tmp == tail)
-                sb.append(tmp.getElement()).append("");
-            else
-                sb.append(tmp.getElement()).append(", ");
-            tmp = tmp.getNext();
+        for (Iterator<E> it = iterator(); it.hasNext(); ) {
+            sb.append(it.next());
+            if (it.hasNext())
+                sb.append(", ");
         }
         sb.append("]");
         return sb.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,42 @@
+package concurrent;
+
+import java.util.AbstractQueue;
+
+/**
+ * Field layout of {@link ConcurrentMostRecentlyInsertedQueue}.
+ * <p>
+ * {@code head} is written by consumers and {@code tail} by producers. Sharing
+ * a cache line would make every CAS on one side invalidate the other side's
+ * copy of the line. HotSpot lays out the fields of a superclass before those
+ * of its subclasses and never reorders fields across classes, so padding
+ * classes between the two keep them 128 bytes (two lines, as the adjacent
+ * line prefetcher pulls pairs) apart without relying on {@code @Contended}.
+ */
+final class ConcurrentQueueFields {
+
+    private ConcurrentQueueFields() {
+    }
+
+    abstract static class Pad0<E> extends AbstractQueue<E> {
+        long p000, p001, p002, p003, p004, p005, p006, p007;
+        long p008, p009, p010, p011, p012, p013, p014, p015;
+    }
+
+    abstract static class Head<E> extends Pad0<E> {
+        volatile Node<E> head;
+    }
+
+    abstract static class Pad1<E> extends Head<E> {
+        long p100, p101, p102, p103, p104, p105, p106, p107;
+        long p108, p109, p110, p111, p112, p113, p114, p115;
+    }
+
+    abstract static class Tail<E> extends Pad1<E> {
+        volatile Node<E> tail;
+    }
+
+    abstract static class Pad2<E> extends Tail<E> {
+        long p200, p201, p202, p203, p204, p205, p206, p207;
+        long p208, p209, p210, p211, p212, p213, p214, p215;
+    }
+}
@@ -0,0 +1,106 @@
+package concurrent;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How {@link ConcurrentMostRecentlyInsertedQueue} behaves when a CAS on
+ * {@code head} or {@code tail} fails because another thread got there first.
+ * <p>
+ * With backoff, a thread that lost a race spins for a random number of
+ * iterations before retrying, the bound doubling with every further loss up
+ * to {@code maxSpins}. Losers spread out in time instead of hammering the same
+ * cache line again at once.
+ * <p>
+ * With elimination, a {@code poll} that finds the queue empty waits briefly in
+ * a small array of exchange slots, and an {@code offer} that loses a race on
+ * {@code tail} while the queue is empty hands its element straight to such a
+ * waiting poll. The poll takes the element only if the queue is still empty
+ * when the element arrives, and polls the queue again otherwise, so no
+ * element linked meanwhile is overtaken. The pair never touches {@code head}
+ * or {@code tail}; it counts as an insert immediately followed by the removal
+ * of that very element.
+ */
+public final class ContentionPolicy {
+
+    /**
+     * Retry at once, never exchange: the behaviour without a policy
+     */
+    public static final ContentionPolicy NONE = new ContentionPolicy(0, 0, 0, 0);
+
+    private final int minSpins;
+    private final int maxSpins;
+    private final int eliminationSlots;
+    private final int eliminationSpins;
+
+    private ContentionPolicy(int minSpins, int maxSpins, int eliminationSlots, int eliminationSpins) {
+        this.minSpins = minSpins;
+        this.maxSpins = maxSpins;
+        this.eliminationSlots = eliminationSlots;
+        this.eliminationSpins = eliminationSpins;
+    }
+
+    /**
+     * Returns a policy with randomized exponential backoff.
+     *
+     * @param minSpins the bound of the first backoff
+     * @param maxSpins the bound the backoff stops growing at
+     * @throws IllegalArgumentException if {@code minSpins} is not positive or
+     *                                  greater than {@code maxSpins}
+     */
+    public static ContentionPolicy backoff(int minSpins, int maxSpins) {
+        if (minSpins <= 0 || maxSpins < minSpins)
+            throw new IllegalArgumentException();
+        return new ContentionPolicy(minSpins, maxSpins, 0, 0);
+    }
+
+    /**
+     * Returns a copy of this policy that also pairs up offers and polls.
+     *
+     * @param slots number of exchange slots, about half the number of
+     *              threads expected to contend
+     * @param spins how long an empty poll waits for an offer
+     * @throws IllegalArgumentException if either argument is not positive
+     */
+    public ContentionPolicy withElimination(int slots, int spins) {
+        if (slots <= 0 || spins <= 0)
+            throw new IllegalArgumentException();
+        return new ContentionPolicy(minSpins, maxSpins, slots, spins);
+    }
+
+    boolean backsOff() {
+        return maxSpins > 0;
+    }
+
+    boolean eliminates() {
+        return eliminationSlots > 0;
+    }
+
+    int eliminationSlots() {
+        return eliminationSlots;
+    }
+
+    int eliminationSpins() {
+        return eliminationSpins;
+    }
+
+    /**
+     * Spins for a random number of iterations below {@code bound}.
+     *
+     * @param bound the current bound, 0 before the first backoff
+     * @return the bound for the next backoff
+     */
+    int backoff(int bound) {
+        if (bound == 0)
+            bound = minSpins;
+        for (int spins = ThreadLocalRandom.current().nextInt(bound); spins > 0; spins--) {
+            Thread.onSpinWait();
+        }
+        return Math.min(bound << 1, maxSpins);
+    }
+
+    @Override
+    public String toString() {
+        return "ContentionPolicy[spins=" + minSpins + ".." + maxSpins
+                + ", eliminationSlots=" + eliminationSlots + "]";
+    }
+}
@@ -0,0 +1,27 @@
+package concurrent;
+
+/**
+ * Thrown when a cursor fell behind the window of its ring: the elements it
+ * was about to read have been evicted. The cursor has already been moved to
+ * the oldest retained element, so reading can simply go on.
+ */
+public class CursorOverrunException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long skipped;
+
+    public CursorOverrunException(long skipped) {
+        super("Cursor overrun by " + skipped);
+        this.skipped = skipped;
+    }
+
+    /**
+     * Returns the number of elements the cursor skipped.
+     *
+     * @return the number of evicted elements that were never read
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+}
@@ -0,0 +1,136 @@
+package concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Exchange slots where an offer hands its element directly to a waiting poll.
+ * A slot is empty (null), holds the token of a waiting poll, or holds the
+ * {@link Offer} an offer left for that poll. Only the waiting poll empties a
+ * slot again, so an element can never be taken twice.
+ * <p>
+ * The poll decides whether to take an offered element, and takes it only if
+ * the queue is still empty at that moment; the offer waits for the decision,
+ * and withdraws if none comes in time. Both are then pending, so the
+ * exchange takes effect at the poll's check, on an empty queue, as an insert
+ * immediately followed by the removal of that element: no element linked
+ * meanwhile can be overtaken.
+ *
+ * @param <E> the type of exchanged elements
+ */
+final class EliminationArray<E> {
+
+    /**
+     * Marks a slot taken by a waiting poll; one instance per wait, so that
+     * an offer can not mistake a later wait for an earlier one
+     */
+    private static final class Token {
+    }
+
+    private static final int PENDING = 0;
+    private static final int TAKEN = 1;
+    private static final int REFUSED = 2;
+    private static final int WITHDRAWN = 3;
+
+    /**
+     * An element left in a slot, and what became of it. The state leaves
+     * PENDING once, by the poll taking or refusing it or by the offer
+     * withdrawing it.
+     */
+    private static final class Offer<E> {
+        private static final VarHandle STATE;
+
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(Offer.class, "state", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final E element;
+        volatile int state;
+
+        Offer(E element) {
+            this.element = element;
+        }
+
+        boolean decide(int state) {
+            return STATE.compareAndSet(this, PENDING, state);
+        }
+    }
+
+    private final AtomicReferenceArray<Object> slots;
+    private final int spins;
+
+    /**
+     * Whether the queue is empty, checked by the poll before taking
+     */
+    private final BooleanSupplier empty;
+
+    EliminationArray(int size, int spins, BooleanSupplier empty) {
+        this.slots = new AtomicReferenceArray<>(size);
+        this.spins = spins;
+        this.empty = empty;
+    }
+
+    /**
+     * Waits in a random slot for an offer.
+     *
+     * @return the element handed over, or null if no offer came in time or
+     * the queue was no longer empty when one came
+     */
+    @SuppressWarnings("unchecked")
+    E awaitOffer() {
+        int i = ThreadLocalRandom.current().nextInt(slots.length());
+        Token token = new Token();
+        if (!slots.compareAndSet(i, null, token))
+            return null;
+        for (int n = 0; ; n++) {
+            Object x = slots.get(i);
+            if (x instanceof Offer) {
+                Offer<E> offer = (Offer<E>) x;
+                boolean take = empty.getAsBoolean();
+                if (offer.decide(take ? TAKEN : REFUSED)) {
+                    slots.set(i, null);
+                    return take ? offer.element : null;
+                }
+                // the offer withdrew; it gives the slot back unless this does first
+                slots.compareAndSet(i, offer, token);
+            } else if (n >= spins) {
+                if (slots.compareAndSet(i, token, null))
+                    return null;
+                // an offer filled the slot just now
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Hands the element to a poll waiting in a random slot, and waits for
+     * the poll to take it.
+     *
+     * @return whether a poll took the element
+     */
+    boolean tryHandOff(E element) {
+        int i = ThreadLocalRandom.current().nextInt(slots.length());
+        Object x = slots.get(i);
+        if (!(x instanceof Token))
+            return false;
+        Offer<E> offer = new Offer<>(element);
+        if (!slots.compareAndSet(i, x, offer))
+            return false;
+        for (int n = 0; n < spins && offer.state == PENDING; n++) {
+            Thread.onSpinWait();
+        }
+        if (offer.decide(WITHDRAWN)) {
+            slots.compareAndSet(i, offer, x);
+            return false;
+        }
+        return offer.state == TAKEN;
+    }
+}
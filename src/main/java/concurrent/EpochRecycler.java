@@ -0,0 +1,179 @@
+package concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-thread object pools guarded by epoch-based reclamation.
+ * <p>
+ * Threads bracket every access to shared objects with {@link #enter()} and
+ * {@link #exit()}, which publish the global epoch the thread started in.
+ * A retired object is tagged with the epoch it was retired in and handed out
+ * again only once the global epoch moved two steps further. The epoch only
+ * advances when every thread inside a critical section has seen the current
+ * one, so by then no thread can still hold a reference obtained before the
+ * object was unlinked: a recycled object can never be confused with its
+ * previous incarnation by a pending CAS (no ABA).
+ * <p>
+ * Objects obtained outside a critical section (an iterator position, say)
+ * are not protected and must be validated by other means.
+ *
+ * @param <T> the type of pooled objects
+ */
+final class EpochRecycler<T> {
+
+    /**
+     * Reservation of a thread outside any critical section
+     */
+    private static final long IDLE = -1;
+
+    /**
+     * Threads that get their own reservation slot; later threads share a counter
+     */
+    private static final int MAX_SLOTS = 64;
+
+    /**
+     * Longs between two reservation slots, so they sit on different cache lines
+     */
+    private static final int STRIDE = 8;
+
+    /**
+     * Retired objects per thread before trying to advance the epoch
+     */
+    private static final int LIMBO_SIZE = 64;
+
+    /**
+     * Free objects kept per thread, the rest is left to the GC
+     */
+    private static final int POOL_SIZE = 256;
+
+    private final AtomicLong globalEpoch = new AtomicLong();
+    private final AtomicLongArray reservations = new AtomicLongArray(MAX_SLOTS * STRIDE);
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    /**
+     * Threads without a slot currently inside a critical section
+     */
+    private final AtomicInteger overflowActive = new AtomicInteger();
+
+    private final ThreadLocal<Local> local = ThreadLocal.withInitial(Local::new);
+
+    EpochRecycler() {
+        for (int i = 0; i < MAX_SLOTS; i++) {
+            reservations.set(i * STRIDE, IDLE);
+        }
+    }
+
+    private final class Local {
+        final int slot;
+        int depth;
+        final Object[] limbo = new Object[LIMBO_SIZE];
+        final long[] limboEpochs = new long[LIMBO_SIZE];
+        int limboCount;
+        final Object[] pool = new Object[POOL_SIZE];
+        int poolCount;
+
+        Local() {
+            int s = nextSlot.getAndIncrement();
+            slot = s < MAX_SLOTS ? s * STRIDE : -1;
+        }
+    }
+
+    /**
+     * Starts a critical section. Sections nest.
+     */
+    void enter() {
+        Local l = local.get();
+        if (l.depth++ > 0)
+            return;
+        if (l.slot >= 0) {
+            long epoch;
+            do {
+                epoch = globalEpoch.get();
+                reservations.set(l.slot, epoch);
+            } while (globalEpoch.get() != epoch);
+        } else {
+            overflowActive.incrementAndGet();
+        }
+    }
+
+    /**
+     * Ends a critical section.
+     */
+    void exit() {
+        Local l = local.get();
+        if (--l.depth > 0)
+            return;
+        if (l.slot >= 0)
+            reservations.set(l.slot, IDLE);
+        else
+            overflowActive.decrementAndGet();
+    }
+
+    /**
+     * Hands an object unlinked from every shared structure over for reuse.
+     * Must be called inside a critical section.
+     */
+    void retire(T object) {
+        Local l = local.get();
+        if (l.limboCount == LIMBO_SIZE / 2) {
+            // advance early so that the older half is reusable once the limbo is full
+            tryAdvance();
+        } else if (l.limboCount == LIMBO_SIZE) {
+            tryAdvance();
+            collect(l);
+            if (l.limboCount == LIMBO_SIZE)
+                return; // epoch stuck behind a slow thread, leave it to the GC
+        }
+        l.limbo[l.limboCount] = object;
+        l.limboEpochs[l.limboCount++] = globalEpoch.get();
+    }
+
+    /**
+     * Returns a pooled object safe to reuse, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    T reuse() {
+        Local l = local.get();
+        if (l.poolCount == 0)
+            return null;
+        T object = (T) l.pool[--l.poolCount];
+        l.pool[l.poolCount] = null;
+        return object;
+    }
+
+    private void tryAdvance() {
+        long epoch = globalEpoch.get();
+        if (overflowActive.get() > 0)
+            return;
+        for (int i = 0, n = Math.min(nextSlot.get(), MAX_SLOTS); i < n; i++) {
+            long r = reservations.get(i * STRIDE);
+            if (r != IDLE && r != epoch)
+                return;
+        }
+        globalEpoch.compareAndSet(epoch, epoch + 1);
+    }
+
+    /**
+     * Moves the objects retired at least two epochs ago to the pool.
+     */
+    private void collect(Local l) {
+        long safe = globalEpoch.get() - 2;
+        int kept = 0;
+        for (int i = 0; i < l.limboCount; i++) {
+            Object o = l.limbo[i];
+            if (l.limboEpochs[i] <= safe) {
+                if (l.poolCount < POOL_SIZE)
+                    l.pool[l.poolCount++] = o;
+            } else {
+                l.limbo[kept] = o;
+                l.limboEpochs[kept++] = l.limboEpochs[i];
+            }
+        }
+        for (int i = kept; i < l.limboCount; i++) {
+            l.limbo[i] = null;
+        }
+        l.limboCount = kept;
+    }
+}
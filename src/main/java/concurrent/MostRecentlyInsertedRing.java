@@ -0,0 +1,358 @@
+package concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded ring keeping the most recently inserted elements, read through
+ * independent non-destructive cursors.
+ * <p>
+ * Every insert gets a sequence number, one greater than the previous one.
+ * Element {@code s} lives in slot {@code s % capacity} until element
+ * {@code s + capacity} overwrites (evicts) it. Producers claim sequences
+ * with one atomic increment; every slot carries the sequence of the element
+ * it holds, so readers validate what they read seqlock-style and never lock.
+ * <p>
+ * A ring created with a clock also stores the insertion time of every
+ * element. Times never decrease with the sequence, so the elements inserted
+ * in a time range are found by binary search over the retained sequences,
+ * in O(log n + k) for k results.
+ *
+ * @param <E> the type of elements held in this ring
+ */
+public class MostRecentlyInsertedRing<E> {
+
+    private final int capacity;
+    private final AtomicReferenceArray<E> elements;
+
+    /**
+     * Stamp of each slot: {@code s + capacity} once it holds element
+     * {@code s}, {@code -(s + capacity + 1)} while element {@code s} is being
+     * written into it. The offset keeps the initial stamps non-negative.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Sequence the next insert will get
+     */
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * Source of insertion times, or null if times are not recorded
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Insertion time of the element in each slot, guarded by its stamp
+     * like the element itself; null without a clock
+     */
+    private final AtomicLongArray timestamps;
+
+    public MostRecentlyInsertedRing(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a ring recording the insertion time of every element, for
+     * {@link #rangeByTime} and {@link #since}. Inserts then claim their
+     * sequence with a CAS after reading the clock, so that a later sequence
+     * never gets an earlier time.
+     *
+     * @param capacity the capacity of this ring
+     * @param clock    a clock that never goes backwards, such as
+     *                 {@code System::nanoTime}; null to record no times
+     */
+    public MostRecentlyInsertedRing(int capacity, LongSupplier clock) {
+        if (capacity <= 0) throw new IllegalArgumentException();
+        this.capacity = capacity;
+        this.elements = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        this.clock = clock;
+        this.timestamps = clock == null ? null : new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            // as if slot i held element i - capacity, already evicted
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Inserts the element, evicting the oldest one if the ring is full.
+     *
+     * @return the sequence of the inserted element
+     * @throws NullPointerException if the element is null
+     */
+    public long offer(E element) {
+        if (element == null)
+            throw new NullPointerException("Element can not be null!");
+        long sequence;
+        long time = 0;
+        if (clock == null) {
+            sequence = nextSequence.getAndIncrement();
+        } else {
+            // the winner of sequence s read the clock before its CAS, and the
+            // winner of s + 1 read it after seeing that CAS
+            do {
+                sequence = nextSequence.get();
+                time = clock.getAsLong();
+            } while (!nextSequence.compareAndSet(sequence, sequence + 1));
+        }
+        int slot = (int) (sequence % capacity);
+        // the previous lap's producer may not have finished with this slot yet
+        long stamp = sequence + capacity;
+        while (sequences.get(slot) != sequence) {
+            Thread.yield();
+        }
+        sequences.set(slot, -stamp - 1);
+        elements.set(slot, element);
+        if (timestamps != null)
+            timestamps.set(slot, time);
+        sequences.set(slot, stamp);
+        return sequence;
+    }
+
+    /**
+     * Returns the retained elements inserted at or after {@code from} and
+     * before {@code to}, oldest first. The result is a prefix of what is
+     * published: it ends before the first insert still in progress.
+     * Elements evicted while the result is collected are left out.
+     *
+     * @throws IllegalStateException if this ring records no times
+     */
+    public List<E> rangeByTime(long from, long to) {
+        if (timestamps == null)
+            throw new IllegalStateException("Ring has no clock");
+        List<E> result = new ArrayList<>();
+        Object[] into = new Object[1];
+        long end = nextSequence.get();
+        for (long s = firstAtOrAfter(from, end); s < end; s++) {
+            long time = timestampOf(s);
+            if (time == Long.MAX_VALUE || time >= to)
+                break;
+            if (time != Long.MIN_VALUE && read(s, into) > 0) {
+                @SuppressWarnings("unchecked")
+                E element = (E) into[0];
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the retained elements inserted at or after {@code time},
+     * oldest first, like {@link #rangeByTime}.
+     *
+     * @throws IllegalStateException if this ring records no times
+     */
+    public List<E> since(long time) {
+        return rangeByTime(time, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the first sequence below {@code end} whose time is at least
+     * {@code time}, or {@code end}. Evicted sequences count as earlier and
+     * unpublished ones as later than any time.
+     */
+    private long firstAtOrAfter(long time, long end) {
+        long low = Math.max(0, end - capacity);
+        long high = end;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            long t = timestampOf(mid);
+            if (t != Long.MAX_VALUE && (t == Long.MIN_VALUE || t < time))
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the time of element {@code sequence}, {@code Long.MIN_VALUE}
+     * if it was evicted, {@code Long.MAX_VALUE} if not published yet.
+     */
+    private long timestampOf(long sequence) {
+        int slot = (int) (sequence % capacity);
+        long stamp = sequence + capacity;
+        long before = sequences.get(slot);
+        if (before == stamp) {
+            long time = timestamps.get(slot);
+            return sequences.get(slot) == stamp ? time : Long.MIN_VALUE;
+        }
+        long inSlot = before < 0 ? -before - 1 : before;
+        return inSlot <= stamp ? Long.MAX_VALUE : Long.MIN_VALUE;
+    }
+
+    /**
+     * Returns the sequence the next insert will get, which is also the
+     * number of inserts so far.
+     */
+    public long nextSequence() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Returns the sequence of the oldest element still retained.
+     */
+    public long oldestSequence() {
+        return Math.max(0, nextSequence.get() - capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of retained elements.
+     */
+    public int size() {
+        return (int) Math.min(capacity, nextSequence.get());
+    }
+
+    /**
+     * Returns a cursor positioned at the oldest retained element.
+     */
+    public Cursor cursor() {
+        return new Cursor(oldestSequence());
+    }
+
+    /**
+     * Returns a cursor that only sees elements inserted from now on.
+     */
+    public Cursor tailCursor() {
+        return new Cursor(nextSequence.get());
+    }
+
+    /**
+     * Reads element {@code sequence} into {@code into[0]}.
+     *
+     * @return 1 if read, 0 if not published yet, -1 if already evicted
+     */
+    int read(long sequence, Object[] into) {
+        int slot = (int) (sequence % capacity);
+        long stamp = sequence + capacity;
+        long before = sequences.get(slot);
+        if (before == stamp) {
+            E element = elements.get(slot);
+            if (element != null && sequences.get(slot) == stamp) {
+                into[0] = element;
+                return 1;
+            }
+            return -1;
+        }
+        long inSlot = before < 0 ? -before - 1 : before;
+        return inSlot <= stamp ? 0 : -1;
+    }
+
+    /**
+     * Drops the reference to element {@code sequence} if the slot still
+     * holds it, so that it can be collected before being overwritten.
+     * Only valid once no reader will ask for that element again.
+     */
+    void release(long sequence) {
+        int slot = (int) (sequence % capacity);
+        long stamp = sequence + capacity;
+        // mark the slot busy so that the next lap's producer waits for us
+        if (sequences.compareAndSet(slot, stamp, -stamp - 1)) {
+            elements.set(slot, null);
+            sequences.set(slot, stamp);
+        }
+    }
+
+    /**
+     * Independent read position in the ring. A cursor is meant to be used
+     * by one thread at a time; any number of cursors may read concurrently.
+     */
+    public class Cursor {
+
+        private long position;
+        private final Object[] slot = new Object[1];
+
+        Cursor(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Returns the sequence of the next element this cursor will read.
+         */
+        public long position() {
+            return position;
+        }
+
+        /**
+         * Returns the number of published elements not read yet.
+         */
+        public long lag() {
+            return Math.max(0, nextSequence.get() - position);
+        }
+
+        /**
+         * Moves the cursor past every element inserted so far.
+         */
+        public void seekToEnd() {
+            position = nextSequence.get();
+        }
+
+        /**
+         * Adds up to {@code maxElements} elements to {@code sink}, in
+         * insertion order, and moves past them.
+         *
+         * @return the number of elements added, 0 if there is nothing new
+         * @throws CursorOverrunException if the next element to read was
+         *                                evicted; the cursor then points to the oldest retained
+         *                                element
+         */
+        @SuppressWarnings("unchecked")
+        public int readNext(Collection<? super E> sink, int maxElements) {
+            int n = 0;
+            while (n < maxElements) {
+                int r = read(position, slot);
+                if (r == 0)
+                    break;
+                if (r < 0) {
+                    if (n > 0)
+                        break; // report the overrun on the next call
+                    throw overrun();
+                }
+                sink.add((E) slot[0]);
+                slot[0] = null;
+                position++;
+                n++;
+            }
+            return n;
+        }
+
+        /**
+         * Reads the next element.
+         *
+         * @return the next element, or null if there is nothing new
+         * @throws CursorOverrunException if the next element was evicted
+         */
+        @SuppressWarnings("unchecked")
+        public E readNext() {
+            int r = read(position, slot);
+            if (r == 0)
+                return null;
+            if (r < 0)
+                throw overrun();
+            E element = (E) slot[0];
+            slot[0] = null;
+            position++;
+            return element;
+        }
+
+        /**
+         * Moves the cursor to the oldest retained element.
+         */
+        private CursorOverrunException overrun() {
+            long skipTo = Math.max(position + 1, nextSequence.get() - capacity);
+            long skipped = skipTo - position;
+            position = skipTo;
+            return new CursorOverrunException(skipped);
+        }
+    }
+}
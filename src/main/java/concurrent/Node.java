@@ -0,0 +1,80 @@
+package concurrent;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Linked list node. The sequence of a node is one more than the sequence
+ * of its predecessor, so the live list always holds consecutive sequences.
+ * A recycled node gets a new, greater sequence, which is how traversals
+ * that started before the recycling notice it.
+ */
+final class Node<E> {
+    private static final VarHandle ELEMENT;
+    private static final VarHandle NEXT;
+    private static final VarHandle SEQUENCE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            ELEMENT = lookup.findVarHandle(Node.class, "element", Object.class);
+            NEXT = lookup.findVarHandle(Node.class, "next", Node.class);
+            SEQUENCE = lookup.findVarHandle(Node.class, "sequence", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Sequence of a node that is not linked yet
+     */
+    static final long UNLINKED = -1;
+
+    volatile E element;
+    volatile Node<E> next;
+    volatile long sequence;
+
+    Node(E element) {
+        // plain stores, published by the CAS that links the node
+        ELEMENT.set(this, element);
+    }
+
+    /**
+     * Prepares a recycled node. The sequence is invalidated first so
+     * that a traversal still holding the node sees the change before
+     * the new element or link.
+     */
+    void reinitialize(E element) {
+        SEQUENCE.setVolatile(this, UNLINKED);
+        ELEMENT.setVolatile(this, element);
+        NEXT.setVolatile(this, null);
+    }
+
+    /**
+     * Sets the sequence before the node is published by {@link #casNext}.
+     */
+    void setSequence(long sequence) {
+        SEQUENCE.set(this, sequence);
+    }
+
+    /**
+     * Links the next node of a chain before the chain is published by
+     * {@link #casNext}.
+     */
+    void setNext(Node<E> next) {
+        NEXT.set(this, next);
+    }
+
+    boolean casElement(E expect, E update) {
+        return ELEMENT.compareAndSet(this, expect, update);
+    }
+
+    @SuppressWarnings("unchecked")
+    E takeElement() {
+        return (E) ELEMENT.getAndSet(this, null);
+    }
+
+    boolean casNext(Node<E> expect, Node<E> update) {
+        return NEXT.compareAndSet(this, expect, update);
+    }
+}
@@ -0,0 +1,162 @@
+package concurrent;
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer-side buffering for a {@link ConcurrentMostRecentlyInsertedQueue}.
+ * Every producing thread collects its elements in a small array of its own,
+ * which goes into the queue as one linked chain with
+ * {@link ConcurrentMostRecentlyInsertedQueue#offerAll} when it is full, when
+ * its oldest element has waited {@code maxStaleness}, or on {@link #flush()}.
+ * The shared tail is then written once per batch instead of once per
+ * element.
+ * <p>
+ * An element is in the queue, and evicts, from the moment its batch is
+ * flushed: consumers and iterators see the window of the most recently
+ * flushed elements, each thread's in the order it offered them, never
+ * anything still buffered. A background thread flushes the batches that
+ * grew stale, so no element waits much longer than {@code maxStaleness}.
+ * <p>
+ * Each buffer is guarded by its own monitor, which only its producer and
+ * the flushing thread ever take, so the lock stays on a line local to the
+ * producer.
+ *
+ * @param <E> the type of elements
+ */
+public final class ProducerBuffers<E> implements Closeable {
+
+    private final ConcurrentMostRecentlyInsertedQueue<E> queue;
+    private final int batchSize;
+    private final long maxStalenessNanos;
+    private final ThreadLocal<Buffer> local = ThreadLocal.withInitial(this::newBuffer);
+    private final CopyOnWriteArrayList<Buffer> buffers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService flusher;
+    private volatile boolean closed;
+
+    private final class Buffer {
+        final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+        final Object[] elements = new Object[batchSize];
+        int count;
+
+        /**
+         * When the first buffered element was offered
+         */
+        long since;
+
+        synchronized void add(E element) {
+            // checked under the monitor that close flushes under, so no element is left behind
+            if (closed)
+                throw new IllegalStateException("Producer buffers closed");
+            if (count == 0)
+                since = System.nanoTime();
+            elements[count++] = element;
+            if (count == elements.length)
+                flush();
+        }
+
+        synchronized void flush() {
+            if (count == 0)
+                return;
+            queue.offerAll(elements, 0, count);
+            Arrays.fill(elements, 0, count, null);
+            count = 0;
+        }
+
+        synchronized void flushIfStale(long now) {
+            if (count > 0 && now - since >= maxStalenessNanos / 2)
+                flush();
+        }
+
+        synchronized boolean isEmpty() {
+            return count == 0;
+        }
+    }
+
+    /**
+     * @param queue        the queue the batches go to
+     * @param batchSize    elements per batch, and so the number of offers
+     *                     sharing one CAS on the tail
+     * @param maxStaleness about how long an element may wait in a batch
+     * @param unit         the unit of {@code maxStaleness}
+     * @throws IllegalArgumentException if {@code batchSize} or
+     *                                  {@code maxStaleness} is not positive
+     */
+    public ProducerBuffers(ConcurrentMostRecentlyInsertedQueue<E> queue, int batchSize, long maxStaleness,
+                           TimeUnit unit) {
+        if (queue == null || unit == null)
+            throw new NullPointerException();
+        if (batchSize <= 0 || maxStaleness <= 0)
+            throw new IllegalArgumentException();
+        this.queue = queue;
+        this.batchSize = batchSize;
+        this.maxStalenessNanos = unit.toNanos(maxStaleness);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "producer-buffers-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(TimeUnit.MICROSECONDS.toNanos(100), maxStalenessNanos / 2);
+        flusher.scheduleAtFixedRate(this::flushStale, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    private Buffer newBuffer() {
+        Buffer buffer = new Buffer();
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Buffers the element for the calling thread's next batch.
+     *
+     * @throws NullPointerException  if the element is null
+     * @throws IllegalStateException if the buffers were closed
+     */
+    public void offer(E element) {
+        if (element == null)
+            throw new NullPointerException("Element can not be null!");
+        local.get().add(element);
+    }
+
+    /**
+     * Flushes the calling thread's batch into the queue.
+     */
+    public void flush() {
+        local.get().flush();
+    }
+
+    /**
+     * Flushes every thread's batch into the queue.
+     */
+    public void flushAll() {
+        for (Buffer buffer : buffers) {
+            buffer.flush();
+        }
+    }
+
+    private void flushStale() {
+        long now = System.nanoTime();
+        for (Buffer buffer : buffers) {
+            buffer.flushIfStale(now);
+            // forget the buffers of threads that are gone, once drained
+            if (buffer.owner.get() == null && buffer.isEmpty())
+                buffers.remove(buffer);
+        }
+    }
+
+    /**
+     * Stops the background flushing and flushes every batch. Later offers
+     * are rejected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flusher.shutdownNow();
+        flushAll();
+    }
+}
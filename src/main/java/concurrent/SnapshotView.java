@@ -0,0 +1,212 @@
+package concurrent;
+
+import summary.QueueListener;
+import summary.Summaries;
+
+import java.io.Closeable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Read-mostly view of a {@link ConcurrentMostRecentlyInsertedQueue}: the
+ * queue's contents are copied into an immutable array, published with one
+ * volatile write, which any number of readers then index or iterate with no
+ * synchronization, no pointer chasing and no elements turning null under
+ * them.
+ * <p>
+ * A writer publishes a new snapshot once {@code everyInserts} elements have
+ * been linked since the last one, and a background thread does every
+ * {@code interval} if the queue changed, so a snapshot is never older than
+ * either bound. Writers that do not publish only read the tail's sequence
+ * and the current snapshot; a writer that finds another one publishing
+ * leaves it to that one, which checks again when done and publishes once
+ * more if {@code everyInserts} elements went in meanwhile. The copy itself is a weakly consistent walk, like
+ * {@link ConcurrentMostRecentlyInsertedQueue#iterator()}, and its cost is
+ * shared by every read until the next snapshot.
+ * <p>
+ * The view publishes through the queue's {@link
+ * ConcurrentMostRecentlyInsertedQueue#setListener listener}, chained after
+ * the one already set; a listener set after the view replaces it, and only
+ * the timed publication goes on.
+ *
+ * @param <E> the type of elements
+ */
+public final class SnapshotView<E> implements Iterable<E>, Closeable {
+
+    private final ConcurrentMostRecentlyInsertedQueue<E> queue;
+    private final int everyInserts;
+    private final AtomicBoolean publishing = new AtomicBoolean();
+    private final ScheduledExecutorService publisher;
+    private final QueueListener<? super E> previous;
+    private final QueueListener<E> chained;
+
+    private volatile Snapshot<E> current;
+
+    /**
+     * Immutable, contiguous copy of the queue
+     */
+    private static final class Snapshot<E> extends AbstractList<E> implements RandomAccess {
+        private final Object[] elements;
+
+        /**
+         * Sequence of the last element linked before the copy began
+         */
+        final long sequence;
+
+        Snapshot(Object[] elements, long sequence) {
+            this.elements = elements;
+            this.sequence = sequence;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            if (index < 0 || index >= elements.length)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.length);
+            return (E) elements[index];
+        }
+
+        public int size() {
+            return elements.length;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return elements.clone();
+        }
+    }
+
+    /**
+     * Publishes a first snapshot of the queue and starts publishing.
+     *
+     * @param queue        the queue to read
+     * @param everyInserts inserts after which a writer publishes, or 0 for
+     *                     timed publication only
+     * @param interval     period of the timed publication, or 0 for none
+     * @param unit         the unit of {@code interval}
+     * @throws IllegalArgumentException if a bound is negative or neither is
+     *                                  positive
+     */
+    public SnapshotView(ConcurrentMostRecentlyInsertedQueue<E> queue, int everyInserts, long interval,
+                        TimeUnit unit) {
+        if (queue == null || unit == null)
+            throw new NullPointerException();
+        if (everyInserts < 0 || interval < 0 || (everyInserts == 0 && interval == 0))
+            throw new IllegalArgumentException();
+        this.queue = queue;
+        this.everyInserts = everyInserts;
+        publish();
+        if (everyInserts > 0) {
+            this.previous = queue.getListener();
+            this.chained = chain(new Publisher(), previous);
+            queue.setListener(chained);
+        } else {
+            this.previous = null;
+            this.chained = null;
+        }
+        if (interval > 0) {
+            this.publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "snapshot-view-publisher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            publisher.scheduleAtFixedRate(this::publishIfChanged, interval, interval, unit);
+        } else {
+            this.publisher = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> QueueListener<E> chain(QueueListener<E> publisher, QueueListener<? super E> previous) {
+        return previous == null ? publisher : Summaries.all(publisher, previous);
+    }
+
+    /**
+     * Publishes a snapshot of the queue as it is now, unless another thread
+     * is publishing one; that one then covers the elements inserted so far.
+     */
+    public void publish() {
+        while (publishing.compareAndSet(false, true)) {
+            try {
+                long sequence = queue.lastSequence();
+                Object[] elements = queue.toArray();
+                // the walk may pass elements evicted while it ran: keep the newest window
+                int capacity = queue.capacity();
+                if (elements.length > capacity)
+                    elements = Arrays.copyOfRange(elements, elements.length - capacity, elements.length);
+                current = new Snapshot<>(elements, sequence);
+            } finally {
+                publishing.set(false);
+            }
+            // writers that found this one publishing left their inserts to it
+            if (!isStale())
+                return;
+        }
+    }
+
+    private boolean isStale() {
+        return everyInserts > 0 && queue.lastSequence() - current.sequence >= everyInserts;
+    }
+
+    private void publishIfChanged() {
+        Snapshot<E> s = current;
+        if (queue.lastSequence() != s.sequence || queue.size() != s.size())
+            publish();
+    }
+
+    /**
+     * Returns the latest snapshot, oldest element first. The list is
+     * immutable and stays the same while newer snapshots are published.
+     */
+    public List<E> snapshot() {
+        return current;
+    }
+
+    /**
+     * Iterates over the latest snapshot.
+     */
+    public Iterator<E> iterator() {
+        return current.iterator();
+    }
+
+    /**
+     * Returns the number of elements in the latest snapshot.
+     */
+    public int size() {
+        return current.size();
+    }
+
+    /**
+     * Stops publishing and takes the view's listener off the queue, unless
+     * it was replaced meanwhile. The latest snapshot can still be read.
+     */
+    @Override
+    public void close() {
+        if (publisher != null)
+            publisher.shutdownNow();
+        if (chained != null && queue.getListener() == chained)
+            queue.setListener(previous);
+    }
+
+    /**
+     * Publishes from the inserting thread once enough elements went in
+     */
+    private final class Publisher implements QueueListener<E> {
+        public void inserted(E element) {
+            if (isStale() && !publishing.get())
+                publish();
+        }
+
+        public void removed(E element) {
+        }
+
+        public void evicted(E element) {
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package core;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The built-in {@link EvictionPolicy} implementations.
+ */
+final class EvictionPolicies {
+
+    static final EvictionPolicy<Object> OLDEST = new EvictionPolicy<Object>() {
+        @Override
+        public EvictionPolicy.Window<Object> newWindow(int capacity) {
+            return new EvictionPolicy.Window<Object>() {
+                @Override
+                public void inserted(EvictionPolicy.Entry<Object> entry) {
+                }
+
+                @Override
+                public void removed(EvictionPolicy.Entry<Object> entry) {
+                }
+
+                @Override
+                public EvictionPolicy.Entry<Object> victim(EvictionPolicy.Entry<Object> oldest) {
+                    return oldest;
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "EvictionPolicy[oldest]";
+        }
+    };
+
+    private EvictionPolicies() {
+    }
+
+    /**
+     * Orders entries by the element comparator, then oldest first.
+     */
+    private static <E> Comparator<EvictionPolicy.Entry<E>> entryOrder(Comparator<? super E> elements) {
+        Objects.requireNonNull(elements);
+        return (a, b) -> {
+            int c = elements.compare(a.element(), b.element());
+            return c != 0 ? c : Long.compare(a.sequence(), b.sequence());
+        };
+    }
+
+    static final class LowestPriority<E> implements EvictionPolicy<E> {
+        private final Comparator<EvictionPolicy.Entry<E>> order;
+
+        LowestPriority(Comparator<? super E> priority) {
+            this.order = entryOrder(priority);
+        }
+
+        @Override
+        public EvictionPolicy.Window<E> newWindow(int capacity) {
+            return new Heap<>(capacity, order);
+        }
+
+        @Override
+        public String toString() {
+            return "EvictionPolicy[lowestPriority]";
+        }
+    }
+
+    /**
+     * Binary min-heap of entries; every entry's slot is its index in the
+     * heap, so that removing an arbitrary entry takes O(log n).
+     */
+    private static final class Heap<E> implements EvictionPolicy.Window<E> {
+        private final Comparator<EvictionPolicy.Entry<E>> order;
+        private EvictionPolicy.Entry<E>[] heap;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        Heap(int capacity, Comparator<EvictionPolicy.Entry<E>> order) {
+            this.order = order;
+            // at most 64K entries up front, grown on demand for queues sized far above their use
+            this.heap = (EvictionPolicy.Entry<E>[]) new EvictionPolicy.Entry<?>[Math.min(capacity, 1 << 16)];
+        }
+
+        @Override
+        public void inserted(EvictionPolicy.Entry<E> entry) {
+            if (size == heap.length)
+                heap = Arrays.copyOf(heap, size << 1);
+            siftUp(size++, entry);
+        }
+
+        @Override
+        public void removed(EvictionPolicy.Entry<E> entry) {
+            int i = entry.slot();
+            EvictionPolicy.Entry<E> last = heap[--size];
+            heap[size] = null;
+            if (i == size)
+                return;
+            siftDown(i, last);
+            if (heap[i] == last)
+                siftUp(i, last);
+        }
+
+        @Override
+        public EvictionPolicy.Entry<E> victim(EvictionPolicy.Entry<E> oldest) {
+            return heap[0];
+        }
+
+        private void siftUp(int i, EvictionPolicy.Entry<E> entry) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                EvictionPolicy.Entry<E> p = heap[parent];
+                if (order.compare(entry, p) >= 0)
+                    break;
+                place(i, p);
+                i = parent;
+            }
+            place(i, entry);
+        }
+
+        private void siftDown(int i, EvictionPolicy.Entry<E> entry) {
+            int half = size >>> 1;
+            while (i < half) {
+                int child = (i << 1) + 1;
+                EvictionPolicy.Entry<E> c = heap[child];
+                int right = child + 1;
+                if (right < size && order.compare(heap[right], c) < 0)
+                    c = heap[child = right];
+                if (order.compare(entry, c) <= 0)
+                    break;
+                place(i, c);
+                i = child;
+            }
+            place(i, entry);
+        }
+
+        private void place(int i, EvictionPolicy.Entry<E> entry) {
+            heap[i] = entry;
+            entry.slot(i);
+        }
+    }
+
+    static final class Sampled<E> implements EvictionPolicy<E> {
+        private final int samples;
+        private final Comparator<EvictionPolicy.Entry<E>> order;
+
+        Sampled(int samples, Comparator<? super E> score) {
+            if (samples <= 0)
+                throw new IllegalArgumentException();
+            this.samples = samples;
+            this.order = entryOrder(score);
+        }
+
+        @Override
+        public EvictionPolicy.Window<E> newWindow(int capacity) {
+            return new Sample<>(capacity, samples, order);
+        }
+
+        @Override
+        public String toString() {
+            return "EvictionPolicy[sampled, samples=" + samples + "]";
+        }
+    }
+
+    /**
+     * Dense array of entries, each entry's slot being its index; a removal
+     * moves the last entry into the hole.
+     */
+    private static final class Sample<E> implements EvictionPolicy.Window<E> {
+        private final int samples;
+        private final Comparator<EvictionPolicy.Entry<E>> order;
+        private EvictionPolicy.Entry<E>[] entries;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        Sample(int capacity, int samples, Comparator<EvictionPolicy.Entry<E>> order) {
+            this.samples = samples;
+            this.order = order;
+            this.entries = (EvictionPolicy.Entry<E>[]) new EvictionPolicy.Entry<?>[Math.min(capacity, 1 << 16)];
+        }
+
+        @Override
+        public void inserted(EvictionPolicy.Entry<E> entry) {
+            if (size == entries.length)
+                entries = Arrays.copyOf(entries, size << 1);
+            entries[size] = entry;
+            entry.slot(size++);
+        }
+
+        @Override
+        public void removed(EvictionPolicy.Entry<E> entry) {
+            int i = entry.slot();
+            EvictionPolicy.Entry<E> last = entries[--size];
+            entries[size] = null;
+            if (i != size) {
+                entries[i] = last;
+                last.slot(i);
+            }
+        }
+
+        @Override
+        public EvictionPolicy.Entry<E> victim(EvictionPolicy.Entry<E> oldest) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            EvictionPolicy.Entry<E> victim = entries[random.nextInt(size)];
+            for (int i = 1; i < samples; i++) {
+                EvictionPolicy.Entry<E> candidate = entries[random.nextInt(size)];
+                if (order.compare(candidate, victim) < 0)
+                    victim = candidate;
+            }
+            return victim;
+        }
+    }
+}
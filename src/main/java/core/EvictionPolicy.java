@@ -0,0 +1,114 @@
+package core;
+
+import java.util.Comparator;
+
+/**
+ * Chooses which retained element a full {@link MostRecentlyInsertedQueue}
+ * evicts to make room for a new one. Eviction never changes the read order:
+ * the remaining elements are still polled and iterated oldest first.
+ * <p>
+ * A policy creates one {@link Window} per queue, which the queue keeps up to
+ * date with every insert and removal, and asks for a victim when it is full.
+ * The window must answer in time sub-linear in the capacity; it may keep one
+ * {@code int} in every entry to find that entry again.
+ * <p>
+ * The built-in policies:
+ * <ul>
+ * <li>{@link #oldest()} evicts the head, as the queue always did</li>
+ * <li>{@link #lowestPriority} keeps an indexed binary heap and evicts its
+ * minimum, in O(log n) per insert and removal</li>
+ * <li>{@link #sampled} evicts the lowest of a few random entries, in
+ * O(samples) per eviction and O(1) per insert and removal</li>
+ * </ul>
+ *
+ * @param <E> the type of elements
+ */
+public interface EvictionPolicy<E> {
+
+    /**
+     * Returns the policy that evicts the oldest element. A queue with this
+     * policy does not allocate a window at all.
+     */
+    @SuppressWarnings("unchecked")
+    static <E> EvictionPolicy<E> oldest() {
+        return (EvictionPolicy<E>) EvictionPolicies.OLDEST;
+    }
+
+    /**
+     * Returns a policy that evicts the element of lowest priority, the
+     * oldest of them if several are equally low.
+     *
+     * @param priority orders the elements, least priority first
+     * @throws NullPointerException if {@code priority} is null
+     */
+    static <E> EvictionPolicy<E> lowestPriority(Comparator<? super E> priority) {
+        return new EvictionPolicies.LowestPriority<>(priority);
+    }
+
+    /**
+     * Returns a policy that evicts the lowest scoring of {@code samples}
+     * entries picked at random, the oldest of them if several score equally
+     * low. The victim approximates the minimum: with 5 samples it is within
+     * the lowest fifth of the window about two times in three.
+     *
+     * @param samples number of entries drawn per eviction
+     * @param score   orders the elements, the one to evict first
+     * @throws IllegalArgumentException if {@code samples} is not positive
+     * @throws NullPointerException     if {@code score} is null
+     */
+    static <E> EvictionPolicy<E> sampled(int samples, Comparator<? super E> score) {
+        return new EvictionPolicies.Sampled<>(samples, score);
+    }
+
+    /**
+     * Returns the state tracking the retained elements of one queue.
+     *
+     * @param capacity the capacity of the queue
+     */
+    Window<E> newWindow(int capacity);
+
+    /**
+     * The retained elements of one queue, as far as the policy is concerned.
+     */
+    interface Window<E> {
+
+        /**
+         * Called after an entry was appended to the queue.
+         */
+        void inserted(Entry<E> entry);
+
+        /**
+         * Called before an entry is removed from the queue, by a poll or
+         * an eviction.
+         */
+        void removed(Entry<E> entry);
+
+        /**
+         * Returns the entry to evict. Only called while the queue is full.
+         *
+         * @param oldest the head of the queue
+         */
+        Entry<E> victim(Entry<E> oldest);
+    }
+
+    /**
+     * An element retained by a queue.
+     */
+    interface Entry<E> {
+
+        E element();
+
+        /**
+         * Returns the position of this entry among all the elements ever
+         * inserted into its queue; older entries have smaller sequences.
+         */
+        long sequence();
+
+        /**
+         * Returns the value last set by the window, initially 0.
+         */
+        int slot();
+
+        void slot(int slot);
+    }
+}
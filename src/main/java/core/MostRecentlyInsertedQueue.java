@@ -1,5 +1,16 @@
 package core;
 
+import checkpoint.CheckpointReader;
+import checkpoint.CheckpointWriter;
+import checkpoint.ElementCodec;
+import events.EvictionEvent;
+import summary.QueueListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.AbstractQueue;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -13,18 +24,85 @@ public class MostRecentlyInsertedQueue<E> extends AbstractQueue<E> implements
     private int capacity;
     private int amountOfElements;
 
+    /**
+     * Tracks the entries for the eviction policy, or null to evict the head
+     */
+    private final EvictionPolicy.Window<E> window;
+
+    /**
+     * Number of elements ever inserted, the sequence of the next entry
+     */
+    private long inserted;
+
+    /**
+     * Told about every element entering and leaving, or null
+     */
+    private QueueListener<? super E> listener;
+
     //helper class
     private static class Node<E> {
         private E item;
         private Node<E> next;
     }
 
+    /**
+     * Node of a queue with an eviction policy, which may have to unlink
+     * it from the middle of the list.
+     */
+    private static final class Entry<E> extends Node<E> implements EvictionPolicy.Entry<E> {
+        private Node<E> prev;
+        private long sequence;
+        private int slot;
+
+        public E element() {
+            return ((Node<E>) this).item;
+        }
+
+        public long sequence() {
+            return sequence;
+        }
+
+        public int slot() {
+            return slot;
+        }
+
+        public void slot(int slot) {
+            this.slot = slot;
+        }
+    }
+
     public MostRecentlyInsertedQueue(int capacity) {
+        this(capacity, EvictionPolicy.oldest());
+    }
+
+    /**
+     * Creates a queue that, when full, evicts the element the policy picks.
+     * The other elements keep their FIFO order.
+     *
+     * @param capacity the capacity of this queue
+     * @param policy   chooses the element to evict
+     * @throws IllegalArgumentException if {@code capacity} is not positive
+     * @throws NullPointerException     if {@code policy} is null
+     */
+    public MostRecentlyInsertedQueue(int capacity, EvictionPolicy<E> policy) {
         if (capacity <= 0) throw new IllegalArgumentException();
+        if (policy == null) throw new NullPointerException();
         this.capacity = capacity;
         this.amountOfElements = 0;
         this.head = null;
         this.tail = null;
+        this.window = policy == EvictionPolicy.oldest() ? null : policy.newWindow(capacity);
+    }
+
+    /**
+     * Sets the listener told about every element that enters or leaves this
+     * queue, for example a {@link summary.Summaries#window window summary}.
+     * Elements already in the queue are not reported.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setListener(QueueListener<? super E> listener) {
+        this.listener = listener;
     }
 
     /**
@@ -59,7 +137,9 @@ public class MostRecentlyInsertedQueue<E> extends AbstractQueue<E> implements
             amountOfElements++;
             return true;
         } else if (amountOfElements >= capacity) {
-            poll();
+            E evicted = window == null ? removeHead() : evict();
+            QueueListener.reportEvicted(listener, evicted);
+            EvictionEvent.emit(this, capacity, 1);
             insertElementToQueue(item);
             amountOfElements++;
             return true;
@@ -73,14 +153,44 @@ public class MostRecentlyInsertedQueue<E> extends AbstractQueue<E> implements
      * @param item the item to add
      */
     private void insertElementToQueue(E item) {
-        Node current = tail;
-        tail = new Node<>();
+        Node<E> current = tail;
+        if (window == null) {
+            tail = new Node<>();
+        } else {
+            Entry<E> entry = new Entry<>();
+            entry.prev = current;
+            entry.sequence = inserted++;
+            tail = entry;
+        }
         tail.item = item;
         if (isEmpty()) {
             head = tail;
         } else {
             current.next = tail;
         }
+        if (window != null)
+            window.inserted((Entry<E>) tail);
+        QueueListener.reportInserted(listener, item);
+    }
+
+    /**
+     * Removes and returns the element the eviction policy picks.
+     */
+    private E evict() {
+        Entry<E> victim = (Entry<E>) window.victim((Entry<E>) head);
+        window.removed(victim);
+        Node<E> prev = victim.prev;
+        Node<E> next = ((Node<E>) victim).next;
+        if (prev == null)
+            head = next;
+        else
+            prev.next = next;
+        if (next == null)
+            tail = prev;
+        else
+            ((Entry<E>) next).prev = prev;
+        amountOfElements--;
+        return victim.element();
     }
 
     /**
@@ -94,8 +204,21 @@ public class MostRecentlyInsertedQueue<E> extends AbstractQueue<E> implements
         if (isEmpty()) {
             throw new NoSuchElementException("Queue is empty");
         }
+        E item = removeHead();
+        QueueListener.reportRemoved(listener, item);
+        return item;
+    }
+
+    /**
+     * Unlinks and returns the head of this non-empty queue.
+     */
+    private E removeHead() {
+        if (window != null)
+            window.removed((Entry<E>) head);
         E item = head.item;
         head = head.next;
+        if (head instanceof Entry)
+            ((Entry<E>) head).prev = null;
         amountOfElements--;
 
         if (isEmpty()) {
@@ -137,6 +260,77 @@ public class MostRecentlyInsertedQueue<E> extends AbstractQueue<E> implements
             throw new NullPointerException("You can't offer a 'null' element");
     }
 
+    /**
+     * Writes the items of this queue to the stream in FIFO order.
+     *
+     * @param out   the stream, left open
+     * @param codec converts the items to bytes
+     */
+    public void writeTo(OutputStream out, ElementCodec<? super E> codec) throws IOException {
+        writeTo(out, codec, false);
+    }
+
+    /**
+     * Writes the items of this queue to the stream in FIFO order,
+     * optionally compressing every chunk.
+     */
+    public void writeTo(OutputStream out, ElementCodec<? super E> codec, boolean compress) throws IOException {
+        writeTo(new CheckpointWriter<E>(out, codec, compress));
+    }
+
+    /**
+     * Writes the items of this queue to the channel in FIFO order.
+     */
+    public void writeTo(WritableByteChannel channel, ElementCodec<? super E> codec) throws IOException {
+        writeTo(channel, codec, false);
+    }
+
+    /**
+     * Writes the items of this queue to the channel in FIFO order,
+     * optionally compressing every chunk.
+     */
+    public void writeTo(WritableByteChannel channel, ElementCodec<? super E> codec, boolean compress)
+            throws IOException {
+        writeTo(new CheckpointWriter<E>(channel, codec, compress));
+    }
+
+    private void writeTo(CheckpointWriter<E> writer) throws IOException {
+        for (Node<E> p = head; p != null; p = p.next) {
+            writer.write(p.item);
+        }
+        writer.finish();
+    }
+
+    /**
+     * Offers every item of a checkpoint to this queue, in the order they
+     * were written. Older items are evicted as usual if the checkpoint holds
+     * more items than the capacity.
+     *
+     * @param in    the stream, left open
+     * @param codec converts bytes to items
+     * @return the number of items read
+     */
+    public int readFrom(InputStream in, ElementCodec<? extends E> codec) throws IOException {
+        return readFrom(new CheckpointReader<E>(in, codec));
+    }
+
+    /**
+     * Offers every item of a checkpoint read from the channel to this queue.
+     *
+     * @return the number of items read
+     */
+    public int readFrom(ReadableByteChannel channel, ElementCodec<? extends E> codec) throws IOException {
+        return readFrom(new CheckpointReader<E>(channel, codec));
+    }
+
+    private int readFrom(CheckpointReader<E> reader) throws IOException {
+        int n = 0;
+        for (E item; (item = reader.read()) != null; n++) {
+            offer(item);
+        }
+        return n;
+    }
+
     /**
      * Returns an iterator that iterates over the items in this queue in FIFO order.
      *
@@ -0,0 +1,318 @@
+package core;
+
+import checkpoint.BlockCompressor;
+import checkpoint.ElementCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Bounded queue for large windows that keeps only its newest elements as
+ * objects. Once more than {@code hotCapacity} elements are live, the oldest
+ * {@code segmentSize} of them are serialized with the codec and compressed
+ * into a cold segment, a single byte array. Reads decode a segment only when
+ * they get to it.
+ * <p>
+ * When the queue is full, an offer evicts the whole oldest cold segment, so
+ * the size drops by up to {@code segmentSize} at once; with no cold segment
+ * it evicts the oldest element like {@link MostRecentlyInsertedQueue}.
+ * <p>
+ * Like {@link MostRecentlyInsertedQueue} this class is not thread-safe, and
+ * its iterator does not support removal.
+ */
+public class TieredMostRecentlyInsertedQueue<E> extends AbstractQueue<E> {
+
+    private final int capacity;
+    private final int hotCapacity;
+    private final int segmentSize;
+    private final ElementCodec<E> codec;
+    private final BlockCompressor compressor = new BlockCompressor();
+
+    /**
+     * Newest elements, oldest first
+     */
+    private final ArrayDeque<E> hot;
+
+    /**
+     * Older elements, oldest segment first
+     */
+    private final ArrayDeque<Segment> cold = new ArrayDeque<>();
+
+    /**
+     * Number of live elements in cold segments
+     */
+    private int coldCount;
+
+    /**
+     * Decoded elements of the oldest segment while polls consume it
+     */
+    private Object[] decodedHead;
+
+    /**
+     * Serialized elements of a segment, compressed as one block.
+     */
+    private static final class Segment {
+        final byte[] block;
+        final int rawLength;
+        final int count;
+
+        /**
+         * Number of elements already polled from the front
+         */
+        int polled;
+
+        Segment(byte[] block, int rawLength, int count) {
+            this.block = block;
+            this.rawLength = rawLength;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Creates a tiered queue.
+     *
+     * @param capacity    the capacity of this queue
+     * @param hotCapacity the most elements kept as objects
+     * @param segmentSize the number of elements per cold segment
+     * @param codec       converts elements to and from bytes
+     * @throws IllegalArgumentException unless
+     *                                  {@code 0 < segmentSize <= hotCapacity <= capacity}
+     * @throws NullPointerException     if {@code codec} is null
+     */
+    public TieredMostRecentlyInsertedQueue(int capacity, int hotCapacity, int segmentSize, ElementCodec<E> codec) {
+        if (segmentSize <= 0 || hotCapacity < segmentSize || capacity < hotCapacity)
+            throw new IllegalArgumentException();
+        if (codec == null)
+            throw new NullPointerException();
+        this.capacity = capacity;
+        this.hotCapacity = hotCapacity;
+        this.segmentSize = segmentSize;
+        this.codec = codec;
+        this.hot = new ArrayDeque<>(hotCapacity);
+    }
+
+    /**
+     * Returns the number of items in this queue.
+     *
+     * @return the number of items in this queue
+     */
+    public int size() {
+        return coldCount + hot.size();
+    }
+
+    /**
+     * Returns true if this queue is empty.
+     *
+     * @return true if this queue is empty; false otherwise
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of cold segments.
+     */
+    public int segments() {
+        return cold.size();
+    }
+
+    /**
+     * Inserts the item, evicting the oldest segment or item if this queue
+     * is full.
+     *
+     * @param item the item to add
+     * @throws NullPointerException if the item is null
+     */
+    public boolean offer(E item) {
+        if (item == null)
+            throw new NullPointerException("You can't offer a 'null' element");
+        if (size() >= capacity) {
+            if (cold.isEmpty())
+                hot.poll();
+            else
+                dropOldestSegment();
+        }
+        hot.offer(item);
+        if (hot.size() > hotCapacity)
+            freeze();
+        return true;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue.
+     *
+     * @return the head of this queue
+     * @throws NoSuchElementException if this queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        if (cold.isEmpty()) {
+            if (hot.isEmpty())
+                throw new NoSuchElementException("Queue is empty");
+            return hot.poll();
+        }
+        Segment first = cold.peekFirst();
+        if (decodedHead == null)
+            decodedHead = decode(first);
+        E item = (E) decodedHead[first.polled];
+        decodedHead[first.polled++] = null;
+        coldCount--;
+        if (first.polled == first.count) {
+            cold.pollFirst();
+            decodedHead = null;
+        }
+        return item;
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of this queue
+     *
+     * @return the head of this queue
+     * @throws NoSuchElementException if this queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        if (cold.isEmpty()) {
+            if (hot.isEmpty())
+                throw new NoSuchElementException("Queue is empty");
+            return hot.peek();
+        }
+        Segment first = cold.peekFirst();
+        if (decodedHead == null)
+            decodedHead = decode(first);
+        return (E) decodedHead[first.polled];
+    }
+
+    /**
+     * Clear the queue
+     */
+    public void clear() {
+        hot.clear();
+        cold.clear();
+        coldCount = 0;
+        decodedHead = null;
+    }
+
+    /**
+     * Returns an iterator over the items in FIFO order, decoding a cold
+     * segment when it gets to it.
+     */
+    public Iterator<E> iterator() {
+        return new TieredIterator();
+    }
+
+    private void dropOldestSegment() {
+        Segment first = cold.pollFirst();
+        coldCount -= first.count - first.polled;
+        decodedHead = null;
+    }
+
+    /**
+     * Packs the oldest {@code segmentSize} hot elements into a cold segment.
+     */
+    private void freeze() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(segmentSize * 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            Iterator<E> it = hot.iterator();
+            for (int i = 0; i < segmentSize; i++) {
+                codec.write(it.next(), out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // only once the codec succeeded for all of them
+        for (int i = 0; i < segmentSize; i++) {
+            hot.poll();
+        }
+        byte[] raw = bytes.toByteArray();
+        byte[] block = new byte[BlockCompressor.maxCompressedLength(raw.length)];
+        int length = compressor.compress(raw, raw.length, block, 0);
+        cold.addLast(new Segment(Arrays.copyOf(block, length), raw.length, segmentSize));
+        coldCount += segmentSize;
+    }
+
+    /**
+     * Returns every element of the segment, including those already polled.
+     */
+    private Object[] decode(Segment segment) {
+        byte[] raw = new byte[segment.rawLength];
+        Object[] items = new Object[segment.count];
+        try {
+            BlockCompressor.decompress(segment.block, segment.block.length, raw, raw.length);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+            for (int i = 0; i < items.length; i++) {
+                items[i] = codec.read(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return items;
+    }
+
+    private class TieredIterator implements Iterator<E> {
+
+        private final Iterator<Segment> segments = cold.iterator();
+        private Iterator<E> hotItems;
+        private Object[] items;
+        private int index;
+
+        TieredIterator() {
+            nextSegment();
+        }
+
+        /**
+         * Decodes the next segment holding live items, or moves on to the
+         * hot elements if there is none.
+         */
+        private void nextSegment() {
+            while (segments.hasNext()) {
+                Segment segment = segments.next();
+                if (segment.polled < segment.count) {
+                    items = (segment == cold.peekFirst() && decodedHead != null) ? decodedHead : decode(segment);
+                    index = segment.polled;
+                    return;
+                }
+            }
+            items = null;
+            hotItems = hot.iterator();
+        }
+
+        public boolean hasNext() {
+            return items != null || hotItems.hasNext();
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (items == null)
+                return hotItems.next();
+            E item = (E) items[index++];
+            if (index == items.length)
+                nextSegment();
+            return item;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (Iterator<E> it = iterator(); it.hasNext(); ) {
+            sb.append(it.next());
+            if (it.hasNext())
+                sb.append(", ");
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
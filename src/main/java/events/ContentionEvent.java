@@ -0,0 +1,56 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a burst of failed CAS attempts on the head or
+ * tail of a lock-free queue: one operation that had to retry at least
+ * {@link #MIN_RETRIES} times because other threads kept winning the race.
+ * Single retries are normal under any concurrency and are not recorded.
+ */
+@Name("queue.Contention")
+@Label("Queue Contention")
+@Category("Most Recently Inserted Queue")
+@Description("An operation that lost the race on head or tail several times in a row")
+@StackTrace(false)
+public final class ContentionEvent extends Event {
+
+    /**
+     * Fewest retries of one operation recorded as a burst
+     */
+    public static final int MIN_RETRIES = 4;
+
+    private static final EventType TYPE = EventType.getEventType(ContentionEvent.class);
+
+    @Label("Queue Type")
+    String queueType;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Retries")
+    int retries;
+
+    /**
+     * Records the retries of an operation if they make a burst.
+     *
+     * @param operation the retrying method, such as {@code "offer"}
+     */
+    public static void emit(Object queue, String operation, int retries) {
+        if (retries < MIN_RETRIES || !TYPE.isEnabled())
+            return;
+        ContentionEvent event = new ContentionEvent();
+        if (event.shouldCommit()) {
+            event.queueType = queue.getClass().getName();
+            event.operation = operation;
+            event.retries = retries;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for elements a full queue evicted to make room for
+ * newer ones, one event per insertion (or batch insertion) that evicted.
+ */
+@Name("queue.Eviction")
+@Label("Queue Eviction")
+@Category("Most Recently Inserted Queue")
+@Description("Elements evicted by an insertion into a full queue")
+@StackTrace(false)
+public final class EvictionEvent extends Event {
+
+    /**
+     * Checked before creating an event, so that offers allocate nothing
+     * unless a recording enables the event, even before the JIT could
+     * eliminate the allocation
+     */
+    private static final EventType TYPE = EventType.getEventType(EvictionEvent.class);
+
+    @Label("Queue Type")
+    String queueType;
+
+    @Label("Capacity")
+    int capacity;
+
+    @Label("Evicted")
+    int evicted;
+
+    /**
+     * Records that the queue evicted {@code evicted} elements. When Flight
+     * Recorder is off or the event disabled, this costs a field read.
+     */
+    public static void emit(Object queue, int capacity, int evicted) {
+        if (!TYPE.isEnabled())
+            return;
+        EvictionEvent event = new EvictionEvent();
+        if (event.shouldCommit()) {
+            event.queueType = queue.getClass().getName();
+            event.capacity = capacity;
+            event.evicted = evicted;
+            event.commit();
+        }
+    }
+}
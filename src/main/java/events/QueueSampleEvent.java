@@ -0,0 +1,93 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Flight Recorder event sampling the size of the registered queues, once a
+ * second unless the recording sets another period. Queues are sampled only
+ * once {@link #register registered}, and only while a recording has the
+ * event enabled: the queues themselves do nothing for it.
+ */
+@Name("queue.Sample")
+@Label("Queue Sample")
+@Category("Most Recently Inserted Queue")
+@Description("Size and capacity of a registered queue")
+@Period("1 s")
+@StackTrace(false)
+public final class QueueSampleEvent extends Event {
+
+    private static final CopyOnWriteArrayList<Sampled> QUEUES = new CopyOnWriteArrayList<>();
+
+    static {
+        FlightRecorder.addPeriodicEvent(QueueSampleEvent.class, QueueSampleEvent::sample);
+    }
+
+    @Label("Name")
+    String name;
+
+    @Label("Queue Type")
+    String queueType;
+
+    @Label("Size")
+    int size;
+
+    @Label("Capacity")
+    int capacity;
+
+    /**
+     * Queue registered for sampling; a weak reference, so that registering
+     * does not keep a queue alive
+     */
+    private static final class Sampled extends WeakReference<Collection<?>> {
+        final String name;
+        final int capacity;
+
+        Sampled(Collection<?> queue, String name, int capacity) {
+            super(queue);
+            this.name = name;
+            this.capacity = capacity;
+        }
+    }
+
+    /**
+     * Samples the queue's size with every period of the event, until the
+     * queue is garbage collected. The queue's {@code size()} must be safe
+     * to call from the recorder's thread.
+     *
+     * @param name     tells the queue apart in the recording
+     * @param queue    the queue
+     * @param capacity its capacity, which the queues do not all expose
+     */
+    public static void register(String name, Collection<?> queue, int capacity) {
+        if (name == null || queue == null)
+            throw new NullPointerException();
+        QUEUES.add(new Sampled(queue, name, capacity));
+    }
+
+    private static void sample() {
+        for (Sampled sampled : QUEUES) {
+            Collection<?> queue = sampled.get();
+            if (queue == null) {
+                QUEUES.remove(sampled);
+                continue;
+            }
+            QueueSampleEvent event = new QueueSampleEvent();
+            event.name = sampled.name;
+            event.queueType = queue.getClass().getName();
+            event.size = queue.size();
+            event.capacity = sampled.capacity;
+            event.commit();
+        }
+    }
+}
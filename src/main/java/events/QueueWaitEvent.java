@@ -0,0 +1,64 @@
+package events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for a thread waiting on a blocking queue: a put
+ * for space, a take, poll or drain for elements. The event spans the whole
+ * wait, so it lines up with GC pauses and thread stalls in the recording.
+ * Waits shorter than the threshold, 10 ms unless the recording sets
+ * another, are not recorded.
+ * <p>
+ * A queue creates the event only once it has to wait, so waits are the
+ * only operations paying for it.
+ */
+@Name("queue.Wait")
+@Label("Queue Wait")
+@Category("Most Recently Inserted Queue")
+@Description("A thread waiting for space or elements in a blocking queue")
+@Threshold("10 ms")
+public final class QueueWaitEvent extends Event {
+
+    @Label("Queue Type")
+    String queueType;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Capacity")
+    int capacity;
+
+    @Label("Size")
+    @Description("Number of elements when the wait ended")
+    int size;
+
+    /**
+     * Starts timing a wait.
+     */
+    public static QueueWaitEvent start() {
+        QueueWaitEvent event = new QueueWaitEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the wait and records it if it lasted at least the threshold.
+     *
+     * @param operation the waiting method, such as {@code "put"}
+     */
+    public void finish(Object queue, String operation, int capacity, int size) {
+        end();
+        if (shouldCommit()) {
+            this.queueType = queue.getClass().getName();
+            this.operation = operation;
+            this.capacity = capacity;
+            this.size = size;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package factory;
+
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import core.MostRecentlyInsertedQueue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Queue that starts as an unsynchronized {@link MostRecentlyInsertedQueue}
+ * owned by the first thread using it, and inflates to a
+ * {@link ConcurrentMostRecentlyInsertedQueue} the first time another thread
+ * uses it, keeping its contents. Once inflated it stays concurrent.
+ * <p>
+ * While single-owned, an operation costs the plain queue's work plus one
+ * uncontended CAS and one release store on a state word, which is what
+ * lets another thread take over safely: the inflating thread waits until
+ * the owner is between operations, copies the elements to the concurrent
+ * queue and then switches every thread over to it. Any operation by another
+ * thread inflates, including {@code size()} or iteration, so a queue that
+ * is monitored from a second thread is better built concurrent from the
+ * start.
+ * <p>
+ * Like both engines, {@link #poll()} throws on an empty queue; {@link #peek()}
+ * returns null.
+ *
+ * @param <E> the type of elements held in this queue
+ */
+public class AdaptiveMostRecentlyInsertedQueue<E> extends AbstractQueue<E> {
+
+    private static final int SINGLE = 0;
+    private static final int BUSY = 1;
+    private static final int INFLATING = 2;
+    private static final int INFLATED = 3;
+
+    private static final VarHandle STATE;
+    private static final VarHandle OWNER;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STATE = lookup.findVarHandle(AdaptiveMostRecentlyInsertedQueue.class, "state", int.class);
+            OWNER = lookup.findVarHandle(AdaptiveMostRecentlyInsertedQueue.class, "owner", Thread.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int capacity;
+
+    /**
+     * The queue while single-owned; only the owner touches it, between a
+     * successful SINGLE to BUSY transition and the release back to SINGLE
+     */
+    private MostRecentlyInsertedQueue<E> single;
+
+    /**
+     * The queue once inflated, published by the INFLATED state
+     */
+    private ConcurrentMostRecentlyInsertedQueue<E> inflated;
+
+    /**
+     * The thread the single-owned queue belongs to, claimed by the first
+     * operation
+     */
+    private Thread owner;
+
+    private volatile int state;
+
+    public AdaptiveMostRecentlyInsertedQueue(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException();
+        this.capacity = capacity;
+        this.single = new MostRecentlyInsertedQueue<>(capacity);
+    }
+
+    /**
+     * Returns whether this queue has switched to the concurrent engine.
+     */
+    public boolean isInflated() {
+        return state == INFLATED;
+    }
+
+    /**
+     * Starts an operation of the owner on the single-owned queue.
+     *
+     * @return true if the caller owns the queue and must call
+     * {@link #release()} after the operation; false if the queue is
+     * inflated, possibly by this very call
+     */
+    private boolean acquire() {
+        Thread current = Thread.currentThread();
+        if (owner != current && !OWNER.compareAndSet(this, null, current)) {
+            inflate();
+            return false;
+        }
+        if (STATE.compareAndSet(this, SINGLE, BUSY))
+            return true;
+        awaitInflated();
+        return false;
+    }
+
+    private void release() {
+        STATE.setRelease(this, SINGLE);
+    }
+
+    /**
+     * Switches to the concurrent engine once the owner is between
+     * operations, copying the elements in FIFO order.
+     */
+    private void inflate() {
+        for (; ; ) {
+            int s = state;
+            if (s == INFLATED)
+                return;
+            if (s == SINGLE && STATE.compareAndSet(this, SINGLE, INFLATING))
+                break;
+            Thread.onSpinWait();
+        }
+        ConcurrentMostRecentlyInsertedQueue<E> queue = new ConcurrentMostRecentlyInsertedQueue<>(capacity);
+        for (E element : single) {
+            queue.offer(element);
+        }
+        inflated = queue;
+        single = null;
+        state = INFLATED;
+    }
+
+    private void awaitInflated() {
+        while (state != INFLATED) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public boolean offer(E element) {
+        if (acquire()) {
+            try {
+                return single.offer(element);
+            } finally {
+                release();
+            }
+        }
+        return inflated.offer(element);
+    }
+
+    /**
+     * Retrieves and removes the head of this queue.
+     *
+     * @return the head of this queue
+     * @throws NoSuchElementException if this queue is empty
+     */
+    public E poll() {
+        if (acquire()) {
+            try {
+                return single.poll();
+            } finally {
+                release();
+            }
+        }
+        return inflated.poll();
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of this queue
+     *
+     * @return the head of this queue, or null if this queue is empty
+     */
+    public E peek() {
+        if (acquire()) {
+            try {
+                return single.isEmpty() ? null : single.peek();
+            } finally {
+                release();
+            }
+        }
+        return inflated.peek();
+    }
+
+    public int size() {
+        if (acquire()) {
+            try {
+                return single.size();
+            } finally {
+                release();
+            }
+        }
+        return inflated.size();
+    }
+
+    public void clear() {
+        if (acquire()) {
+            try {
+                single.clear();
+                return;
+            } finally {
+                release();
+            }
+        }
+        inflated.clear();
+    }
+
+    /**
+     * Returns an iterator over the elements in FIFO order. While the queue
+     * is single-owned it iterates the plain queue, and keeps doing so if
+     * another thread inflates the queue meanwhile.
+     */
+    public Iterator<E> iterator() {
+        if (acquire()) {
+            try {
+                return single.iterator();
+            } finally {
+                release();
+            }
+        }
+        return inflated.iterator();
+    }
+}
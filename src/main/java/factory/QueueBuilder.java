@@ -0,0 +1,223 @@
+package factory;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import blocking.QueueJournal;
+import blocking.SpillStore;
+import checkpoint.ElementCodec;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import concurrent.ContentionPolicy;
+import core.MostRecentlyInsertedQueue;
+import core.TieredMostRecentlyInsertedQueue;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Picks the cheapest queue that fits a workload. Describe what the queue
+ * has to support and {@link #build()} returns:
+ * <ul>
+ * <li>a {@link MostRecentlyInsertedBlockingQueue} if takes must wait, or the
+ * queue is journaled or spills to disk: only that engine does these;</li>
+ * <li>a {@link MostRecentlyInsertedQueue}, with no synchronization at all,
+ * if one thread owns the queue, or a {@link TieredMostRecentlyInsertedQueue}
+ * if its elements are also to be stored compactly;</li>
+ * <li>a {@link ConcurrentMostRecentlyInsertedQueue} if several threads use
+ * it, with backoff when more than two contend and elimination when several
+ * consume;</li>
+ * <li>an {@link AdaptiveMostRecentlyInsertedQueue} if the threads are not
+ * known: it runs unsynchronized until a second thread shows up.</li>
+ * </ul>
+ * A builder is not thread-safe and may build several queues.
+ *
+ * @param <E> the type of elements
+ */
+public final class QueueBuilder<E> {
+
+    /**
+     * The queue implementations a builder chooses from
+     */
+    public enum Engine {
+        SINGLE_THREADED, TIERED, CONCURRENT, BLOCKING, ADAPTIVE
+    }
+
+    private final int capacity;
+    private boolean confined;
+    private int producers;
+    private int consumers;
+    private boolean blocking;
+    private QueueJournal<E> journal;
+    private SpillStore<E> spill;
+    private ElementCodec<E> codec;
+    private int hotCapacity;
+    private int segmentSize;
+
+    private QueueBuilder(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns a builder of queues keeping the given number of most recent
+     * elements.
+     *
+     * @throws IllegalArgumentException if {@code capacity} is not positive
+     */
+    public static <E> QueueBuilder<E> withCapacity(int capacity) {
+        return new QueueBuilder<>(capacity);
+    }
+
+    /**
+     * The queue is only ever used by one thread at a time, with
+     * happens-before between the threads handing it over.
+     */
+    public QueueBuilder<E> confined() {
+        this.confined = true;
+        return this;
+    }
+
+    /**
+     * The number of threads inserting and removing; a thread doing both
+     * counts in both. One producer that is also the only consumer is a
+     * {@link #confined()} queue.
+     *
+     * @throws IllegalArgumentException if either number is not positive
+     */
+    public QueueBuilder<E> threads(int producers, int consumers) {
+        if (producers <= 0 || consumers <= 0)
+            throw new IllegalArgumentException();
+        this.producers = producers;
+        this.consumers = consumers;
+        return this;
+    }
+
+    /**
+     * Consumers wait for elements with {@code take} or a timed
+     * {@code poll}, which needs the blocking engine.
+     */
+    public QueueBuilder<E> blocking() {
+        this.blocking = true;
+        return this;
+    }
+
+    /**
+     * The queue survives restarts through the journal, which the blocking
+     * engine replays when it is built.
+     */
+    public QueueBuilder<E> journal(QueueJournal<E> journal) {
+        if (journal == null)
+            throw new NullPointerException();
+        this.journal = journal;
+        return this;
+    }
+
+    /**
+     * Elements beyond the capacity go to the store instead of being
+     * evicted, which needs the blocking engine.
+     */
+    public QueueBuilder<E> spill(SpillStore<E> spill) {
+        if (spill == null)
+            throw new NullPointerException();
+        this.spill = spill;
+        return this;
+    }
+
+    /**
+     * Only the {@code hotCapacity} newest elements are kept as objects;
+     * older ones are encoded by the codec into compressed segments of
+     * {@code segmentSize} elements. Worthwhile for primitive-like elements
+     * such as numbers and short strings, which encode to a few bytes. The
+     * tiered engine is not thread-safe, so this implies {@link #confined()}.
+     *
+     * @throws IllegalArgumentException if a size is not positive
+     */
+    public QueueBuilder<E> compact(ElementCodec<E> codec, int hotCapacity, int segmentSize) {
+        if (codec == null)
+            throw new NullPointerException();
+        if (hotCapacity <= 0 || segmentSize <= 0)
+            throw new IllegalArgumentException();
+        this.codec = codec;
+        this.hotCapacity = hotCapacity;
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Returns the engine {@link #build()} would use.
+     *
+     * @throws IllegalStateException if no engine supports the combination
+     */
+    public Engine engine() {
+        boolean needsBlocking = blocking || journal != null || spill != null;
+        if (journal != null && spill != null)
+            throw new IllegalStateException("A queue can not both journal and spill");
+        if (codec != null) {
+            if (needsBlocking || (producers > 0 && !confined))
+                throw new IllegalStateException("Compact storage needs a confined queue");
+            return Engine.TIERED;
+        }
+        if (needsBlocking)
+            return Engine.BLOCKING;
+        if (confined)
+            return Engine.SINGLE_THREADED;
+        return producers > 0 ? Engine.CONCURRENT : Engine.ADAPTIVE;
+    }
+
+    /**
+     * Returns a new queue of the engine that fits.
+     *
+     * @throws IllegalStateException if no engine supports the combination
+     * @throws IOException           if the journal can not be replayed
+     */
+    public Queue<E> build() throws IOException {
+        switch (engine()) {
+            case TIERED:
+                return new TieredMostRecentlyInsertedQueue<>(capacity, hotCapacity, segmentSize, codec);
+            case BLOCKING:
+                return newBlocking();
+            case SINGLE_THREADED:
+                return new MostRecentlyInsertedQueue<>(capacity);
+            case CONCURRENT:
+                return new ConcurrentMostRecentlyInsertedQueue<>(capacity, false, contention());
+            default:
+                return new AdaptiveMostRecentlyInsertedQueue<>(capacity);
+        }
+    }
+
+    /**
+     * Returns a new blocking queue, whatever else was described.
+     *
+     * @throws IllegalStateException if the queue is to be compact or to
+     *                               both journal and spill
+     * @throws IOException           if the journal can not be replayed
+     */
+    public BlockingQueue<E> buildBlocking() throws IOException {
+        if (codec != null)
+            throw new IllegalStateException("Compact storage needs a confined queue");
+        if (journal != null && spill != null)
+            throw new IllegalStateException("A queue can not both journal and spill");
+        return newBlocking();
+    }
+
+    private MostRecentlyInsertedBlockingQueue<E> newBlocking() throws IOException {
+        if (journal != null)
+            return new MostRecentlyInsertedBlockingQueue<>(capacity, journal);
+        if (spill != null)
+            return new MostRecentlyInsertedBlockingQueue<>(capacity, spill);
+        return new MostRecentlyInsertedBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Returns the contention management for the thread counts: none for
+     * one producer and one consumer, which rarely collide, backoff beyond
+     * that, and elimination too once several consumers may find the queue
+     * empty together.
+     */
+    private ContentionPolicy contention() {
+        if (producers + consumers <= 2)
+            return ContentionPolicy.NONE;
+        ContentionPolicy policy = ContentionPolicy.backoff(16, 4096);
+        return consumers > 1 ? policy.withElimination(Math.max(1, consumers / 2), 256) : policy;
+    }
+}
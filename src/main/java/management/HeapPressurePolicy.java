@@ -0,0 +1,151 @@
+package management;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shrinks the {@link QueueManagement registered} queues while the heap is
+ * under pressure, and gives them their capacity back once it is not.
+ * <p>
+ * Pressure is measured after garbage collection, so that garbage about to
+ * be collected does not count: the policy sets the collection usage
+ * threshold of every heap pool to {@code highWater} of its maximum, and
+ * when a pool's notification reports the threshold exceeded, every
+ * registered queue is cut to {@code shrinkFactor} of its configured
+ * capacity, evicting its oldest elements. The policy also listens to the
+ * collectors, and after a collection that leaves every pool below
+ * {@code lowWater} restores the configured capacities. The gap between the
+ * two marks keeps the queues from flapping.
+ */
+public final class HeapPressurePolicy implements AutoCloseable {
+
+    private final double highWater;
+    private final double lowWater;
+    private final double shrinkFactor;
+
+    private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener listener = this::handle;
+
+    private boolean shrunk;
+
+    private HeapPressurePolicy(double highWater, double lowWater, double shrinkFactor) {
+        if (!(0 < lowWater && lowWater < highWater && highWater < 1) || !(0 < shrinkFactor && shrinkFactor < 1))
+            throw new IllegalArgumentException();
+        this.highWater = highWater;
+        this.lowWater = lowWater;
+        this.shrinkFactor = shrinkFactor;
+    }
+
+    /**
+     * Starts watching the heap.
+     *
+     * @param highWater    fraction of a pool used after collection at which
+     *                     the queues shrink, such as 0.85
+     * @param lowWater     fraction below which they are restored, such as 0.6
+     * @param shrinkFactor fraction of the configured capacity the queues keep
+     *                     under pressure, such as 0.5
+     * @throws IllegalArgumentException unless
+     *                                  {@code 0 < lowWater < highWater < 1} and
+     *                                  {@code 0 < shrinkFactor < 1}
+     */
+    public static HeapPressurePolicy install(double highWater, double lowWater, double shrinkFactor) {
+        HeapPressurePolicy policy = new HeapPressurePolicy(highWater, lowWater, shrinkFactor);
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * highWater));
+                policy.pools.add(pool);
+            }
+        }
+        NotificationEmitter memory = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        memory.addNotificationListener(policy.listener,
+                n -> MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(n.getType()), null);
+        policy.emitters.add(memory);
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(policy.listener, null, null);
+                policy.emitters.add((NotificationEmitter) collector);
+            }
+        }
+        return policy;
+    }
+
+    private void handle(Notification notification, Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            shrink();
+        } else if (isShrunk() && usedAfterCollection() < lowWater) {
+            restore();
+        }
+    }
+
+    /**
+     * Returns the highest fraction of its maximum any heap pool used after
+     * its latest collection.
+     */
+    private double usedAfterCollection() {
+        double used = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0)
+                used = Math.max(used, (double) usage.getUsed() / usage.getMax());
+        }
+        return used;
+    }
+
+    /**
+     * Cuts the registered queues to the shrink factor of their configured
+     * capacity, as a threshold notification does.
+     */
+    public synchronized void shrink() {
+        if (shrunk)
+            return;
+        shrunk = true;
+        QueueManagement.scaleAll(shrinkFactor);
+    }
+
+    /**
+     * Gives the registered queues their configured capacity back.
+     */
+    public synchronized void restore() {
+        if (!shrunk)
+            return;
+        shrunk = false;
+        QueueManagement.scaleAll(1);
+    }
+
+    public synchronized boolean isShrunk() {
+        return shrunk;
+    }
+
+    /**
+     * Stops watching the heap, clears the thresholds and restores the
+     * queues.
+     */
+    @Override
+    public void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (ListenerNotFoundException e) {
+                // removed already
+            }
+        }
+        emitters.clear();
+        for (MemoryPoolMXBean pool : pools) {
+            pool.setCollectionUsageThreshold(0);
+        }
+        pools.clear();
+        restore();
+    }
+}
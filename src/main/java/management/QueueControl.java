@@ -0,0 +1,158 @@
+package management;
+
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+
+/**
+ * The MBean of one registered queue. It reads the queue directly and
+ * counts evictions through a listener chained in front of the queue's own,
+ * so set a queue's listener before registering it.
+ */
+public final class QueueControl implements QueueMXBean, AutoCloseable {
+
+    private final String name;
+    private final ObjectName objectName;
+    private final Collection<?> queue;
+    private final IntSupplier capacity;
+    private final IntConsumer resize;
+    private final IntSupplier waitingProducers;
+    private final IntSupplier waitingConsumers;
+
+    /**
+     * Puts the queue's own listener back
+     */
+    private final Runnable detach;
+
+    private final LongAdder evictions;
+
+    private volatile int configuredCapacity;
+
+    /**
+     * Fraction of the configured capacity in effect
+     */
+    private volatile double scale = 1;
+
+    private long rateCount;
+    private long rateNanos = System.nanoTime();
+    private double rate;
+
+    QueueControl(String name, Collection<?> queue, IntSupplier capacity, IntConsumer resize,
+                 IntSupplier waitingProducers, IntSupplier waitingConsumers, LongAdder evictions,
+                 Runnable detach) {
+        this.name = name;
+        try {
+            this.objectName = new ObjectName("queue:type=MostRecentlyInsertedQueue,name=" + ObjectName.quote(name));
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException(e);
+        }
+        this.queue = queue;
+        this.capacity = capacity;
+        this.resize = resize;
+        this.waitingProducers = waitingProducers;
+        this.waitingConsumers = waitingConsumers;
+        this.evictions = evictions;
+        this.detach = detach;
+        this.configuredCapacity = capacity.getAsInt();
+    }
+
+    /**
+     * Returns the name this MBean is registered under.
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return queue.getClass().getName();
+    }
+
+    public int getSize() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity.getAsInt();
+    }
+
+    public int getConfiguredCapacity() {
+        return configuredCapacity;
+    }
+
+    public synchronized void setConfiguredCapacity(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+        configuredCapacity = capacity;
+        apply();
+    }
+
+    /**
+     * Sets the capacity in effect to the fraction of the configured one.
+     */
+    synchronized void scale(double scale) {
+        this.scale = scale;
+        apply();
+    }
+
+    private void apply() {
+        int target = Math.max(1, (int) (configuredCapacity * scale));
+        if (target != capacity.getAsInt())
+            resize.accept(target);
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public synchronized double getEvictionRate() {
+        long now = System.nanoTime();
+        long elapsed = now - rateNanos;
+        if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+            long count = evictions.sum();
+            rate = (count - rateCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            rateCount = count;
+            rateNanos = now;
+        }
+        return rate;
+    }
+
+    public int getWaitingProducers() {
+        return waitingProducers.getAsInt();
+    }
+
+    public int getWaitingConsumers() {
+        return waitingConsumers.getAsInt();
+    }
+
+    /**
+     * Unregisters the MBean, stops counting evictions and gives the queue
+     * its configured capacity back.
+     */
+    @Override
+    public void close() {
+        if (!QueueManagement.remove(this))
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // already unregistered through the server
+        }
+        detach.run();
+        scale(1);
+    }
+
+    @Override
+    public String toString() {
+        return "QueueControl[" + objectName + "]";
+    }
+}
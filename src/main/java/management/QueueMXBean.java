@@ -0,0 +1,56 @@
+package management;
+
+/**
+ * Management interface of a queue registered with
+ * {@link QueueManagement#register}, under the object name
+ * {@code queue:type=MostRecentlyInsertedQueue,name=<name>}.
+ */
+public interface QueueMXBean {
+
+    /**
+     * The name the queue was registered under
+     */
+    String getName();
+
+    /**
+     * The class of the queue
+     */
+    String getType();
+
+    int getSize();
+
+    /**
+     * The capacity in effect, lower than the configured one while a
+     * {@link HeapPressurePolicy} shrinks the queues
+     */
+    int getCapacity();
+
+    /**
+     * The capacity asked for, which the queue returns to when heap
+     * pressure subsides
+     */
+    int getConfiguredCapacity();
+
+    void setConfiguredCapacity(int capacity);
+
+    /**
+     * Elements evicted since registration
+     */
+    long getEvictionCount();
+
+    /**
+     * Evictions per second, measured between the two latest reads of this
+     * attribute at least a second apart
+     */
+    double getEvictionRate();
+
+    /**
+     * Threads waiting for space, always 0 for a lock-free queue
+     */
+    int getWaitingProducers();
+
+    /**
+     * Threads waiting for elements, always 0 for a lock-free queue
+     */
+    int getWaitingConsumers();
+}
@@ -0,0 +1,151 @@
+package management;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import summary.QueueListener;
+import summary.Summaries;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registers queues with the platform MBean server, where they can be
+ * watched and resized, and where a {@link HeapPressurePolicy} finds them.
+ * Only the thread-safe queues can be registered: JMX and the memory
+ * notifications call them from their own threads.
+ */
+public final class QueueManagement {
+
+    private static final List<QueueControl> CONTROLS = new CopyOnWriteArrayList<>();
+
+    /**
+     * Fraction of their configured capacity the registered queues run at
+     */
+    private static volatile double scale = 1;
+
+    private QueueManagement() {
+    }
+
+    /**
+     * Registers the MBean of a lock-free queue.
+     *
+     * @param name tells the queue apart; unique among the registered queues
+     * @return the MBean, whose {@code close()} unregisters it
+     * @throws IllegalArgumentException if a queue is registered under the name
+     */
+    public static <E> QueueControl register(String name, ConcurrentMostRecentlyInsertedQueue<E> queue) {
+        QueueListener<? super E> previous = queue.getListener();
+        Counter counter = new Counter();
+        QueueListener<E> chained = chain(counter, previous);
+        QueueControl control = register(new QueueControl(name, queue, queue::capacity, queue::setCapacity,
+                () -> 0, () -> 0, counter.evictions, () -> {
+            if (queue.getListener() == chained)
+                queue.setListener(previous);
+        }));
+        queue.setListener(chained);
+        return control;
+    }
+
+    /**
+     * Registers the MBean of a blocking queue. A queue in overflow mode can
+     * not be resized, so it can not be registered.
+     *
+     * @param name tells the queue apart; unique among the registered queues
+     * @return the MBean, whose {@code close()} unregisters it
+     * @throws IllegalArgumentException if a queue is registered under the
+     *                                  name, or the queue spills
+     */
+    public static <E> QueueControl register(String name, MostRecentlyInsertedBlockingQueue<E> queue) {
+        if (queue.isSpilling())
+            throw new IllegalArgumentException("A spilling queue can not be resized");
+        QueueListener<? super E> previous = queue.getListener();
+        Counter counter = new Counter();
+        QueueListener<E> chained = chain(counter, previous);
+        QueueControl control = register(new QueueControl(name, queue, queue::capacity, queue::setCapacity,
+                queue::waitingProducers, queue::waitingConsumers, counter.evictions, () -> {
+            if (queue.getListener() == chained)
+                queue.setListener(previous);
+        }));
+        queue.setListener(chained);
+        return control;
+    }
+
+    /**
+     * Returns the registered queues.
+     */
+    public static List<QueueControl> registered() {
+        return new ArrayList<>(CONTROLS);
+    }
+
+    private static QueueControl register(QueueControl control) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(control, control.getObjectName());
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalArgumentException("A queue is already registered as " + control.getName(), e);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+        CONTROLS.add(control);
+        try {
+            control.scale(scale);
+        } catch (RuntimeException e) {
+            control.close();
+            throw e;
+        }
+        return control;
+    }
+
+    static boolean remove(QueueControl control) {
+        return CONTROLS.remove(control);
+    }
+
+    /**
+     * Runs every registered queue, and those registered later, at the
+     * fraction of its configured capacity. A queue that fails to resize
+     * does not keep the others from it; the first failure is thrown once
+     * all were tried.
+     */
+    static synchronized void scaleAll(double fraction) {
+        scale = fraction;
+        RuntimeException failure = null;
+        for (QueueControl control : CONTROLS) {
+            try {
+                control.scale(fraction);
+            } catch (RuntimeException e) {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> QueueListener<E> chain(Counter counter, QueueListener<? super E> previous) {
+        return previous == null ? (QueueListener<E>) (QueueListener<?>) counter : Summaries.all(counter, previous);
+    }
+
+    /**
+     * Counts the evictions of one queue for its MBean
+     */
+    private static final class Counter implements QueueListener<Object> {
+        final LongAdder evictions = new LongAdder();
+
+        public void inserted(Object element) {
+        }
+
+        public void removed(Object element) {
+        }
+
+        public void evicted(Object element) {
+            evictions.increment();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package summary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch of element frequencies with a bounded set of heavy
+ * hitter candidates, for approximate top-K queries.
+ * <p>
+ * The sketch is {@code depth} rows of {@code width} counters; an element
+ * increments one counter per row and its estimate is the smallest of them,
+ * which never underestimates and overestimates by at most {@code e / width}
+ * of the total count with probability {@code 1 - e^-depth}. Counters are
+ * decremented on removal, so the sketch can follow a sliding window.
+ * <p>
+ * Candidates are the elements whose estimate was high when they were added.
+ * A new element displaces the weakest candidate only if its estimate beats
+ * the weakest estimate seen last, which is the only step costing
+ * O(candidates), under a lock. The counters are atomic; the summary is
+ * thread-safe.
+ *
+ * @param <E> the type of elements
+ */
+public final class CountMinTopK<E> implements Summary<E> {
+
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+    private final int maxCandidates;
+    private final Map<E, Boolean> candidates = new ConcurrentHashMap<>();
+
+    /**
+     * Estimate a new element must exceed to become a candidate once the
+     * candidate set is full
+     */
+    private volatile long threshold;
+
+    /**
+     * @param width         counters per row, rounded up to a power of two
+     * @param depth         number of rows
+     * @param maxCandidates the most elements tracked for {@link #topK}
+     * @throws IllegalArgumentException if an argument is not positive
+     */
+    public CountMinTopK(int width, int depth, int maxCandidates) {
+        if (width <= 0 || depth <= 0 || maxCandidates <= 0 || width > 1 << 30)
+            throw new IllegalArgumentException();
+        this.depth = depth;
+        int w = Integer.highestOneBit(width);
+        if (w < width)
+            w <<= 1;
+        this.mask = w - 1;
+        this.counters = new AtomicLongArray(w * depth);
+        this.maxCandidates = maxCandidates;
+    }
+
+    @Override
+    public void add(E element) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(element, row)));
+        }
+        if (candidates.containsKey(element))
+            return;
+        if (candidates.size() < maxCandidates) {
+            candidates.put(element, Boolean.TRUE);
+        } else if (estimate > threshold) {
+            admit(element, estimate);
+        }
+    }
+
+    @Override
+    public void remove(E element) {
+        for (int row = 0; row < depth; row++) {
+            counters.decrementAndGet(index(element, row));
+        }
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the element, never
+     * less than the true number.
+     */
+    public long estimate(E element) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(element, row)));
+        }
+        return Math.max(0, estimate);
+    }
+
+    /**
+     * Returns up to {@code k} candidates with the highest estimates, most
+     * frequent first, as entries of element and estimate. Candidates
+     * estimated at zero are dropped on the way.
+     */
+    public List<Map.Entry<E, Long>> topK(int k) {
+        List<Map.Entry<E, Long>> top = new ArrayList<>();
+        for (E element : candidates.keySet()) {
+            long estimate = estimate(element);
+            if (estimate == 0)
+                candidates.remove(element);
+            else
+                top.add(Map.entry(element, estimate));
+        }
+        top.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return top.size() > k ? new ArrayList<>(top.subList(0, k)) : top;
+    }
+
+    /**
+     * Replaces the weakest candidate with the element if it is estimated
+     * higher, and raises the threshold to the new weakest estimate.
+     */
+    private synchronized void admit(E element, long estimate) {
+        if (candidates.containsKey(element))
+            return;
+        E weakest = null;
+        long weakestEstimate = Long.MAX_VALUE;
+        long secondEstimate = Long.MAX_VALUE;
+        for (E candidate : candidates.keySet()) {
+            long e = estimate(candidate);
+            if (e < weakestEstimate) {
+                secondEstimate = weakestEstimate;
+                weakestEstimate = e;
+                weakest = candidate;
+            } else if (e < secondEstimate) {
+                secondEstimate = e;
+            }
+        }
+        if (weakest == null || estimate <= weakestEstimate) {
+            threshold = weakestEstimate;
+            return;
+        }
+        candidates.remove(weakest);
+        candidates.put(element, Boolean.TRUE);
+        threshold = Math.min(estimate, secondEstimate);
+    }
+
+    private int index(Object element, int row) {
+        return row * (mask + 1) + (int) (Summaries.hash(element, row) & mask);
+    }
+}
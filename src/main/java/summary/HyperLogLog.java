@@ -0,0 +1,79 @@
+package summary;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * HyperLogLog estimate of the number of distinct elements added, in
+ * {@code 2^precision} registers, with a standard error of about
+ * {@code 1.04 / sqrt(2^precision)} (1.6% at precision 12).
+ * <p>
+ * Elements are hashed from their {@code hashCode}, so elements with equal
+ * hash codes count as one. A register only ever grows, so the summary can
+ * not remove: it suits {@link Summaries#evicted} and insert-only streams;
+ * {@link LinearCounter} counts the distinct elements of a window.
+ * Registers are updated with a CAS; the summary is thread-safe.
+ *
+ * @param <E> the type of elements
+ */
+public final class HyperLogLog<E> implements Summary<E> {
+
+    private final int precision;
+    private final AtomicIntegerArray registers;
+
+    /**
+     * @param precision number of index bits, between 4 and 18
+     * @throws IllegalArgumentException if the precision is out of range
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18)
+            throw new IllegalArgumentException();
+        this.precision = precision;
+        this.registers = new AtomicIntegerArray(1 << precision);
+    }
+
+    @Override
+    public void add(E element) {
+        long hash = Summaries.hash(element, 0);
+        int index = (int) (hash >>> (64 - precision));
+        // rank of the first one bit among the remaining bits; a sentinel bit bounds it
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        for (int current; rank > (current = registers.get(index)); ) {
+            if (registers.compareAndSet(index, current, rank))
+                break;
+        }
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void remove(E element) {
+        throw new UnsupportedOperationException("HyperLogLog can not remove");
+    }
+
+    @Override
+    public boolean supportsRemoval() {
+        return false;
+    }
+
+    /**
+     * Returns the estimated number of distinct elements added.
+     */
+    public long estimate() {
+        int m = registers.length();
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            int r = registers.get(i);
+            sum += 1.0 / (1L << r);
+            if (r == 0)
+                zeros++;
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // linear counting is more accurate while many registers are still empty
+        if (estimate <= 2.5 * m && zeros > 0)
+            estimate = m * Math.log((double) m / zeros);
+        return Math.round(estimate);
+    }
+}
@@ -0,0 +1,63 @@
+package summary;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Estimate of the number of distinct elements in a window, by linear
+ * counting over counters instead of bits: an element increments one of
+ * {@code m} counters and its removal decrements it again, and the number of
+ * distinct elements is estimated from the counters at zero as
+ * {@code m ln(m / zeros)}. Unlike {@link HyperLogLog} it can remove, so it
+ * can follow {@link Summaries#window}.
+ * <p>
+ * The standard error is about {@code 0.85 / sqrt(m)} (2.7% for 1024
+ * counters) while the distinct count stays below {@code m}, and grows
+ * beyond; once every counter is taken the estimate saturates at
+ * {@code m ln m}. Sizing {@code m} to the capacity of the queue bounds the
+ * distinct count by {@code m}. Elements are hashed from their
+ * {@code hashCode}; the summary is thread-safe.
+ *
+ * @param <E> the type of elements
+ */
+public final class LinearCounter<E> implements Summary<E> {
+
+    private final AtomicIntegerArray counters;
+    private final AtomicInteger zeros;
+
+    /**
+     * @param counters number of counters, such as the queue capacity
+     * @throws IllegalArgumentException if {@code counters} is not positive
+     */
+    public LinearCounter(int counters) {
+        if (counters <= 0)
+            throw new IllegalArgumentException();
+        this.counters = new AtomicIntegerArray(counters);
+        this.zeros = new AtomicInteger(counters);
+    }
+
+    private int indexOf(E element) {
+        return (int) ((Summaries.hash(element, 0) >>> 1) % counters.length());
+    }
+
+    @Override
+    public void add(E element) {
+        if (counters.getAndIncrement(indexOf(element)) == 0)
+            zeros.decrementAndGet();
+    }
+
+    @Override
+    public void remove(E element) {
+        if (counters.decrementAndGet(indexOf(element)) == 0)
+            zeros.incrementAndGet();
+    }
+
+    /**
+     * Returns the estimated number of distinct elements in the summary.
+     */
+    public long estimate() {
+        int m = counters.length();
+        int z = Math.max(1, zeros.get());
+        return Math.round(m * Math.log((double) m / z));
+    }
+}
@@ -0,0 +1,111 @@
+package summary;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ToLongFunction;
+
+/**
+ * Quantiles of a non-negative numeric attribute of the elements, counted
+ * in a log-linear histogram: values below {@code 2^precisionBits} exactly,
+ * larger ones in buckets whose width is {@code 2^-(precisionBits - 1)} of
+ * their value. Adding or removing is one atomic increment, so the sketch
+ * can follow a sliding window; a quantile query walks the fixed number of
+ * buckets. The summary is thread-safe.
+ *
+ * @param <E> the type of elements
+ */
+public final class QuantileSketch<E> implements Summary<E> {
+
+    private final ToLongFunction<? super E> value;
+    private final int precisionBits;
+    private final int subBuckets;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+
+    /**
+     * @param value         the attribute of an element, never negative
+     * @param precisionBits {@code 7} keeps values within 1.6%, {@code 11}
+     *                      within 0.1%
+     * @throws IllegalArgumentException if the precision is not within 2 to 20
+     */
+    public QuantileSketch(ToLongFunction<? super E> value, int precisionBits) {
+        if (precisionBits < 2 || precisionBits > 20)
+            throw new IllegalArgumentException();
+        this.value = Objects.requireNonNull(value);
+        this.precisionBits = precisionBits;
+        this.subBuckets = 1 << precisionBits;
+        this.counts = new AtomicLongArray(subBuckets + (64 - precisionBits) * (subBuckets / 2));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value of the element is negative
+     */
+    @Override
+    public void add(E element) {
+        counts.incrementAndGet(indexOf(value.applyAsLong(element)));
+        totalCount.incrementAndGet();
+    }
+
+    @Override
+    public void remove(E element) {
+        counts.decrementAndGet(indexOf(value.applyAsLong(element)));
+        totalCount.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of values counted.
+     */
+    public long count() {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the highest value equivalent to the value at the quantile,
+     * 0 if nothing is counted. Under concurrent updates the counts are read
+     * one bucket at a time, so the answer is that of some recent state.
+     *
+     * @param quantile between 0 and 1
+     */
+    public long quantile(double quantile) {
+        if (quantile < 0 || quantile > 1)
+            throw new IllegalArgumentException();
+        long total = totalCount.get();
+        if (total <= 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        int last = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            if (c > 0) {
+                seen += c;
+                last = i;
+                if (seen >= rank)
+                    return highestEquivalent(i);
+            }
+        }
+        return highestEquivalent(last);
+    }
+
+    private int indexOf(long value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Negative value " + value);
+        if (value < subBuckets)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - precisionBits + 1;
+        int half = subBuckets / 2;
+        return subBuckets + (exponent - precisionBits) * half + (int) ((value >>> shift) - half);
+    }
+
+    private long highestEquivalent(int index) {
+        if (index < subBuckets)
+            return index;
+        int half = subBuckets / 2;
+        int k = index - subBuckets;
+        int shift = k / half + 1;
+        long mantissa = k % half + half;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
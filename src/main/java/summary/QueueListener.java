@@ -0,0 +1,77 @@
+package summary;
+
+/**
+ * Receives every change to the window of a queue: the elements that enter
+ * it and the elements that leave it, told apart by whether a consumer took
+ * them or an insertion pushed them out.
+ * <p>
+ * The queues call a listener on the thread doing the operation, possibly
+ * while holding their locks, so a listener must be thread-safe, fast and
+ * must not block or call back into the queue. It must not throw either: the
+ * queues call it through the {@code report} methods below, in the middle of
+ * an update, and an exception is handed to the thread's uncaught exception
+ * handler instead of leaving the queue half updated.
+ *
+ * @param <E> the type of elements
+ */
+public interface QueueListener<E> {
+
+    /**
+     * The element entered the window.
+     */
+    void inserted(E element);
+
+    /**
+     * The element left the window by a poll, take, drain or removal.
+     */
+    void removed(E element);
+
+    /**
+     * The element left the window because a newer one took its place.
+     */
+    void evicted(E element);
+
+    /**
+     * Tells the listener, if any, that the element entered the window.
+     */
+    static <E> void reportInserted(QueueListener<? super E> listener, E element) {
+        if (listener == null)
+            return;
+        try {
+            listener.inserted(element);
+        } catch (RuntimeException e) {
+            uncaught(e);
+        }
+    }
+
+    /**
+     * Tells the listener, if any, that a consumer took the element.
+     */
+    static <E> void reportRemoved(QueueListener<? super E> listener, E element) {
+        if (listener == null)
+            return;
+        try {
+            listener.removed(element);
+        } catch (RuntimeException e) {
+            uncaught(e);
+        }
+    }
+
+    /**
+     * Tells the listener, if any, that the element was evicted.
+     */
+    static <E> void reportEvicted(QueueListener<? super E> listener, E element) {
+        if (listener == null)
+            return;
+        try {
+            listener.evicted(element);
+        } catch (RuntimeException e) {
+            uncaught(e);
+        }
+    }
+
+    private static void uncaught(RuntimeException e) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+}
@@ -0,0 +1,114 @@
+package summary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Connects {@link Summary summaries} to queues.
+ * <p>
+ * A window summary describes the elements a queue holds right now: it adds
+ * every inserted element and removes every element that leaves, so it needs
+ * a summary that supports removal. An evicted summary describes everything
+ * the queue ever evicted, and only adds.
+ */
+public final class Summaries {
+
+    private Summaries() {
+    }
+
+    /**
+     * Returns a listener keeping the summary equal to the current window.
+     *
+     * @throws IllegalArgumentException if the summary can not remove
+     */
+    public static <E> QueueListener<E> window(Summary<? super E> summary) {
+        if (!summary.supportsRemoval())
+            throw new IllegalArgumentException(summary.getClass().getSimpleName() + " can not follow a window");
+        return new QueueListener<E>() {
+            @Override
+            public void inserted(E element) {
+                summary.add(element);
+            }
+
+            @Override
+            public void removed(E element) {
+                summary.remove(element);
+            }
+
+            @Override
+            public void evicted(E element) {
+                summary.remove(element);
+            }
+        };
+    }
+
+    /**
+     * Returns a listener adding every evicted element to the summary.
+     */
+    public static <E> QueueListener<E> evicted(Summary<? super E> summary) {
+        Objects.requireNonNull(summary);
+        return new QueueListener<E>() {
+            @Override
+            public void inserted(E element) {
+            }
+
+            @Override
+            public void removed(E element) {
+            }
+
+            @Override
+            public void evicted(E element) {
+                summary.add(element);
+            }
+        };
+    }
+
+    /**
+     * Returns a listener forwarding every change to all the listeners, in
+     * order.
+     */
+    @SafeVarargs
+    public static <E> QueueListener<E> all(QueueListener<? super E>... listeners) {
+        List<QueueListener<? super E>> copy = new ArrayList<>(listeners.length);
+        for (QueueListener<? super E> listener : listeners) {
+            copy.add(Objects.requireNonNull(listener));
+        }
+        return new QueueListener<E>() {
+            @Override
+            public void inserted(E element) {
+                for (QueueListener<? super E> listener : copy) {
+                    listener.inserted(element);
+                }
+            }
+
+            @Override
+            public void removed(E element) {
+                for (QueueListener<? super E> listener : copy) {
+                    listener.removed(element);
+                }
+            }
+
+            @Override
+            public void evicted(E element) {
+                for (QueueListener<? super E> listener : copy) {
+                    listener.evicted(element);
+                }
+            }
+        };
+    }
+
+    /**
+     * Spreads the hash code of the element over 64 bits (the finalizer of
+     * MurmurHash3), mixed with a seed so that rows of a sketch differ.
+     */
+    static long hash(Object element, long seed) {
+        long h = element.hashCode() + seed * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,31 @@
+package summary;
+
+/**
+ * Incrementally maintained approximate statistic of a multiset of elements.
+ * Both operations take constant time and the memory is fixed when the
+ * summary is created.
+ *
+ * @param <E> the type of elements
+ */
+public interface Summary<E> {
+
+    /**
+     * Adds one occurrence of the element.
+     */
+    void add(E element);
+
+    /**
+     * Removes one occurrence of an element previously added.
+     *
+     * @throws UnsupportedOperationException if this summary can only grow
+     */
+    void remove(E element);
+
+    /**
+     * Returns whether {@link #remove} is supported, which a window summary
+     * needs.
+     */
+    default boolean supportsRemoval() {
+        return true;
+    }
+}
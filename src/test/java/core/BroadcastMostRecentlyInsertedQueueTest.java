@@ -0,0 +1,80 @@
+package core;
+
+import concurrent.BroadcastMostRecentlyInsertedQueue;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class BroadcastMostRecentlyInsertedQueueTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void everyConsumerSeesEveryElementTest() {
+        BroadcastMostRecentlyInsertedQueue<Integer> queue = ConcurrentMostRecentlyInsertedQueue.broadcast(5);
+        BroadcastMostRecentlyInsertedQueue<Integer>.Consumer first = queue.register();
+        BroadcastMostRecentlyInsertedQueue<Integer>.Consumer second = queue.register();
+        queue.offer(1);
+        queue.offer(2);
+
+        Assert.assertEquals((Integer) 1, first.poll());
+        Assert.assertEquals("[2]", first.toString());
+        Assert.assertEquals("[1, 2]", second.toString());
+        Assert.assertEquals(2, second.size());
+        Assert.assertEquals((Integer) 1, second.peek());
+        Assert.assertEquals((Integer) 1, second.poll());
+    }
+
+    @Test
+    public void slowConsumerMissesEvictedTest() {
+        BroadcastMostRecentlyInsertedQueue<Integer> queue = ConcurrentMostRecentlyInsertedQueue.broadcast(3);
+        BroadcastMostRecentlyInsertedQueue<Integer>.Consumer fast = queue.register();
+        BroadcastMostRecentlyInsertedQueue<Integer>.Consumer slow = queue.register();
+        List<Integer> seen = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+            seen.add(fast.poll());
+        }
+        Assert.assertEquals(10, seen.size());
+        Assert.assertEquals((Integer) 7, slow.poll());
+        Assert.assertEquals(7, slow.missed());
+        Assert.assertEquals(0, fast.missed());
+    }
+
+    @Test
+    public void lateConsumerStartsAtTailTest() {
+        BroadcastMostRecentlyInsertedQueue<Integer> queue = ConcurrentMostRecentlyInsertedQueue.broadcast(3);
+        queue.offer(1);
+        BroadcastMostRecentlyInsertedQueue<Integer>.Consumer consumer = queue.register();
+        Assert.assertNull(consumer.peek());
+        queue.offer(2);
+        Assert.assertEquals((Integer) 2, consumer.poll());
+    }
+
+    @Test
+    public void pollEmptyConsumerTest() {
+        thrown.expect(NoSuchElementException.class);
+
+        ConcurrentMostRecentlyInsertedQueue.<Integer>broadcast(3).register().poll();
+    }
+
+    @Test
+    public void closedConsumerDoesNotHoldSlotsTest() {
+        BroadcastMostRecentlyInsertedQueue<Integer> queue = ConcurrentMostRecentlyInsertedQueue.broadcast(16);
+        BroadcastMostRecentlyInsertedQueue<Integer>.Consumer idle = queue.register();
+        BroadcastMostRecentlyInsertedQueue<Integer>.Consumer active = queue.register();
+        idle.close();
+        for (int i = 0; i < 100; i++) {
+            queue.offer(i);
+            Assert.assertEquals((Integer) i, active.poll());
+        }
+        Assert.assertEquals(1, queue.consumers());
+    }
+}
@@ -0,0 +1,129 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import checkpoint.BlockCompressor;
+import checkpoint.ElementCodec;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+public class CheckpointTest {
+
+    static final ElementCodec<Integer> INT_CODEC = new ElementCodec<Integer>() {
+        public void write(Integer element, DataOutput out) throws IOException {
+            out.writeInt(element);
+        }
+
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    static final ElementCodec<String> STRING_CODEC = new ElementCodec<String>() {
+        public void write(String element, DataOutput out) throws IOException {
+            out.writeUTF(element);
+        }
+
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void coreRoundTripTest() throws IOException {
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(100000);
+        for (int i = 0; i < 150000; i++) {
+            queue.offer(i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        queue.writeTo(out, INT_CODEC);
+
+        MostRecentlyInsertedQueue<Integer> restored = new MostRecentlyInsertedQueue<>(100000);
+        Assert.assertEquals(100000, restored.readFrom(new ByteArrayInputStream(out.toByteArray()), INT_CODEC));
+        Assert.assertEquals(100000, restored.size());
+        Assert.assertEquals((Integer) 50000, restored.peek());
+    }
+
+    @Test
+    public void concurrentCompressedRoundTripTest() throws IOException {
+        ConcurrentMostRecentlyInsertedQueue<String> queue = new ConcurrentMostRecentlyInsertedQueue<>(20000);
+        for (int i = 0; i < 20000; i++) {
+            queue.offer("event-" + (i % 100));
+        }
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        queue.writeTo(raw, STRING_CODEC);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        queue.writeTo(Channels.newChannel(compressed), STRING_CODEC, true);
+        Assert.assertTrue(compressed.size() * 4 < raw.size());
+
+        ConcurrentMostRecentlyInsertedQueue<String> restored = new ConcurrentMostRecentlyInsertedQueue<>(20000);
+        restored.readFrom(Channels.newChannel(new ByteArrayInputStream(compressed.toByteArray())), STRING_CODEC);
+        Assert.assertEquals(queue.toString(), restored.toString());
+    }
+
+    @Test
+    public void blockingRoundTripTest() throws IOException {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5000);
+        for (int i = 0; i < 7000; i++) {
+            queue.offer(i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        queue.writeTo(out, INT_CODEC, true);
+
+        MostRecentlyInsertedBlockingQueue<Integer> restored = new MostRecentlyInsertedBlockingQueue<>(3);
+        Assert.assertEquals(5000, restored.readFrom(new ByteArrayInputStream(out.toByteArray()), INT_CODEC));
+        Assert.assertEquals("[6997, 6998, 6999]", restored.toString());
+    }
+
+    @Test
+    public void emptyQueueRoundTripTest() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MostRecentlyInsertedQueue<Integer>(3).writeTo(out, INT_CODEC, true);
+
+        MostRecentlyInsertedQueue<Integer> restored = new MostRecentlyInsertedQueue<>(3);
+        Assert.assertEquals(0, restored.readFrom(new ByteArrayInputStream(out.toByteArray()), INT_CODEC));
+    }
+
+    @Test
+    public void truncatedCheckpointTest() throws IOException {
+        thrown.expect(IOException.class);
+
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(10);
+        queue.offer(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        queue.writeTo(out, INT_CODEC);
+        byte[] bytes = Arrays.copyOf(out.toByteArray(), out.size() - 3);
+        new MostRecentlyInsertedQueue<Integer>(10).readFrom(new ByteArrayInputStream(bytes), INT_CODEC);
+    }
+
+    @Test
+    public void compressorRoundTripTest() throws IOException {
+        Random random = new Random(42);
+        BlockCompressor compressor = new BlockCompressor();
+        for (int length : new int[]{0, 1, 7, 300, 70000}) {
+            byte[] src = new byte[length];
+            for (int i = 0; i < length; i++) {
+                src[i] = (byte) (random.nextInt(4) == 0 ? random.nextInt() : i % 13);
+            }
+            byte[] dst = new byte[BlockCompressor.maxCompressedLength(length)];
+            int n = compressor.compress(src, length, dst, 0);
+            byte[] back = new byte[length];
+            BlockCompressor.decompress(dst, n, back, length);
+            Assert.assertArrayEquals(src, back);
+        }
+    }
+}
@@ -2,14 +2,21 @@ package core;
 
 
 import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import concurrent.ContentionPolicy;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import summary.QueueListener;
 
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ConcurrentMostRecentlyInsertedQueueTest {
     static ConcurrentMostRecentlyInsertedQueue<Integer> testQueue = new ConcurrentMostRecentlyInsertedQueue<>(3) ;
@@ -98,4 +105,306 @@ public class ConcurrentMostRecentlyInsertedQueueTest {
         Assert.assertEquals(null, testStringQueue.peek());
     }
 
+    @Test
+    public void recyclingQueueKeepsMostRecentTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(3, true);
+        for (int i = 0; i < 10000; i++) {
+            queue.offer(i);
+        }
+        Assert.assertEquals("[9997, 9998, 9999]", queue.toString());
+        Assert.assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void iteratorSurvivesRecyclingTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(4, true);
+        for (int i = 0; i < 4; i++) {
+            queue.offer(i);
+        }
+        Iterator<Integer> it = queue.iterator();
+        Assert.assertEquals((Integer) 0, it.next());
+        for (int i = 4; i < 1000; i++) {
+            queue.offer(i);
+        }
+        int previous = 0;
+        while (it.hasNext()) {
+            int next = it.next();
+            Assert.assertTrue(next > previous);
+            previous = next;
+        }
+        Assert.assertEquals(999, previous);
+    }
+
+    @Test
+    public void iteratorRemoveTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(5, true);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        Iterator<Integer> it = queue.iterator();
+        it.next();
+        it.next();
+        it.remove();
+        Assert.assertEquals("[0, 2, 3, 4]", queue.toString());
+        Assert.assertEquals(4, queue.size());
+    }
+
+    @Test
+    public void offerAfterIteratorRemoveTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(3);
+        for (int i = 1; i <= 3; i++) {
+            queue.offer(i);
+        }
+        Iterator<Integer> it = queue.iterator();
+        it.next();
+        it.next();
+        it.remove();
+        queue.offer(4);
+        Assert.assertEquals("[1, 3, 4]", queue.toString());
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals((Integer) 1, queue.peek());
+        queue.offer(5);
+        Assert.assertEquals("[3, 4, 5]", queue.toString());
+        Assert.assertEquals((Integer) 3, queue.poll());
+        Assert.assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void saturatedRecyclingDoesNotAllocateTest() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(100, true);
+        Integer element = 42;
+        for (int i = 0; i < 100000; i++) {
+            queue.offer(element);
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 100000; i++) {
+            queue.offer(element);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        // a fresh node per offer would be well over a megabyte
+        Assert.assertTrue("allocated " + allocated, allocated < 100000);
+    }
+
+    @Test
+    public void sizeNeverExceedsCapacityTest() throws Exception {
+        final ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(8);
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    queue.offer(i);
+                }
+            });
+            producers[t].start();
+        }
+        boolean running = true;
+        while (running) {
+            int size = queue.size();
+            Assert.assertTrue("size " + size, size <= 8);
+            running = false;
+            for (Thread producer : producers) {
+                running |= producer.isAlive();
+            }
+        }
+        Assert.assertEquals(8, queue.size());
+    }
+
+    @Test
+    public void contendedOffersAndPollsKeepEveryElementOnceTest() throws Exception {
+        ContentionPolicy policy = ContentionPolicy.backoff(4, 256).withElimination(2, 200);
+        final ConcurrentMostRecentlyInsertedQueue<Integer> queue =
+                new ConcurrentMostRecentlyInsertedQueue<>(1 << 20, false, policy);
+        final int perProducer = 20000;
+        final int producers = 3;
+        Thread[] threads = new Thread[producers];
+        for (int t = 0; t < producers; t++) {
+            final int base = t * perProducer;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.offer(base + i);
+                }
+            });
+            threads[t].start();
+        }
+        BitSet seen = new BitSet();
+        int received = 0;
+        while (received < producers * perProducer) {
+            try {
+                int element = queue.poll();
+                Assert.assertFalse("twice " + element, seen.get(element));
+                seen.set(element);
+                received++;
+            } catch (NoSuchElementException e) {
+                Thread.yield();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void handedOffElementsAreReportedOnceTest() throws Exception {
+        ContentionPolicy policy = ContentionPolicy.backoff(4, 256).withElimination(2, 1000);
+        final ConcurrentMostRecentlyInsertedQueue<Integer> queue =
+                new ConcurrentMostRecentlyInsertedQueue<>(1 << 20, false, policy);
+        final AtomicInteger inserted = new AtomicInteger();
+        final AtomicInteger removed = new AtomicInteger();
+        queue.setListener(new QueueListener<Integer>() {
+            public void inserted(Integer element) {
+                inserted.incrementAndGet();
+            }
+
+            public void removed(Integer element) {
+                removed.incrementAndGet();
+            }
+
+            public void evicted(Integer element) {
+            }
+        });
+        final int perProducer = 20000;
+        final int producers = 3;
+        Thread[] threads = new Thread[producers];
+        for (int t = 0; t < producers; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.offer(i);
+                }
+            });
+            threads[t].start();
+        }
+        int received = 0;
+        while (received < producers * perProducer) {
+            try {
+                queue.poll();
+                received++;
+            } catch (NoSuchElementException e) {
+                Thread.yield();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(producers * perProducer, inserted.get());
+        Assert.assertEquals(producers * perProducer, removed.get());
+    }
+
+    @Test
+    public void invalidBackoffTest() {
+        thrown.expect(IllegalArgumentException.class);
+
+        ContentionPolicy.backoff(8, 4);
+    }
+
+    @Test
+    public void removeIfTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(4);
+        for (int i = 1; i <= 6; i++) {
+            queue.offer(i);
+        }
+        Assert.assertTrue(queue.removeIf(e -> e % 2 == 0));
+        Assert.assertEquals("[3, 5]", queue.toString());
+        Assert.assertEquals(2, queue.size());
+        Assert.assertFalse(queue.removeIf(e -> e == 1));
+        Assert.assertEquals((Integer) 3, queue.poll());
+        Assert.assertEquals((Integer) 5, queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void removeAllAndRetainAllTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(5, true);
+        for (int i = 1; i <= 5; i++) {
+            queue.offer(i);
+        }
+        Assert.assertTrue(queue.removeAll(Arrays.asList(1, 5)));
+        Assert.assertEquals("[2, 3, 4]", queue.toString());
+        Assert.assertTrue(queue.retainAll(Arrays.asList(3)));
+        Assert.assertEquals("[3]", queue.toString());
+        Assert.assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void offerAfterBulkRemoveTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(4, true);
+        for (int i = 1; i <= 6; i++) {
+            queue.offer(i);
+        }
+        queue.removeIf(e -> e % 2 == 0);
+        queue.offer(7);
+        Assert.assertEquals("[3, 5, 7]", queue.toString());
+        Assert.assertEquals(3, queue.size());
+        queue.offer(8);
+        queue.offer(9);
+        Assert.assertEquals("[5, 7, 8, 9]", queue.toString());
+        queue.retainAll(Arrays.asList(5, 9));
+        queue.offerAll(Arrays.asList(10, 11));
+        Assert.assertEquals("[5, 9, 10, 11]", queue.toString());
+        Assert.assertEquals(4, queue.size());
+    }
+
+    @Test
+    public void offerDuringBulkRemoveTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(4);
+        for (int i = 1; i <= 4; i++) {
+            queue.offer(i);
+        }
+        // the offer runs after 1 was removed and before the traversal ends
+        queue.removeIf(e -> e == 1 || (e == 2 && !queue.offer(5)));
+        Assert.assertEquals("[2, 3, 4, 5]", queue.toString());
+        Assert.assertEquals(4, queue.size());
+        queue.offer(6);
+        Assert.assertEquals("[3, 4, 5, 6]", queue.toString());
+    }
+
+    @Test
+    public void setCapacityTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(6);
+        for (int i = 1; i <= 6; i++) {
+            queue.offer(i);
+        }
+        queue.setCapacity(3);
+        Assert.assertEquals(3, queue.capacity());
+        Assert.assertEquals("[4, 5, 6]", queue.toString());
+        Assert.assertEquals(3, queue.size());
+        queue.setCapacity(5);
+        Assert.assertEquals("[4, 5, 6]", queue.toString());
+        queue.offer(7);
+        queue.offer(8);
+        queue.offer(9);
+        Assert.assertEquals("[5, 6, 7, 8, 9]", queue.toString());
+        Assert.assertEquals(5, queue.size());
+    }
+
+    @Test
+    public void offerAllLinksOneChainTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(5);
+        queue.offer(1);
+        queue.offer(2);
+        Assert.assertTrue(queue.offerAll(Arrays.asList(3, 4, 5, 6)));
+        Assert.assertEquals("[2, 3, 4, 5, 6]", queue.toString());
+        Assert.assertEquals(5, queue.size());
+        Assert.assertFalse(queue.offerAll(Arrays.<Integer>asList()));
+        Assert.assertTrue(queue.offerAll(Arrays.asList(7, 8, 9, 10, 11, 12, 13)));
+        Assert.assertEquals("[9, 10, 11, 12, 13]", queue.toString());
+        Assert.assertEquals(5, queue.size());
+        Assert.assertEquals((Integer) 9, queue.poll());
+        queue.offer(14);
+        Assert.assertEquals("[10, 11, 12, 13, 14]", queue.toString());
+    }
+
+    @Test
+    public void offerAllRejectsNullTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(5);
+        queue.offer(1);
+        try {
+            queue.offerAll(Arrays.asList(2, null));
+            Assert.fail();
+        } catch (NullPointerException e) {
+            Assert.assertEquals("[1]", queue.toString());
+        }
+    }
 }
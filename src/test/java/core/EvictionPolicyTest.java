@@ -0,0 +1,128 @@
+package core;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class EvictionPolicyTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void oldestIsTheDefaultTest() {
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(3, EvictionPolicy.oldest());
+        for (int i = 1; i <= 5; i++) {
+            queue.offer(i);
+        }
+        Assert.assertEquals("[3, 4, 5]", queue.toString());
+    }
+
+    @Test
+    public void lowestPriorityKeepsFifoOrderTest() {
+        MostRecentlyInsertedQueue<Integer> queue =
+                new MostRecentlyInsertedQueue<Integer>(3, EvictionPolicy.lowestPriority(Comparator.naturalOrder()));
+        queue.offer(5);
+        queue.offer(1);
+        queue.offer(9);
+        queue.offer(3);
+        Assert.assertEquals("[5, 9, 3]", queue.toString());
+        queue.offer(7);
+        Assert.assertEquals("[5, 9, 7]", queue.toString());
+        Assert.assertEquals((Integer) 5, queue.poll());
+        queue.offer(6);
+        queue.offer(8);
+        Assert.assertEquals("[9, 7, 8]", queue.toString());
+        Assert.assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void equalPrioritiesEvictTheOldestTest() {
+        MostRecentlyInsertedQueue<String> queue =
+                new MostRecentlyInsertedQueue<>(2, EvictionPolicy.lowestPriority(Comparator.comparing(String::length)));
+        queue.offer("a");
+        queue.offer("bb");
+        queue.offer("c");
+        queue.offer("d");
+        Assert.assertEquals("[bb, d]", queue.toString());
+    }
+
+    @Test
+    public void lowestPriorityMatchesSortedReferenceTest() {
+        Random random = new Random(42);
+        int capacity = 50;
+        MostRecentlyInsertedQueue<Integer> queue =
+                new MostRecentlyInsertedQueue<Integer>(capacity, EvictionPolicy.lowestPriority(Comparator.naturalOrder()));
+        List<Integer> reference = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            if (random.nextInt(4) == 0 && !reference.isEmpty()) {
+                Assert.assertEquals(reference.remove(0), queue.poll());
+                continue;
+            }
+            Integer value = random.nextInt(1000);
+            if (reference.size() == capacity) {
+                // the minimum, the first one inserted among equals
+                reference.remove(Collections.min(reference));
+            }
+            reference.add(value);
+            queue.offer(value);
+            Assert.assertEquals(reference.size(), queue.size());
+        }
+        Assert.assertEquals(reference.toString(), queue.toString());
+    }
+
+    @Test
+    public void sampledEvictsLowScoresTest() {
+        int capacity = 1000;
+        MostRecentlyInsertedQueue<Integer> queue =
+                new MostRecentlyInsertedQueue<Integer>(capacity, EvictionPolicy.sampled(8, Comparator.naturalOrder()));
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            queue.offer(random.nextInt(1000000));
+        }
+        Assert.assertEquals(capacity, queue.size());
+        long sum = 0;
+        int count = 0;
+        for (Integer value : queue) {
+            sum += value;
+            count++;
+        }
+        Assert.assertEquals(capacity, count);
+        // evicting low scores keeps the retained values well above the mean of the input
+        Assert.assertTrue("mean " + sum / capacity, sum / capacity > 600000);
+    }
+
+    @Test
+    public void sampledWithSingleEntryTest() {
+        MostRecentlyInsertedQueue<Integer> queue =
+                new MostRecentlyInsertedQueue<Integer>(1, EvictionPolicy.sampled(3, Comparator.naturalOrder()));
+        queue.offer(1);
+        queue.offer(2);
+        Assert.assertEquals("[2]", queue.toString());
+        Assert.assertEquals((Integer) 2, queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+        queue.offer(3);
+        Assert.assertEquals("[3]", queue.toString());
+    }
+
+    @Test
+    public void invalidSamplesTest() {
+        thrown.expect(IllegalArgumentException.class);
+
+        EvictionPolicy.sampled(0, Comparator.<Integer>naturalOrder());
+    }
+
+    @Test
+    public void nullPolicyTest() {
+        thrown.expect(NullPointerException.class);
+
+        new MostRecentlyInsertedQueue<Integer>(3, null);
+    }
+}
@@ -0,0 +1,147 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import events.ContentionEvent;
+import events.EvictionEvent;
+import events.QueueSampleEvent;
+import events.QueueWaitEvent;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class FlightRecorderEventsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<RecordedEvent> stop(Recording recording) throws Exception {
+        recording.stop();
+        Path file = folder.getRoot().toPath().resolve("recording.jfr");
+        recording.dump(file);
+        recording.close();
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> named = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name))
+                named.add(event);
+        }
+        return named;
+    }
+
+    @Test
+    public void evictionsAreRecordedTest() throws Exception {
+        Recording recording = new Recording();
+        recording.enable(EvictionEvent.class);
+        recording.start();
+        MostRecentlyInsertedQueue<Integer> core = new MostRecentlyInsertedQueue<>(2);
+        ConcurrentMostRecentlyInsertedQueue<Integer> concurrent = new ConcurrentMostRecentlyInsertedQueue<>(2);
+        MostRecentlyInsertedBlockingQueue<Integer> blocking = new MostRecentlyInsertedBlockingQueue<>(2);
+        for (int i = 0; i < 5; i++) {
+            core.offer(i);
+            concurrent.offer(i);
+            blocking.offer(i);
+        }
+        blocking.offerAll(List.of(5, 6));
+        List<RecordedEvent> evictions = named(stop(recording), "queue.Eviction");
+
+        long evicted = 0;
+        for (RecordedEvent event : evictions) {
+            Assert.assertEquals(2, event.getInt("capacity"));
+            evicted += event.getInt("evicted");
+        }
+        Assert.assertEquals(3 + 3 + 5, evicted);
+    }
+
+    @Test
+    public void waitsAreRecordedAboveThresholdTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        Recording recording = new Recording();
+        recording.enable(QueueWaitEvent.class).withThreshold(Duration.ofMillis(20));
+        recording.start();
+        Assert.assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+        Assert.assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                queue.put(7);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        Assert.assertEquals((Integer) 7, queue.take());
+        producer.join();
+        List<RecordedEvent> waits = named(stop(recording), "queue.Wait");
+
+        Assert.assertEquals(2, waits.size());
+        Assert.assertEquals("poll", waits.get(0).getString("operation"));
+        Assert.assertEquals("take", waits.get(1).getString("operation"));
+        Assert.assertEquals(1, waits.get(1).getInt("size"));
+        Assert.assertTrue(waits.get(1).getDuration().toMillis() >= 20);
+    }
+
+    @Test
+    public void timedOfferOnFullQueueDoesNotWaitTest() throws Exception {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(2);
+        Recording recording = new Recording();
+        recording.enable(QueueWaitEvent.class);
+        recording.start();
+        queue.offer(1);
+        queue.offer(2);
+        long start = System.nanoTime();
+        Assert.assertTrue(queue.offer(3, 10, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        Assert.assertEquals("[2, 3]", queue.toString());
+        Assert.assertTrue(named(stop(recording), "queue.Wait").isEmpty());
+    }
+
+    @Test
+    public void contentionBurstsAreRecordedTest() throws Exception {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(2);
+        Recording recording = new Recording();
+        recording.enable(ContentionEvent.class);
+        recording.start();
+        ContentionEvent.emit(queue, "offer", ContentionEvent.MIN_RETRIES - 1);
+        ContentionEvent.emit(queue, "poll", ContentionEvent.MIN_RETRIES);
+        List<RecordedEvent> bursts = named(stop(recording), "queue.Contention");
+
+        Assert.assertEquals(1, bursts.size());
+        Assert.assertEquals(ConcurrentMostRecentlyInsertedQueue.class.getName(), bursts.get(0).getString("queueType"));
+        Assert.assertEquals("poll", bursts.get(0).getString("operation"));
+        Assert.assertEquals(ContentionEvent.MIN_RETRIES, bursts.get(0).getInt("retries"));
+    }
+
+    @Test
+    public void registeredQueuesAreSampledTest() throws Exception {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(10);
+        queue.offer(1);
+        queue.offer(2);
+        QueueSampleEvent.register("orders", queue, 10);
+        Recording recording = new Recording();
+        recording.enable(QueueSampleEvent.class).withPeriod(Duration.ofMillis(10));
+        recording.start();
+        Thread.sleep(200);
+        List<RecordedEvent> samples = new ArrayList<>();
+        for (RecordedEvent event : named(stop(recording), "queue.Sample")) {
+            if (event.getString("name").equals("orders"))
+                samples.add(event);
+        }
+        Assert.assertFalse(samples.isEmpty());
+        Assert.assertEquals(2, samples.get(0).getInt("size"));
+        Assert.assertEquals(10, samples.get(0).getInt("capacity"));
+    }
+}
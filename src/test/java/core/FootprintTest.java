@@ -0,0 +1,144 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * Heap footprint of every queue implementation: bytes the queue itself
+ * retains per element (the elements are not counted) and bytes allocated
+ * per offer into a full queue, checked against
+ * {@code footprint-baseline.properties}.
+ * <p>
+ * A value more than {@code footprint.tolerance} (default 10%) above its
+ * baseline fails the build. Every run writes the measured values to
+ * {@code target/footprint.properties}; copy that file over the baseline
+ * after an intended change. Per-thread node pools of recycling queues live
+ * in thread locals and are not part of the retained size. The tiered queue
+ * keeps serialized copies of most elements, which do count.
+ */
+public class FootprintTest {
+
+    private static final int[] CAPACITIES = {16, 1024, 16384};
+    private static final int OPERATIONS = 200000;
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("footprint.tolerance", "0.10"));
+
+    /**
+     * Absolute slack on top of the tolerance, so that values near zero do
+     * not fail on measurement noise
+     */
+    private static final double SLACK = 1.0;
+
+    private static final Map<String, IntFunction<Queue<Integer>>> IMPLEMENTATIONS = new LinkedHashMap<>();
+
+    static {
+        IMPLEMENTATIONS.put("core", MostRecentlyInsertedQueue::new);
+        IMPLEMENTATIONS.put("concurrent", ConcurrentMostRecentlyInsertedQueue::new);
+        IMPLEMENTATIONS.put("concurrent-recycling", c -> new ConcurrentMostRecentlyInsertedQueue<>(c, true));
+        IMPLEMENTATIONS.put("blocking", MostRecentlyInsertedBlockingQueue::new);
+        // a quarter of the capacity at most is hot, so that every capacity measured has cold segments
+        IMPLEMENTATIONS.put("tiered", c -> new TieredMostRecentlyInsertedQueue<>(c, Math.min(c / 4, 256),
+                Math.min(c / 8, 128), CheckpointTest.INT_CODEC));
+    }
+
+    @Test
+    public void footprintWithinBaselineTest() throws IOException {
+        Map<String, Double> measured = new TreeMap<>();
+        Integer[] elements = new Integer[CAPACITIES[CAPACITIES.length - 1]];
+        Set<Object> excluded = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < elements.length; i++) {
+            // outside the Integer cache, so that every element is a distinct object
+            elements[i] = Integer.valueOf(100000 + i);
+            excluded.add(elements[i]);
+        }
+
+        for (Map.Entry<String, IntFunction<Queue<Integer>>> implementation : IMPLEMENTATIONS.entrySet()) {
+            String name = implementation.getKey();
+            measured.put(name + ".emptyBytes",
+                    (double) ObjectGraphSize.retainedBytes(implementation.getValue().apply(16), excluded));
+            for (int capacity : CAPACITIES) {
+                Queue<Integer> queue = implementation.getValue().apply(capacity);
+                long empty = ObjectGraphSize.retainedBytes(queue, excluded);
+                for (int i = 0; i < capacity; i++) {
+                    queue.offer(elements[i]);
+                }
+                long full = ObjectGraphSize.retainedBytes(queue, excluded);
+                measured.put(name + "." + capacity + ".bytesPerElement", (double) (full - empty) / capacity);
+            }
+            measured.put(name + ".offerBytes", allocatedPerOffer(implementation.getValue().apply(1024), elements));
+        }
+
+        write(measured);
+        Properties baseline = new Properties();
+        try (InputStream in = FootprintTest.class.getResourceAsStream("/footprint-baseline.properties")) {
+            Assert.assertNotNull("footprint-baseline.properties is missing", in);
+            baseline.load(in);
+        }
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Double> value : measured.entrySet()) {
+            String expected = baseline.getProperty(value.getKey());
+            if (expected == null) {
+                regressions.add(value.getKey() + " = " + value.getValue() + ", no baseline");
+                continue;
+            }
+            double limit = Double.parseDouble(expected) * (1 + TOLERANCE) + SLACK;
+            if (value.getValue() > limit)
+                regressions.add(value.getKey() + " = " + value.getValue() + ", baseline " + expected);
+        }
+        Assert.assertTrue("Footprint regressions: " + regressions, regressions.isEmpty());
+    }
+
+    /**
+     * Returns the bytes the current thread allocates per offer into a full
+     * queue, after a warm-up long enough for the offer path to be compiled.
+     */
+    private static double allocatedPerOffer(Queue<Integer> queue, Integer[] elements) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < OPERATIONS; i++) {
+            queue.offer(elements[i % elements.length]);
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < OPERATIONS; i++) {
+            queue.offer(elements[i % elements.length]);
+        }
+        return (double) (threads.getThreadAllocatedBytes(thread) - before) / OPERATIONS;
+    }
+
+    /**
+     * Writes the values sorted by key, in properties syntax, so that the
+     * file diffs cleanly against the baseline.
+     */
+    private static void write(Map<String, Double> measured) throws IOException {
+        StringBuilder out = new StringBuilder("# Measured by FootprintTest\n");
+        for (Map.Entry<String, Double> value : measured.entrySet()) {
+            out.append(value.getKey()).append('=')
+                    .append(String.format(Locale.ROOT, "%.2f", value.getValue())).append('\n');
+        }
+        Path file = Paths.get("target", "footprint.properties");
+        Files.createDirectories(file.getParent());
+        Files.write(file, out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,173 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Handoff latency of put &rarr; take and offer &rarr; poll at a constant
+ * offered rate. Not part of the default test run; run it with
+ * <pre>
+ * mvn test -Dtest=HandoffLatencyBenchmark -Dlatency.rate=100000 -Dlatency.seconds=30
+ * </pre>
+ * The producer sends on a fixed schedule and every message carries the time
+ * it was <em>due</em>, not the time it was actually sent. A producer held up
+ * by a full queue or a pause therefore still charges the delay to every
+ * message that should have gone out meanwhile, instead of silently sending
+ * fewer of them (coordinated omission).
+ * <p>
+ * Options:
+ * <ul>
+ * <li>{@code latency.rate}: messages per second (default 50000)</li>
+ * <li>{@code latency.seconds}, {@code latency.warmup}: measured and
+ * discarded seconds (default 5 and 2)</li>
+ * <li>{@code latency.capacity}: queue capacity (default 1024)</li>
+ * <li>{@code latency.cpu.producer}, {@code latency.cpu.consumer}: CPU list
+ * handed to {@code taskset} for the thread, Linux only</li>
+ * <li>{@code latency.report}: directory to write one report per queue to</li>
+ * </ul>
+ */
+public class HandoffLatencyBenchmark {
+
+    private static final int RATE = Integer.getInteger("latency.rate", 50000);
+    private static final int SECONDS = Integer.getInteger("latency.seconds", 5);
+    private static final int WARMUP = Integer.getInteger("latency.warmup", 2);
+    private static final int CAPACITY = Integer.getInteger("latency.capacity", 1024);
+    private static final String REPORT = System.getProperty("latency.report");
+
+    /**
+     * Sent after the last message; being the newest element it is never evicted
+     */
+    private static final Long END = Long.MIN_VALUE;
+
+    @Test
+    public void blockingPutTake() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Long> queue = new MostRecentlyInsertedBlockingQueue<>(CAPACITY);
+        run("blocking-put-take", queue::put, queue::take);
+    }
+
+    @Test
+    public void concurrentOfferPoll() throws Exception {
+        final ConcurrentMostRecentlyInsertedQueue<Long> queue = new ConcurrentMostRecentlyInsertedQueue<>(CAPACITY);
+        run("concurrent-offer-poll", queue::offer, () -> {
+            // single consumer: a non-null peek guarantees the poll succeeds
+            while (queue.peek() == null) {
+                Thread.onSpinWait();
+            }
+            return queue.poll();
+        });
+    }
+
+    interface Send {
+        void send(Long due) throws InterruptedException;
+    }
+
+    interface Receive {
+        Long receive() throws InterruptedException;
+    }
+
+    private void run(String name, Send send, Receive receive) throws Exception {
+        final long interval = 1_000_000_000L / RATE;
+        final long total = (long) RATE * (WARMUP + SECONDS);
+        final long warmupMessages = (long) RATE * WARMUP;
+        final long start = System.nanoTime() + 10_000_000L;
+        final LatencyHistogram histogram = new LatencyHistogram(11);
+
+        Thread producer = new Thread(() -> {
+            pin("producer");
+            try {
+                for (long i = 0; i < total; i++) {
+                    long due = start + i * interval;
+                    waitUntil(due);
+                    send.send(due);
+                }
+                send.send(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, name + "-producer");
+
+        final long[] received = new long[1];
+        Thread consumer = new Thread(() -> {
+            pin("consumer");
+            try {
+                for (Long due; (due = receive.receive()) != END; ) {
+                    long latency = System.nanoTime() - due;
+                    if (due >= start + warmupMessages * interval)
+                        histogram.record(latency);
+                    received[0]++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, name + "-consumer");
+
+        consumer.start();
+        producer.start();
+        producer.join();
+        consumer.join();
+
+        StringBuilder title = new StringBuilder()
+                .append(name).append(" @ ").append(RATE).append("/s, ")
+                .append(SECONDS).append(" s, capacity ").append(CAPACITY)
+                .append(": sent ").append(total).append(", received ").append(received[0])
+                .append(", evicted ").append(total - received[0]);
+        report(name, title.toString(), histogram);
+        Assert.assertTrue(histogram.totalCount() > 0);
+    }
+
+    private static void waitUntil(long due) {
+        for (long left; (left = due - System.nanoTime()) > 0; ) {
+            if (left > 100_000)
+                LockSupport.parkNanos(left - 50_000);
+            else
+                Thread.onSpinWait();
+        }
+    }
+
+    private static void report(String name, String title, LatencyHistogram histogram) throws IOException {
+        System.out.println(title);
+        histogram.printPercentiles(System.out, 1000.0, "us");
+        if (REPORT == null)
+            return;
+        Path dir = Paths.get(REPORT);
+        Files.createDirectories(dir);
+        try (OutputStream file = Files.newOutputStream(dir.resolve(name + ".txt"));
+             PrintStream out = new PrintStream(file, true, "UTF-8")) {
+            out.println(title);
+            histogram.printPercentiles(out, 1000.0, "us");
+        }
+    }
+
+    /**
+     * Pins the current thread to the CPUs given for its role, if any.
+     * A failure only costs the pinning, so it is reported and ignored.
+     */
+    private static void pin(String role) {
+        String cpus = System.getProperty("latency.cpu." + role);
+        if (cpus == null)
+            return;
+        try {
+            // /proc/thread-self links to <pid>/task/<tid>
+            String tid = Files.readSymbolicLink(Paths.get("/proc/thread-self")).getFileName().toString();
+            Process taskset = new ProcessBuilder("taskset", "-p", "-c", cpus, tid)
+                    .redirectErrorStream(true).start();
+            taskset.getInputStream().transferTo(OutputStream.nullOutputStream());
+            if (taskset.waitFor() != 0)
+                System.err.println("taskset failed to pin the " + role + " to CPUs " + cpus);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Can not pin the " + role + ": " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package core;
+
+import java.io.PrintStream;
+
+/**
+ * Log-linear histogram of non-negative values in the spirit of HdrHistogram:
+ * values below {@code 2^precisionBits} are counted exactly, larger ones in
+ * buckets whose width is {@code 2^-(precisionBits - 1)} of their value, so
+ * every reported value is within that relative error of a recorded one.
+ * Recording is a few shifts and an array increment, and never allocates.
+ */
+final class LatencyHistogram {
+
+    private final int precisionBits;
+    private final int subBuckets;
+    private final long[] counts;
+    private long totalCount;
+    private long max;
+    private double sum;
+
+    /**
+     * @param precisionBits {@code 11} keeps three significant decimal digits
+     */
+    LatencyHistogram(int precisionBits) {
+        if (precisionBits < 2 || precisionBits > 20)
+            throw new IllegalArgumentException();
+        this.precisionBits = precisionBits;
+        this.subBuckets = 1 << precisionBits;
+        this.counts = new long[subBuckets + (64 - precisionBits) * (subBuckets / 2)];
+    }
+
+    void record(long value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Negative value " + value);
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        if (value > max)
+            max = value;
+    }
+
+    /**
+     * Adds every value recorded in the other histogram, which must have the
+     * same precision.
+     */
+    void add(LatencyHistogram other) {
+        if (other.precisionBits != precisionBits)
+            throw new IllegalArgumentException("Different precision");
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    long totalCount() {
+        return totalCount;
+    }
+
+    long max() {
+        return max;
+    }
+
+    double mean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    /**
+     * Returns the highest value equivalent to the value at the given
+     * percentile, that is, a value no recorded value at that rank exceeds
+     * by more than the precision.
+     */
+    long valueAtPercentile(double percentile) {
+        if (totalCount == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highestEquivalent(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Prints the usual percentile ladder, values divided by {@code scale}.
+     * The layout is fixed so that reports of different runs can be diffed.
+     */
+    void printPercentiles(PrintStream out, double scale, String unit) {
+        double[] ladder = {50, 90, 99, 99.9, 99.99, 99.999};
+        out.printf("%12s %14s%n", "percentile", "latency(" + unit + ")");
+        for (double p : ladder) {
+            out.printf("%12.3f %14.2f%n", p, valueAtPercentile(p) / scale);
+        }
+        out.printf("%12s %14.2f%n", "max", max / scale);
+        out.printf("%12s %14.2f%n", "mean", mean() / scale);
+        out.printf("%12s %14d%n", "count", totalCount);
+    }
+
+    private int indexOf(long value) {
+        if (value < subBuckets)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - precisionBits + 1;
+        int half = subBuckets / 2;
+        return subBuckets + (exponent - precisionBits) * half + (int) ((value >>> shift) - half);
+    }
+
+    private long highestEquivalent(int index) {
+        if (index < subBuckets)
+            return index;
+        int half = subBuckets / 2;
+        int k = index - subBuckets;
+        int shift = k / half + 1;
+        long mantissa = k % half + half;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,38 @@
+package core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesAreExactTest() {
+        LatencyHistogram histogram = new LatencyHistogram(11);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(500, histogram.valueAtPercentile(50));
+        Assert.assertEquals(990, histogram.valueAtPercentile(99));
+        Assert.assertEquals(1000, histogram.valueAtPercentile(100));
+        Assert.assertEquals(500.5, histogram.mean(), 1e-9);
+    }
+
+    @Test
+    public void largeValuesKeepRelativePrecisionTest() {
+        LatencyHistogram histogram = new LatencyHistogram(11);
+        long[] values = {123_456_789L, 5_000_000_000L, 3L << 40};
+        for (long value : values) {
+            histogram.record(value);
+            histogram.record(1);
+        }
+        Assert.assertEquals(6, histogram.totalCount());
+        long p = histogram.valueAtPercentile(100.0 * 4 / 6);
+        Assert.assertTrue(p >= values[0] && p <= values[0] + values[0] / 1000);
+        Assert.assertEquals(3L << 40, histogram.valueAtPercentile(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeValueTest() {
+        new LatencyHistogram(11).record(-1);
+    }
+}
@@ -0,0 +1,96 @@
+package core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Checks concurrent histories of offers and polls against the sequential
+ * "bounded, drop the oldest" queue: an offer into a full queue evicts the
+ * head, a poll of an empty queue returns nothing.
+ * <p>
+ * A history is linearizable if its operations can be put in some order that
+ * respects real time (an operation that returned before another one started
+ * comes first) and replays on the sequential queue with the same results.
+ * The search follows Wing and Gong, with Lowe's memoization of visited
+ * (linearized set, queue contents) pairs; it is exponential in the worst
+ * case, so histories are kept short (at most 63 operations).
+ */
+final class LinearizabilityChecker {
+
+    /**
+     * One completed operation. {@code value} is the element offered, or the
+     * element a poll returned, null if it found the queue empty.
+     */
+    static final class Operation {
+        final boolean offer;
+        final Integer value;
+        final long invoked;
+        final long returned;
+
+        Operation(boolean offer, Integer value, long invoked, long returned) {
+            this.offer = offer;
+            this.value = value;
+            this.invoked = invoked;
+            this.returned = returned;
+        }
+
+        @Override
+        public String toString() {
+            return (offer ? "offer(" + value + ")" : "poll() = " + value) + " [" + invoked + ", " + returned + "]";
+        }
+    }
+
+    private final Operation[] operations;
+    private final int capacity;
+    private final Set<List<Object>> visited = new HashSet<>();
+
+    private LinearizabilityChecker(List<Operation> history, int capacity) {
+        if (history.size() > 63)
+            throw new IllegalArgumentException("History too long: " + history.size());
+        this.operations = history.toArray(new Operation[0]);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns whether the history is linearizable with respect to a
+     * drop-oldest queue of the given capacity, starting empty.
+     */
+    static boolean isLinearizable(List<Operation> history, int capacity) {
+        LinearizabilityChecker checker = new LinearizabilityChecker(history, capacity);
+        long all = history.size() == 63 ? -1L >>> 1 : (1L << history.size()) - 1;
+        return checker.search(all, new ArrayDeque<>());
+    }
+
+    private boolean search(long remaining, ArrayDeque<Integer> queue) {
+        if (remaining == 0)
+            return true;
+        long firstReturn = Long.MAX_VALUE;
+        for (int i = 0; i < operations.length; i++) {
+            if ((remaining & 1L << i) != 0)
+                firstReturn = Math.min(firstReturn, operations[i].returned);
+        }
+        for (int i = 0; i < operations.length; i++) {
+            Operation op = operations[i];
+            // only an operation that started before every other one returned can go next
+            if ((remaining & 1L << i) == 0 || op.invoked > firstReturn)
+                continue;
+            ArrayDeque<Integer> next = new ArrayDeque<>(queue);
+            if (op.offer) {
+                if (next.size() == capacity)
+                    next.pollFirst();
+                next.addLast(op.value);
+            } else if (!Objects.equals(next.pollFirst(), op.value)) {
+                continue;
+            }
+            long rest = remaining & ~(1L << i);
+            if (visited.add(Arrays.asList(rest, new ArrayList<>(next))) && search(rest, next))
+                return true;
+        }
+        return false;
+    }
+}
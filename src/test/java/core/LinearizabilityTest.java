@@ -0,0 +1,126 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs many short rounds of concurrent offers and polls on a tiny queue,
+ * so that offers keep evicting, and checks every recorded history with
+ * {@link LinearizabilityChecker}.
+ */
+public class LinearizabilityTest {
+
+    private static final int ROUNDS = Integer.getInteger("linearizability.rounds", 300);
+    private static final int THREADS = 3;
+    private static final int OPERATIONS_PER_THREAD = 6;
+    private static final int CAPACITY = 2;
+
+    @Test
+    public void concurrentQueueTest() throws Exception {
+        checkRounds(() -> new ConcurrentMostRecentlyInsertedQueue<>(CAPACITY));
+    }
+
+    @Test
+    public void recyclingConcurrentQueueTest() throws Exception {
+        checkRounds(() -> new ConcurrentMostRecentlyInsertedQueue<>(CAPACITY, true));
+    }
+
+    @Test
+    public void blockingQueueTest() throws Exception {
+        checkRounds(() -> new MostRecentlyInsertedBlockingQueue<>(CAPACITY));
+    }
+
+    @Test
+    public void evictionIsLinearizableTest() {
+        List<LinearizabilityChecker.Operation> history = Arrays.asList(
+                new LinearizabilityChecker.Operation(true, 1, 0, 1),
+                new LinearizabilityChecker.Operation(true, 2, 2, 3),
+                new LinearizabilityChecker.Operation(false, 2, 4, 5));
+        Assert.assertTrue(LinearizabilityChecker.isLinearizable(history, 1));
+    }
+
+    @Test
+    public void reorderedPollIsNotLinearizableTest() {
+        List<LinearizabilityChecker.Operation> history = Arrays.asList(
+                new LinearizabilityChecker.Operation(true, 1, 0, 1),
+                new LinearizabilityChecker.Operation(true, 2, 2, 3),
+                new LinearizabilityChecker.Operation(false, 2, 4, 5));
+        Assert.assertFalse(LinearizabilityChecker.isLinearizable(history, 2));
+    }
+
+    @Test
+    public void overlappingOperationsMayReorderTest() {
+        List<LinearizabilityChecker.Operation> history = Arrays.asList(
+                new LinearizabilityChecker.Operation(true, 1, 0, 10),
+                new LinearizabilityChecker.Operation(true, 2, 1, 3),
+                new LinearizabilityChecker.Operation(false, 2, 4, 5));
+        Assert.assertTrue(LinearizabilityChecker.isLinearizable(history, 2));
+    }
+
+    private void checkRounds(Supplier<Queue<Integer>> factory) throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            List<LinearizabilityChecker.Operation> history = record(factory.get());
+            if (!LinearizabilityChecker.isLinearizable(history, CAPACITY))
+                Assert.fail("Not linearizable in round " + round + ": " + history);
+        }
+    }
+
+    /**
+     * Runs one round: every thread does a random mix of offers and polls.
+     */
+    private static List<LinearizabilityChecker.Operation> record(final Queue<Integer> queue) throws Exception {
+        final List<LinearizabilityChecker.Operation> history =
+                Collections.synchronizedList(new ArrayList<>());
+        final CyclicBarrier start = new CyclicBarrier(THREADS);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                List<LinearizabilityChecker.Operation> own = new ArrayList<>();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    if (random.nextInt(4) == 0)
+                        Thread.yield();
+                    if (random.nextBoolean()) {
+                        Integer value = id * 100 + i;
+                        long invoked = System.nanoTime();
+                        queue.offer(value);
+                        own.add(new LinearizabilityChecker.Operation(true, value, invoked, System.nanoTime()));
+                    } else {
+                        Integer value;
+                        long invoked = System.nanoTime();
+                        try {
+                            value = queue.poll();
+                        } catch (NoSuchElementException e) {
+                            value = null;
+                        }
+                        own.add(new LinearizabilityChecker.Operation(false, value, invoked, System.nanoTime()));
+                    }
+                }
+                history.addAll(own);
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return history;
+    }
+}
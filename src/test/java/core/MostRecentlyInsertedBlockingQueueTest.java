@@ -7,8 +7,14 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import summary.QueueListener;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 
 public class MostRecentlyInsertedBlockingQueueTest {
 
@@ -101,4 +107,378 @@ public class MostRecentlyInsertedBlockingQueueTest {
         testStringQueue.peek();
     }
 
+    @Test
+    public void sizeTracksConcurrentPutsAndTakesTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(16);
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20000; i++) {
+                    queue.put(i);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        for (int i = 0; i < 20000; i++) {
+            Assert.assertEquals((Integer) i, queue.take());
+            int size = queue.size();
+            Assert.assertTrue("size " + size, size >= 0 && size <= 16);
+        }
+        producer.join();
+        Assert.assertEquals(0, queue.size());
+        Assert.assertEquals(16, queue.remainingCapacity());
+    }
+
+    @Test
+    public void offerAllEvictsOldestTest() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5);
+        queue.offer(0);
+        queue.offer(1);
+        queue.offer(2);
+        Assert.assertTrue(queue.offerAll(Arrays.asList(3, 4, 5, 6)));
+        Assert.assertEquals("[2, 3, 4, 5, 6]", queue.toString());
+        Assert.assertEquals(5, queue.size());
+    }
+
+    @Test
+    public void offerAllKeepsLastCapacityElementsTest() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3);
+        queue.offer(0);
+        queue.offerAll(Arrays.asList(1, 2, 3, 4, 5));
+        Assert.assertEquals("[3, 4, 5]", queue.toString());
+        Assert.assertFalse(queue.offerAll(Collections.<Integer>emptyList()));
+    }
+
+    @Test
+    public void offerAllReportsElementsBeyondCapacityTest() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3);
+        List<Integer> inserted = new ArrayList<>();
+        List<Integer> evicted = new ArrayList<>();
+        queue.setListener(new QueueListener<Integer>() {
+            public void inserted(Integer element) {
+                inserted.add(element);
+            }
+
+            public void removed(Integer element) {
+            }
+
+            public void evicted(Integer element) {
+                evicted.add(element);
+            }
+        });
+        queue.offer(0);
+        queue.offerAll(Arrays.asList(1, 2, 3, 4, 5));
+        Assert.assertEquals("[3, 4, 5]", queue.toString());
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), inserted);
+        Assert.assertEquals(Arrays.asList(0, 1, 2), evicted);
+    }
+
+    @Test
+    public void offerAllWithNullLeavesQueueUnchangedTest() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3);
+        queue.offer(0);
+        try {
+            queue.offerAll(Arrays.asList(1, null));
+            Assert.fail();
+        } catch (NullPointerException e) {
+            Assert.assertEquals("[0]", queue.toString());
+        }
+    }
+
+    @Test
+    public void offerAllWakesTakerTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3);
+        final Integer[] taken = new Integer[1];
+        Thread taker = new Thread(() -> {
+            try {
+                taken[0] = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        taker.start();
+        queue.offerAll(Arrays.asList(1, 2));
+        taker.join(5000);
+        Assert.assertEquals((Integer) 1, taken[0]);
+    }
+
+    @Test
+    public void putAllWaitsForSpaceTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        final List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(i);
+        }
+        Thread producer = new Thread(() -> {
+            try {
+                queue.putAll(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals((Integer) i, queue.take());
+        }
+        producer.join();
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void drainWaitsForMinimumTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(10);
+        final List<Integer> batch = new ArrayList<>();
+        final int[] drained = new int[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                drained[0] = queue.drain(batch, 3, 5, 10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        queue.offer(1);
+        queue.offer(2);
+        Thread.sleep(50);
+        Assert.assertTrue(consumer.isAlive());
+        queue.offer(3);
+        consumer.join(5000);
+        Assert.assertFalse(consumer.isAlive());
+        Assert.assertEquals(3, drained[0]);
+        Assert.assertEquals("[1, 2, 3]", batch.toString());
+    }
+
+    @Test
+    public void drainShortOfMinimumDoesNotSwallowTakeSignalTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(10);
+        final List<Integer> batch = new ArrayList<>();
+        final Integer[] taken = new Integer[1];
+        Thread drainer = new Thread(() -> {
+            try {
+                queue.drain(batch, 5, 5, 10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread taker = new Thread(() -> {
+            try {
+                taken[0] = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        // the drain waits first, so it is the one a single signal wakes
+        drainer.start();
+        while (drainer.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+        taker.start();
+        while (taker.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        queue.offer(1);
+        taker.join(5000);
+        Assert.assertFalse(taker.isAlive());
+        Assert.assertEquals((Integer) 1, taken[0]);
+        drainer.interrupt();
+        drainer.join();
+        Assert.assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void drainTimeoutReturnsWhatIsThereTest() throws Exception {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(10);
+        queue.offer(1);
+        List<Integer> batch = new ArrayList<>();
+        Assert.assertEquals(1, queue.drain(batch, 5, 10, 20, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, queue.drain(batch, 5, 10, 0, TimeUnit.MILLISECONDS));
+        Assert.assertEquals("[1]", batch.toString());
+    }
+
+    @Test
+    public void drainStopsAtMaximumTest() throws Exception {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(10);
+        queue.offerAll(Arrays.asList(1, 2, 3, 4, 5));
+        List<Integer> batch = new ArrayList<>();
+        Assert.assertEquals(2, queue.drain(batch, 1, 2, 1, TimeUnit.SECONDS));
+        Assert.assertEquals("[3, 4, 5]", queue.toString());
+    }
+
+    @Test
+    public void drainMinimumOverMaximumTest() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+
+        new MostRecentlyInsertedBlockingQueue<Integer>(10).drain(new ArrayList<>(), 5, 2, 1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void offerWakesTakerTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3);
+        final Integer[] taken = new Integer[1];
+        Thread taker = new Thread(() -> {
+            try {
+                taken[0] = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        taker.start();
+        Thread.sleep(20);
+        queue.offer(7);
+        taker.join(5000);
+        Assert.assertEquals((Integer) 7, taken[0]);
+    }
+
+    @Test
+    public void forEachAndToArrayFollowInsertionOrderTest() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3);
+        for (int i = 1; i <= 5; i++) {
+            queue.offer(i);
+        }
+        List<Integer> seen = new ArrayList<>();
+        queue.forEach(seen::add);
+        Assert.assertEquals(Arrays.asList(3, 4, 5), seen);
+        Assert.assertArrayEquals(new Object[]{3, 4, 5}, queue.toArray());
+        Assert.assertArrayEquals(new Integer[]{3, 4, 5}, queue.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void iterationDoesNotBlockOnHeldLocksTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(10);
+        queue.offer(1);
+        queue.offer(2);
+        // a consumer parked in drain holds the take lock until its timeout
+        Thread drainer = new Thread(() -> {
+            try {
+                queue.drain(new ArrayList<>(), 5, 5, 2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        drainer.start();
+        Thread.sleep(20);
+        long start = System.nanoTime();
+        Assert.assertEquals("[1, 2]", queue.toString());
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        drainer.interrupt();
+        drainer.join(5000);
+    }
+
+    @Test
+    public void iteratorSurvivesConcurrentTakesTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(16);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 200000; i++) {
+                queue.offer(i);
+                if (i % 3 == 0)
+                    queue.poll();
+            }
+        });
+        producer.start();
+        while (producer.isAlive()) {
+            int last = -1;
+            for (Integer value : queue) {
+                Assert.assertNotNull(value);
+                Assert.assertTrue(value + " after " + last, value > last);
+                last = value;
+            }
+        }
+        producer.join();
+    }
+
+    @Test
+    public void removeIfUnlinksInOnePassTest() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(6);
+        for (int i = 1; i <= 6; i++) {
+            queue.offer(i);
+        }
+        Assert.assertTrue(queue.removeIf(e -> e % 2 == 0));
+        Assert.assertEquals("[1, 3, 5]", queue.toString());
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(3, queue.remainingCapacity());
+        Assert.assertFalse(queue.removeIf(e -> e > 10));
+        // the tail was removed, so new elements must link after 5
+        queue.offer(7);
+        Assert.assertEquals("[1, 3, 5, 7]", queue.toString());
+    }
+
+    @Test
+    public void removeAllAndRetainAllTest() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(6);
+        for (int i = 1; i <= 6; i++) {
+            queue.offer(i);
+        }
+        Assert.assertTrue(queue.removeAll(Arrays.asList(1, 6, 9)));
+        Assert.assertEquals("[2, 3, 4, 5]", queue.toString());
+        Assert.assertTrue(queue.retainAll(Arrays.asList(3, 5)));
+        Assert.assertEquals("[3, 5]", queue.toString());
+        Assert.assertFalse(queue.retainAll(Arrays.asList(3, 5)));
+    }
+
+    @Test
+    public void removeIfWakesPutterTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(2);
+        queue.put(1);
+        queue.put(2);
+        Thread putter = new Thread(() -> {
+            try {
+                queue.put(3);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        putter.start();
+        Thread.sleep(20);
+        queue.removeIf(e -> e == 1);
+        putter.join(5000);
+        Assert.assertFalse(putter.isAlive());
+        Assert.assertEquals("[2, 3]", queue.toString());
+    }
+
+    @Test
+    public void removeIfKeepsCountWhenFilterThrowsTest() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        for (int i = 1; i <= 4; i++) {
+            queue.offer(i);
+        }
+        try {
+            queue.removeIf(e -> {
+                if (e == 3)
+                    throw new IllegalStateException();
+                return true;
+            });
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertEquals("[3, 4]", queue.toString());
+        Assert.assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void setCapacityEvictsAndWakesPutsTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        for (int i = 1; i <= 4; i++) {
+            queue.put(i);
+        }
+        queue.setCapacity(2);
+        Assert.assertEquals("[3, 4]", queue.toString());
+        Assert.assertEquals(0, queue.remainingCapacity());
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        while (queue.waitingProducers() == 0) {
+            Thread.sleep(1);
+        }
+        queue.setCapacity(3);
+        producer.join(5000);
+        Assert.assertFalse(producer.isAlive());
+        Assert.assertEquals("[3, 4, 5]", queue.toString());
+        Assert.assertEquals(3, queue.capacity());
+    }
 }
@@ -0,0 +1,175 @@
+package core;
+
+import concurrent.CursorOverrunException;
+import concurrent.MostRecentlyInsertedRing;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MostRecentlyInsertedRingTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void readNextTest() {
+        MostRecentlyInsertedRing<Integer> ring = new MostRecentlyInsertedRing<>(5);
+        MostRecentlyInsertedRing<Integer>.Cursor cursor = ring.cursor();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(i, ring.offer(i));
+        }
+        List<Integer> batch = new ArrayList<>();
+        Assert.assertEquals(2, cursor.readNext(batch, 2));
+        Assert.assertEquals(1, cursor.readNext(batch, 2));
+        Assert.assertEquals(0, cursor.readNext(batch, 2));
+        Assert.assertEquals("[0, 1, 2]", batch.toString());
+        Assert.assertEquals(3, cursor.position());
+    }
+
+    @Test
+    public void cursorsAreIndependentTest() {
+        MostRecentlyInsertedRing<Integer> ring = new MostRecentlyInsertedRing<>(5);
+        ring.offer(1);
+        MostRecentlyInsertedRing<Integer>.Cursor first = ring.cursor();
+        MostRecentlyInsertedRing<Integer>.Cursor second = ring.tailCursor();
+        ring.offer(2);
+
+        Assert.assertEquals((Integer) 1, first.readNext());
+        Assert.assertEquals((Integer) 2, first.readNext());
+        Assert.assertEquals((Integer) 2, second.readNext());
+        Assert.assertNull(second.readNext());
+    }
+
+    @Test
+    public void overrunTest() {
+        MostRecentlyInsertedRing<Integer> ring = new MostRecentlyInsertedRing<>(3);
+        MostRecentlyInsertedRing<Integer>.Cursor cursor = ring.cursor();
+        for (int i = 0; i < 10; i++) {
+            ring.offer(i);
+        }
+        try {
+            cursor.readNext();
+            Assert.fail();
+        } catch (CursorOverrunException e) {
+            Assert.assertEquals(7, e.getSkipped());
+        }
+        List<Integer> batch = new ArrayList<>();
+        cursor.readNext(batch, 10);
+        Assert.assertEquals("[7, 8, 9]", batch.toString());
+    }
+
+    @Test
+    public void concurrentTailingTest() throws Exception {
+        final MostRecentlyInsertedRing<Integer> ring = new MostRecentlyInsertedRing<>(64);
+        final int perProducer = 20000;
+        Thread[] producers = new Thread[2];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    ring.offer(i);
+                }
+            });
+        }
+        MostRecentlyInsertedRing<Integer>.Cursor cursor = ring.cursor();
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        long seen = 0;
+        List<Integer> batch = new ArrayList<>();
+        while (seen < 2L * perProducer) {
+            try {
+                batch.clear();
+                seen += cursor.readNext(batch, 16);
+            } catch (CursorOverrunException e) {
+                seen += e.getSkipped();
+            }
+            if (batch.isEmpty())
+                Thread.yield();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        Assert.assertEquals(2L * perProducer, seen);
+        Assert.assertEquals(2L * perProducer, cursor.position());
+    }
+
+    @Test
+    public void insertNullValueTest() {
+        thrown.expect(NullPointerException.class);
+
+        new MostRecentlyInsertedRing<Integer>(3).offer(null);
+    }
+
+    @Test
+    public void rangeByTimeTest() {
+        final long[] now = {0};
+        MostRecentlyInsertedRing<Integer> ring = new MostRecentlyInsertedRing<>(5, () -> now[0]);
+        for (int i = 0; i < 8; i++) {
+            now[0] = i * 10;
+            ring.offer(i);
+        }
+        // 0 to 2 were evicted
+        Assert.assertEquals("[3, 4, 5, 6, 7]", ring.since(0).toString());
+        Assert.assertEquals("[4, 5]", ring.rangeByTime(35, 60).toString());
+        Assert.assertEquals("[5, 6]", ring.rangeByTime(50, 61).toString());
+        Assert.assertEquals("[7]", ring.since(70).toString());
+        Assert.assertTrue(ring.since(71).isEmpty());
+        Assert.assertTrue(ring.rangeByTime(40, 40).isEmpty());
+    }
+
+    @Test
+    public void equalTimesAreAllReturnedTest() {
+        final long[] now = {0};
+        MostRecentlyInsertedRing<Integer> ring = new MostRecentlyInsertedRing<>(10, () -> now[0]);
+        for (int i = 0; i < 9; i++) {
+            now[0] = i / 3;
+            ring.offer(i);
+        }
+        Assert.assertEquals("[3, 4, 5]", ring.rangeByTime(1, 2).toString());
+        Assert.assertEquals("[6, 7, 8]", ring.since(2).toString());
+    }
+
+    @Test
+    public void rangeWithoutClockTest() {
+        thrown.expect(IllegalStateException.class);
+
+        new MostRecentlyInsertedRing<Integer>(3).since(0);
+    }
+
+    @Test
+    public void concurrentInsertsKeepTimesOrderedTest() throws Exception {
+        final AtomicLong clock = new AtomicLong();
+        final MostRecentlyInsertedRing<Long> ring = new MostRecentlyInsertedRing<>(1024, clock::incrementAndGet);
+        final int perProducer = 20000;
+        Thread[] producers = new Thread[2];
+        for (int p = 0; p < producers.length; p++) {
+            final long tag = (long) p << 32;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    ring.offer(tag | i);
+                }
+            });
+            producers[p].start();
+        }
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread producer : producers) {
+                running |= producer.isAlive();
+            }
+            long[] last = {-1, -1};
+            for (Long value : ring.since(clock.get() / 2)) {
+                int producer = (int) (value >>> 32);
+                long counter = value & 0xFFFFFFFFL;
+                Assert.assertTrue(counter + " after " + last[producer], counter > last[producer]);
+                last[producer] = counter;
+            }
+        }
+        Assert.assertEquals(1024, ring.since(Long.MIN_VALUE).size());
+    }
+}
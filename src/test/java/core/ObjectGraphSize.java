@@ -0,0 +1,145 @@
+package core;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Heap retained by an object graph, measured by walking the references
+ * reflectively instead of taking a heap dump. Shallow sizes come from the
+ * field offsets the running JVM actually assigned, so headers, compressed
+ * references, padding and alignment are all accounted for as laid out.
+ * <p>
+ * {@code sun.misc.Unsafe} reads the fields: unlike {@code setAccessible} it is
+ * not stopped by module encapsulation, so the walk follows references into
+ * JDK classes such as locks and atomics.
+ */
+final class ObjectGraphSize {
+
+    private static final sun.misc.Unsafe UNSAFE;
+    private static final int OBJECT_ALIGNMENT = 8;
+    private static final int HEADER_SIZE;
+
+    static {
+        try {
+            Field f = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            UNSAFE = (sun.misc.Unsafe) f.get(null);
+            // the only field of a class starts right after the object header
+            HEADER_SIZE = (int) UNSAFE.objectFieldOffset(HeaderProbe.class.getDeclaredField("value"));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final class HeaderProbe {
+        int value;
+    }
+
+    private static final Map<Class<?>, ClassLayout> LAYOUTS = new IdentityHashMap<>();
+
+    private ObjectGraphSize() {
+    }
+
+    /**
+     * Returns the bytes retained by {@code root}, not counting the
+     * {@code excluded} objects nor anything reachable only through them.
+     * Class objects and threads are never counted.
+     */
+    static long retainedBytes(Object root, Set<Object> excluded) {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        long total = 0;
+        while (!pending.isEmpty()) {
+            Object o = pending.pop();
+            if (excluded.contains(o) || o instanceof Class || o instanceof Thread || !visited.add(o))
+                continue;
+            Class<?> type = o.getClass();
+            if (type.isArray()) {
+                total += arraySize(o, type);
+                if (!type.getComponentType().isPrimitive()) {
+                    for (int i = 0, n = Array.getLength(o); i < n; i++) {
+                        Object element = Array.get(o, i);
+                        if (element != null)
+                            pending.push(element);
+                    }
+                }
+                continue;
+            }
+            ClassLayout layout = layoutOf(type);
+            total += layout.size;
+            for (long offset : layout.referenceOffsets) {
+                Object referent = UNSAFE.getObject(o, offset);
+                if (referent != null)
+                    pending.push(referent);
+            }
+        }
+        return total;
+    }
+
+    private static long arraySize(Object array, Class<?> type) {
+        int length = Array.getLength(array);
+        long size = UNSAFE.arrayBaseOffset(type) + (long) UNSAFE.arrayIndexScale(type) * length;
+        return align(size);
+    }
+
+    private static ClassLayout layoutOf(Class<?> type) {
+        synchronized (LAYOUTS) {
+            return LAYOUTS.computeIfAbsent(type, ClassLayout::new);
+        }
+    }
+
+    private static long align(long size) {
+        return (size + OBJECT_ALIGNMENT - 1) / OBJECT_ALIGNMENT * OBJECT_ALIGNMENT;
+    }
+
+    private static final class ClassLayout {
+        final long size;
+        final long[] referenceOffsets;
+
+        ClassLayout(Class<?> type) {
+            long end = HEADER_SIZE;
+            List<Long> references = new ArrayList<>();
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()))
+                        continue;
+                    long offset;
+                    try {
+                        offset = UNSAFE.objectFieldOffset(field);
+                    } catch (UnsupportedOperationException e) {
+                        // hidden classes (lambdas) and records: count the field, do not follow it
+                        end += sizeOf(field.getType());
+                        continue;
+                    }
+                    end = Math.max(end, offset + sizeOf(field.getType()));
+                    if (!field.getType().isPrimitive())
+                        references.add(offset);
+                }
+            }
+            this.size = align(end);
+            this.referenceOffsets = references.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        private static int sizeOf(Class<?> type) {
+            if (type == long.class || type == double.class)
+                return 8;
+            if (type == int.class || type == float.class)
+                return 4;
+            if (type == short.class || type == char.class)
+                return 2;
+            if (type == byte.class || type == boolean.class)
+                return 1;
+            return UNSAFE.arrayIndexScale(Object[].class);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package core;
+
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import concurrent.ProducerBuffers;
+import org.junit.Assert;
+import org.junit.Test;
+import summary.QueueListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ProducerBuffersTest {
+
+    @Test
+    public void fullBatchIsFlushedTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(5);
+        try (ProducerBuffers<Integer> buffers = new ProducerBuffers<>(queue, 3, 1, TimeUnit.HOURS)) {
+            buffers.offer(1);
+            buffers.offer(2);
+            Assert.assertTrue(queue.isEmpty());
+            buffers.offer(3);
+            Assert.assertEquals("[1, 2, 3]", queue.toString());
+            for (int i = 4; i <= 8; i++) {
+                buffers.offer(i);
+            }
+            Assert.assertEquals("[2, 3, 4, 5, 6]", queue.toString());
+            buffers.flush();
+            Assert.assertEquals("[4, 5, 6, 7, 8]", queue.toString());
+            Assert.assertEquals(5, queue.size());
+        }
+    }
+
+    @Test
+    public void staleBatchIsFlushedTest() throws Exception {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(5);
+        try (ProducerBuffers<Integer> buffers = new ProducerBuffers<>(queue, 100, 20, TimeUnit.MILLISECONDS)) {
+            buffers.offer(1);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (queue.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            Assert.assertEquals("[1]", queue.toString());
+        }
+    }
+
+    @Test
+    public void offerAfterCloseIsRejectedTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(5);
+        ProducerBuffers<Integer> buffers = new ProducerBuffers<>(queue, 3, 1, TimeUnit.HOURS);
+        buffers.offer(1);
+        buffers.close();
+        Assert.assertEquals("[1]", queue.toString());
+        try {
+            buffers.offer(2);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("[1]", queue.toString());
+        }
+    }
+
+    @Test
+    public void closeFlushesEveryThreadTest() throws Exception {
+        final int threads = 4;
+        final int perThread = 1000;
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(threads * perThread);
+        AtomicInteger evicted = new AtomicInteger();
+        queue.setListener(new QueueListener<Integer>() {
+            public void inserted(Integer element) {
+            }
+
+            public void removed(Integer element) {
+            }
+
+            public void evicted(Integer element) {
+                evicted.incrementAndGet();
+            }
+        });
+        ProducerBuffers<Integer> buffers = new ProducerBuffers<>(queue, 16, 1, TimeUnit.HOURS);
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int base = t * perThread;
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    buffers.offer(base + i);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        buffers.close();
+        Assert.assertEquals(threads * perThread, queue.size());
+        Assert.assertEquals(0, evicted.get());
+
+        // each producer's elements keep their order
+        int[] last = new int[threads];
+        Arrays.fill(last, -1);
+        for (Iterator<Integer> it = queue.iterator(); it.hasNext(); ) {
+            int element = it.next();
+            int producer = element / perThread;
+            Assert.assertTrue(element > last[producer]);
+            last[producer] = element;
+        }
+
+        queue.offerAll(List.of(-1, -2, -3));
+        Assert.assertEquals(3, evicted.get());
+        Assert.assertEquals(threads * perThread, queue.size());
+    }
+}
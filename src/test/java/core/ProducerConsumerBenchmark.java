@@ -0,0 +1,199 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import concurrent.ContentionPolicy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Producer/consumer throughput benchmark. Not part of the default test run
+ * (the name does not match the surefire includes); run it with
+ * <pre>
+ * mvn test -Dtest=ProducerConsumerBenchmark -Dbench.producers=4 -Dbench.consumers=4 -Dbench.seconds=5
+ * </pre>
+ * {@code -Dbench.contention=none|backoff|elimination} selects the contention
+ * policy of the concurrent queue.
+ * Pin producers and consumers to different sockets (numactl/taskset) to see
+ * the effect of the padded layouts; on a single core the numbers only show
+ * the scheduling overhead.
+ */
+public class ProducerConsumerBenchmark {
+
+    private static final int PRODUCERS = Integer.getInteger("bench.producers", 2);
+    private static final int CONSUMERS = Integer.getInteger("bench.consumers", 2);
+    private static final int SECONDS = Integer.getInteger("bench.seconds", 3);
+    private static final int CAPACITY = Integer.getInteger("bench.capacity", 1024);
+    private static final String CONTENTION = System.getProperty("bench.contention", "none");
+
+    @Test
+    public void concurrentQueueThroughput() throws Exception {
+        run("concurrent/" + CONTENTION,
+                () -> new ConcurrentMostRecentlyInsertedQueue<>(CAPACITY, false, contention()));
+    }
+
+    private static ContentionPolicy contention() {
+        switch (CONTENTION) {
+            case "backoff":
+                return ContentionPolicy.backoff(16, 4096);
+            case "elimination":
+                return ContentionPolicy.backoff(16, 4096).withElimination(Math.max(1, CONSUMERS / 2), 256);
+            default:
+                return ContentionPolicy.NONE;
+        }
+    }
+
+    @Test
+    public void blockingQueueThroughput() throws Exception {
+        run("blocking", () -> new MostRecentlyInsertedBlockingQueue<>(CAPACITY));
+    }
+
+    /**
+     * Two threads each store to the field of their side, the consumer side
+     * and the producer side, once in the real queues, laid out by
+     * ConcurrentQueueFields and BlockingQueueFields, and once in the same
+     * fields declared next to each other. The ratio is what false sharing
+     * between the sides would cost on this host without the padding.
+     */
+    @Test
+    public void fieldIsolation() throws Exception {
+        ConcurrentMostRecentlyInsertedQueue<Integer> concurrent = new ConcurrentMostRecentlyInsertedQueue<>(CAPACITY);
+        compare("concurrent head/tail", concurrent, field(concurrent, "head"), field(concurrent, "tail"),
+                new UnpaddedConcurrent(), field(UnpaddedConcurrent.class, "head"), field(UnpaddedConcurrent.class, "tail"));
+        MostRecentlyInsertedBlockingQueue<Integer> blocking = new MostRecentlyInsertedBlockingQueue<>(CAPACITY);
+        compare("blocking takeCount/putCount", blocking, field(blocking, "takeCount"), field(blocking, "putCount"),
+                new UnpaddedBlocking(), field(UnpaddedBlocking.class, "takeCount"), field(UnpaddedBlocking.class, "putCount"));
+    }
+
+    private void compare(String name, Object padded, VarHandle paddedFirst, VarHandle paddedSecond,
+                         Object unpadded, VarHandle unpaddedFirst, VarHandle unpaddedSecond) throws Exception {
+        long isolated = hammer(padded, paddedFirst, paddedSecond);
+        long shared = hammer(unpadded, unpaddedFirst, unpaddedSecond);
+        System.out.printf("%s stores/s: unpadded %,d, queue layout %,d (x%.2f)%n",
+                name, shared, isolated, (double) isolated / shared);
+    }
+
+    private static VarHandle field(Object queue, String name) throws ReflectiveOperationException {
+        return field(queue.getClass(), name);
+    }
+
+    private static VarHandle field(Class<?> type, String name) throws ReflectiveOperationException {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            try {
+                Field field = c.getDeclaredField(name);
+                return MethodHandles.privateLookupIn(c, MethodHandles.lookup()).unreflectVarHandle(field);
+            } catch (NoSuchFieldException e) {
+                // declared further up the layout
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    private void run(String name, Supplier<Queue<Integer>> factory) throws Exception {
+        // warm up, then measure
+        measure(factory.get(), 1);
+        long ops = measure(factory.get(), SECONDS);
+        System.out.printf("%s: %d producers, %d consumers, %,d ops/s%n",
+                name, PRODUCERS, CONSUMERS, ops / SECONDS);
+        Assert.assertTrue(ops > 0);
+    }
+
+    private long measure(final Queue<Integer> queue, int seconds) throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final LongAdder ops = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[PRODUCERS + CONSUMERS];
+        for (int t = 0; t < threads.length; t++) {
+            final boolean producer = t < PRODUCERS;
+            threads[t] = new Thread(() -> {
+                long n = 0;
+                Integer element = 42;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (running.get()) {
+                    if (producer) {
+                        queue.offer(element);
+                        n++;
+                    } else {
+                        try {
+                            queue.poll();
+                            n++;
+                        } catch (NoSuchElementException e) {
+                            // both queues throw when empty
+                        }
+                    }
+                }
+                ops.add(n);
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return ops.sum();
+    }
+
+    /**
+     * Stores each field's current value back from its own thread, so the
+     * queue stays intact while its lines are written.
+     */
+    private long hammer(Object target, VarHandle first, VarHandle second) throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final LongAdder ops = new LongAdder();
+        Thread[] threads = new Thread[2];
+        VarHandle[] fields = {first, second};
+        for (int t = 0; t < threads.length; t++) {
+            final VarHandle field = fields[t];
+            final Object value = field.getVolatile(target);
+            threads[t] = new Thread(() -> {
+                long n = 0;
+                while (running.get()) {
+                    for (int i = 0; i < 1000; i++) {
+                        field.setVolatile(target, value);
+                    }
+                    n += 1000;
+                }
+                ops.add(n);
+            });
+            threads[t].start();
+        }
+        Thread.sleep(SECONDS * 1000L);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return ops.sum() / SECONDS;
+    }
+
+    /**
+     * The hot fields of ConcurrentQueueFields with no padding between them
+     */
+    static final class UnpaddedConcurrent {
+        volatile Object head;
+        volatile Object tail;
+    }
+
+    /**
+     * The counters of BlockingQueueFields with no padding between them
+     */
+    static final class UnpaddedBlocking {
+        volatile long takeCount;
+        volatile long putCount;
+    }
+}
@@ -0,0 +1,128 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import blocking.QueueJournal;
+import blocking.QueueJournal.FsyncPolicy;
+import blocking.SpillStore;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import factory.AdaptiveMostRecentlyInsertedQueue;
+import factory.QueueBuilder;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class QueueBuilderTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void engineFitsTheWorkloadTest() throws Exception {
+        Assert.assertEquals(QueueBuilder.Engine.ADAPTIVE, QueueBuilder.withCapacity(8).engine());
+        Assert.assertEquals(QueueBuilder.Engine.SINGLE_THREADED, QueueBuilder.withCapacity(8).confined().engine());
+        Assert.assertEquals(QueueBuilder.Engine.CONCURRENT, QueueBuilder.withCapacity(8).threads(4, 2).engine());
+        Assert.assertEquals(QueueBuilder.Engine.BLOCKING,
+                QueueBuilder.withCapacity(8).threads(1, 1).blocking().engine());
+        Assert.assertEquals(QueueBuilder.Engine.TIERED,
+                QueueBuilder.<Integer>withCapacity(8).compact(CheckpointTest.INT_CODEC, 4, 4).engine());
+
+        Assert.assertTrue(QueueBuilder.<Integer>withCapacity(8).build() instanceof AdaptiveMostRecentlyInsertedQueue);
+        Assert.assertTrue(QueueBuilder.<Integer>withCapacity(8).confined().build() instanceof MostRecentlyInsertedQueue);
+        Assert.assertTrue(QueueBuilder.<Integer>withCapacity(8).threads(8, 8).build()
+                instanceof ConcurrentMostRecentlyInsertedQueue);
+        Assert.assertTrue(QueueBuilder.<Integer>withCapacity(8).compact(CheckpointTest.INT_CODEC, 4, 4).build()
+                instanceof TieredMostRecentlyInsertedQueue);
+
+        try (QueueJournal<Integer> journal = QueueJournal.open(folder.newFile("journal").toPath(),
+                CheckpointTest.INT_CODEC, FsyncPolicy.OS, 1000)) {
+            Queue<Integer> persistent = QueueBuilder.<Integer>withCapacity(8).journal(journal).build();
+            Assert.assertTrue(persistent instanceof MostRecentlyInsertedBlockingQueue);
+        }
+        try (SpillStore<Integer> spill = SpillStore.open(folder.newFolder("spill").toPath(),
+                CheckpointTest.INT_CODEC, 100, 1024)) {
+            BlockingQueue<Integer> spilling = QueueBuilder.<Integer>withCapacity(2).spill(spill).buildBlocking();
+            for (int i = 0; i < 5; i++) {
+                spilling.offer(i);
+            }
+            Assert.assertEquals(5, spilling.size());
+        }
+    }
+
+    @Test
+    public void compactQueueMustBeConfinedTest() {
+        thrown.expect(IllegalStateException.class);
+        QueueBuilder.<Integer>withCapacity(8).threads(2, 1).compact(CheckpointTest.INT_CODEC, 4, 4).engine();
+    }
+
+    @Test
+    public void adaptiveQueueStaysSingleInOneThreadTest() {
+        AdaptiveMostRecentlyInsertedQueue<Integer> queue = new AdaptiveMostRecentlyInsertedQueue<>(3);
+        Assert.assertNull(queue.peek());
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        Assert.assertEquals("[2, 3, 4]", queue.toString());
+        Assert.assertEquals((Integer) 2, queue.poll());
+        Assert.assertEquals(2, queue.size());
+        queue.clear();
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertFalse(queue.isInflated());
+    }
+
+    @Test
+    public void adaptiveQueueInflatesOnSecondThreadTest() throws Exception {
+        AdaptiveMostRecentlyInsertedQueue<Integer> queue = new AdaptiveMostRecentlyInsertedQueue<>(4);
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+        }
+        AtomicReference<Integer> polled = new AtomicReference<>();
+        Thread other = new Thread(() -> polled.set(queue.poll()));
+        other.start();
+        other.join();
+        Assert.assertTrue(queue.isInflated());
+        Assert.assertEquals((Integer) 2, polled.get());
+        queue.offer(6);
+        queue.offer(7);
+        Assert.assertEquals("[4, 5, 6, 7]", queue.toString());
+        queue.clear();
+        thrown.expect(NoSuchElementException.class);
+        queue.poll();
+    }
+
+    @Test
+    public void inflationLosesNoElementTest() throws Exception {
+        final int total = 200000;
+        AdaptiveMostRecentlyInsertedQueue<Integer> queue = new AdaptiveMostRecentlyInsertedQueue<>(total);
+        List<Integer> taken = new ArrayList<>();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < total; i++) {
+                queue.offer(i);
+            }
+        });
+        producer.start();
+        while (taken.size() < total) {
+            try {
+                taken.add(queue.poll());
+            } catch (NoSuchElementException e) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+        Assert.assertTrue(queue.isInflated());
+        for (int i = 0; i < total; i++) {
+            Assert.assertEquals((Integer) i, taken.get(i));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import blocking.QueueJournal;
+import blocking.QueueJournal.FsyncPolicy;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+public class QueueJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MostRecentlyInsertedBlockingQueue<Integer> open(Path file, int capacity, FsyncPolicy policy)
+            throws IOException {
+        return new MostRecentlyInsertedBlockingQueue<>(capacity,
+                QueueJournal.open(file, CheckpointTest.INT_CODEC, policy, 10));
+    }
+
+    @Test
+    public void replayTest() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("queue.journal");
+        QueueJournal<Integer> journal = QueueJournal.open(file, CheckpointTest.INT_CODEC, FsyncPolicy.EVERY_OP, 0);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3, journal);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        queue.take();
+        queue.put(5);
+        Iterator<Integer> it = queue.iterator();
+        it.next();
+        it.remove();
+        journal.close();
+
+        MostRecentlyInsertedBlockingQueue<Integer> restored = open(file, 3, FsyncPolicy.EVERY_OP);
+        Assert.assertEquals("[4, 5]", restored.toString());
+        Assert.assertEquals(2, restored.size());
+    }
+
+    @Test
+    public void clearIsJournaledTest() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("queue.journal");
+        QueueJournal<Integer> journal = QueueJournal.open(file, CheckpointTest.INT_CODEC, FsyncPolicy.INTERVAL, 5);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(10, journal);
+        queue.offer(1);
+        queue.clear();
+        queue.offer(2);
+        journal.close();
+
+        Assert.assertEquals("[2]", open(file, 10, FsyncPolicy.OS).toString());
+    }
+
+    @Test
+    public void tornRecordIsCutOffTest() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("queue.journal");
+        QueueJournal<Integer> journal = QueueJournal.open(file, CheckpointTest.INT_CODEC, FsyncPolicy.EVERY_OP, 0);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(10, journal);
+        queue.offer(1);
+        queue.offer(2);
+        journal.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 0, 0, 0, 4, 0}));
+        }
+
+        MostRecentlyInsertedBlockingQueue<Integer> restored = open(file, 10, FsyncPolicy.EVERY_OP);
+        Assert.assertEquals("[1, 2]", restored.toString());
+    }
+
+    @Test
+    public void compactionTest() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("queue.journal");
+        QueueJournal<Integer> journal = QueueJournal.open(file, CheckpointTest.INT_CODEC, FsyncPolicy.OS, 1000);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(10, journal);
+        for (int i = 0; i < 100000; i++) {
+            queue.offer(i);
+        }
+        journal.close();
+        // 10 live records plus at most the records since the last compaction
+        Assert.assertTrue(Files.size(file) < 13 * 4096 * 2);
+
+        MostRecentlyInsertedBlockingQueue<Integer> restored = open(file, 10, FsyncPolicy.EVERY_OP);
+        Assert.assertEquals(10, restored.size());
+        Assert.assertEquals((Integer) 99990, restored.peek());
+    }
+
+    @Test
+    public void groupCommitTest() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("queue.journal");
+        QueueJournal<Integer> journal = QueueJournal.open(file, CheckpointTest.INT_CODEC, FsyncPolicy.EVERY_OP, 0);
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(1000, journal);
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            final int base = t * 100;
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    queue.offer(base + i);
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        journal.close();
+
+        Assert.assertEquals(400, open(file, 1000, FsyncPolicy.EVERY_OP).size());
+    }
+
+    @Test
+    public void batchesAreJournaledTest() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("queue.journal");
+        QueueJournal<Integer> journal = QueueJournal.open(file, CheckpointTest.INT_CODEC, FsyncPolicy.EVERY_OP, 0);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4, journal);
+        queue.putAll(Arrays.asList(1, 2, 3));
+        queue.offerAll(Arrays.asList(4, 5, 6));
+        journal.close();
+
+        Assert.assertEquals("[3, 4, 5, 6]", open(file, 4, FsyncPolicy.EVERY_OP).toString());
+    }
+
+    @Test
+    public void bulkRemovalIsJournaledTest() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("queue.journal");
+        QueueJournal<Integer> journal = QueueJournal.open(file, CheckpointTest.INT_CODEC, FsyncPolicy.EVERY_OP, 0);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(6, journal);
+        queue.addAll(Arrays.asList(1, 2, 3, 4, 5, 6));
+        queue.removeIf(e -> e % 2 == 1);
+        journal.close();
+
+        Assert.assertEquals("[2, 4, 6]", open(file, 6, FsyncPolicy.EVERY_OP).toString());
+    }
+}
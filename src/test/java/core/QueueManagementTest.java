@@ -0,0 +1,140 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import blocking.SpillStore;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import management.HeapPressurePolicy;
+import management.QueueControl;
+import management.QueueManagement;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import summary.QueueListener;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class QueueManagementTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<QueueControl> controls = new ArrayList<>();
+
+    @After
+    public void unregister() {
+        for (QueueControl control : controls) {
+            control.close();
+        }
+    }
+
+    @Test
+    public void attributesThroughMBeanServerTest() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        AtomicInteger inserted = new AtomicInteger();
+        queue.setListener(new QueueListener<Integer>() {
+            public void inserted(Integer element) {
+                inserted.incrementAndGet();
+            }
+
+            public void removed(Integer element) {
+            }
+
+            public void evicted(Integer element) {
+            }
+        });
+        QueueControl control = QueueManagement.register("orders", queue);
+        controls.add(control);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("queue:type=MostRecentlyInsertedQueue,name=\"orders\"");
+        Assert.assertEquals(4, server.getAttribute(name, "Size"));
+        Assert.assertEquals(4, server.getAttribute(name, "Capacity"));
+        Assert.assertEquals(6L, server.getAttribute(name, "EvictionCount"));
+        Assert.assertEquals(10, inserted.get());
+
+        queue.clear();
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        while ((Integer) server.getAttribute(name, "WaitingConsumers") == 0) {
+            Thread.sleep(1);
+        }
+        queue.offer(1);
+        consumer.join();
+
+        server.setAttribute(name, new Attribute("ConfiguredCapacity", 2));
+        Assert.assertEquals(2, queue.capacity());
+        control.close();
+        controls.clear();
+        Assert.assertFalse(server.isRegistered(name));
+        queue.offer(2);
+        Assert.assertEquals(12, inserted.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateNamesAreRejectedTest() {
+        controls.add(QueueManagement.register("twice", new ConcurrentMostRecentlyInsertedQueue<Integer>(4)));
+        QueueManagement.register("twice", new ConcurrentMostRecentlyInsertedQueue<Integer>(4));
+    }
+
+    @Test
+    public void spillingQueuesAreRejectedTest() throws Exception {
+        try (SpillStore<Integer> spill = SpillStore.open(folder.newFolder("spill").toPath(),
+                CheckpointTest.INT_CODEC, 100, 1024)) {
+            MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4, spill);
+            try {
+                controls.add(QueueManagement.register("spilling", queue));
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(QueueManagement.registered().isEmpty());
+                Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                        new ObjectName("queue:type=MostRecentlyInsertedQueue,name=\"spilling\"")));
+            }
+        }
+    }
+
+    @Test
+    public void heapPressureShrinksAndRestoresTest() throws Exception {
+        ConcurrentMostRecentlyInsertedQueue<Integer> events = new ConcurrentMostRecentlyInsertedQueue<>(100);
+        MostRecentlyInsertedBlockingQueue<Integer> orders = new MostRecentlyInsertedBlockingQueue<>(10);
+        controls.add(QueueManagement.register("events", events));
+        QueueControl ordersControl = QueueManagement.register("orders", orders);
+        controls.add(ordersControl);
+        for (int i = 0; i < 100; i++) {
+            events.offer(i);
+            orders.offer(i);
+        }
+        try (HeapPressurePolicy policy = HeapPressurePolicy.install(0.99, 0.5, 0.25)) {
+            policy.shrink();
+            Assert.assertTrue(policy.isShrunk());
+            Assert.assertEquals(25, events.capacity());
+            Assert.assertEquals(25, events.size());
+            Assert.assertEquals((Integer) 75, events.peek());
+            Assert.assertEquals(2, orders.capacity());
+            Assert.assertEquals("[98, 99]", orders.toString());
+            Assert.assertEquals(10, ordersControl.getConfiguredCapacity());
+
+            ordersControl.setConfiguredCapacity(20);
+            Assert.assertEquals(5, orders.capacity());
+            policy.restore();
+            Assert.assertEquals(100, events.capacity());
+            Assert.assertEquals(20, orders.capacity());
+            Assert.assertEquals(25, events.size());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package core;
+
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import concurrent.SnapshotView;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import summary.QueueListener;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SnapshotViewTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void publishesEveryInsertsTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(4);
+        queue.offer(1);
+        AtomicInteger inserted = new AtomicInteger();
+        queue.setListener(new QueueListener<Integer>() {
+            public void inserted(Integer element) {
+                inserted.incrementAndGet();
+            }
+
+            public void removed(Integer element) {
+            }
+
+            public void evicted(Integer element) {
+            }
+        });
+        try (SnapshotView<Integer> view = new SnapshotView<>(queue, 3, 0, TimeUnit.MILLISECONDS)) {
+            Assert.assertEquals(List.of(1), view.snapshot());
+            queue.offer(2);
+            queue.offer(3);
+            List<Integer> old = view.snapshot();
+            Assert.assertEquals(List.of(1), old);
+            queue.offer(4);
+            Assert.assertEquals(List.of(1, 2, 3, 4), view.snapshot());
+            queue.offerAll(List.of(5, 6, 7));
+            Assert.assertEquals(List.of(4, 5, 6, 7), view.snapshot());
+            Assert.assertEquals(List.of(1), old);
+            Assert.assertEquals(4, view.size());
+            view.publish();
+            queue.poll();
+            Assert.assertEquals((Integer) 4, view.iterator().next());
+            Assert.assertEquals(6, inserted.get());
+        }
+        Assert.assertNotNull(queue.getListener());
+    }
+
+    @Test
+    public void publishesEveryIntervalTest() throws Exception {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(4);
+        try (SnapshotView<Integer> view = new SnapshotView<>(queue, 0, 500, TimeUnit.MICROSECONDS)) {
+            Assert.assertTrue(view.snapshot().isEmpty());
+            queue.offer(1);
+            queue.offer(2);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (view.size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            Assert.assertEquals(List.of(1, 2), view.snapshot());
+            queue.poll();
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (view.size() > 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            Assert.assertEquals(List.of(2), view.snapshot());
+        }
+        Assert.assertNull(queue.getListener());
+    }
+
+    @Test
+    public void snapshotIsImmutableTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(4);
+        queue.offer(1);
+        try (SnapshotView<Integer> view = new SnapshotView<>(queue, 1, 0, TimeUnit.MILLISECONDS)) {
+            thrown.expect(UnsupportedOperationException.class);
+            view.snapshot().set(0, 2);
+        }
+    }
+
+    @Test
+    public void readersNeverSeeMoreThanCapacityTest() throws Exception {
+        final int capacity = 16;
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(capacity);
+        try (SnapshotView<Integer> view = new SnapshotView<>(queue, 8, 1, TimeUnit.MILLISECONDS)) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    queue.offer(i);
+                }
+            });
+            writer.start();
+            while (writer.isAlive()) {
+                List<Integer> snapshot = view.snapshot();
+                Assert.assertTrue(snapshot.size() <= capacity);
+                for (int i = 1; i < snapshot.size(); i++) {
+                    Assert.assertTrue(snapshot.get(i - 1) < snapshot.get(i));
+                }
+            }
+            writer.join();
+            view.publish();
+            Assert.assertEquals(capacity, view.size());
+            Assert.assertEquals((Integer) 99999, view.snapshot().get(capacity - 1));
+        }
+    }
+
+    @Test
+    public void concurrentWritersLeaveNoStaleSnapshotTest() throws Exception {
+        final int threads = 4;
+        final int perThread = 5000;
+        final int everyInserts = 50;
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(threads * perThread);
+        try (SnapshotView<Integer> view = new SnapshotView<>(queue, everyInserts, 0, TimeUnit.MILLISECONDS)) {
+            Thread[] writers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                writers[t] = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        queue.offer(i);
+                    }
+                });
+                writers[t].start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            Assert.assertTrue(view.size() > threads * perThread - everyInserts);
+        }
+    }
+}
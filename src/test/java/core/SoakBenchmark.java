@@ -0,0 +1,191 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Long-running multi-threaded soak of the concurrent and blocking queues.
+ * Not part of the default test run; run it with
+ * <pre>
+ * mvn test -Dtest=SoakBenchmark -Dsoak.seconds=600 -Dsoak.producers=4 -Dsoak.consumers=4
+ * </pre>
+ * Producers offer tagged values into a small queue, so that most offers
+ * evict; consumers poll. Histories this long can not be checked for
+ * linearizability ({@link LinearizabilityTest} does that on short rounds),
+ * so the run checks the invariants of the drop-oldest model instead:
+ * <ul>
+ * <li>a consumer receives the values of each producer in offer order</li>
+ * <li>no value is received twice, nor more values than were offered
+ * (checked for the first {@code soak.tracked} values of each producer)</li>
+ * <li>the size never exceeds the capacity</li>
+ * </ul>
+ * Throughput is reported every {@code soak.interval} seconds, latency
+ * percentiles of offer and poll at the end.
+ */
+public class SoakBenchmark {
+
+    private static final int SECONDS = Integer.getInteger("soak.seconds", 10);
+    private static final int INTERVAL = Integer.getInteger("soak.interval", 1);
+    private static final int PRODUCERS = Integer.getInteger("soak.producers", 2);
+    private static final int CONSUMERS = Integer.getInteger("soak.consumers", 2);
+    private static final int CAPACITY = Integer.getInteger("soak.capacity", 64);
+
+    /**
+     * Bits of a value holding the producer's counter; the producer goes above
+     */
+    private static final int COUNTER_BITS = 40;
+
+    /**
+     * Values per producer checked for duplicates; later ones are only
+     * checked for order, to keep the bit sets of long runs small
+     */
+    private static final int TRACKED = Integer.getInteger("soak.tracked", 1 << 24);
+
+    @Test
+    public void concurrentQueueSoak() throws Exception {
+        soak("concurrent", new ConcurrentMostRecentlyInsertedQueue<>(CAPACITY));
+    }
+
+    @Test
+    public void blockingQueueSoak() throws Exception {
+        soak("blocking", new MostRecentlyInsertedBlockingQueue<>(CAPACITY));
+    }
+
+    private void soak(String name, final Queue<Long> queue) throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLongArray offered = new AtomicLongArray(PRODUCERS);
+        final AtomicLongArray polled = new AtomicLongArray(CONSUMERS);
+        final List<String> violations = new ArrayList<>();
+        final LatencyHistogram[] offerLatency = new LatencyHistogram[PRODUCERS];
+        final LatencyHistogram[] pollLatency = new LatencyHistogram[CONSUMERS];
+        final BitSet[][] received = new BitSet[CONSUMERS][PRODUCERS];
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            final LatencyHistogram latency = offerLatency[p] = new LatencyHistogram(11);
+            threads.add(new Thread(() -> {
+                long tag = (long) producer << COUNTER_BITS;
+                for (long n = 0; running.get(); n++) {
+                    long start = System.nanoTime();
+                    queue.offer(tag | n);
+                    latency.record(System.nanoTime() - start);
+                    offered.lazySet(producer, n + 1);
+                }
+            }, name + "-producer-" + p));
+        }
+        for (int c = 0; c < CONSUMERS; c++) {
+            final int consumer = c;
+            final LatencyHistogram latency = pollLatency[c] = new LatencyHistogram(11);
+            final BitSet[] seen = received[c];
+            threads.add(new Thread(() -> {
+                long[] last = new long[PRODUCERS];
+                Arrays.fill(last, -1);
+                for (int p = 0; p < PRODUCERS; p++) {
+                    seen[p] = new BitSet();
+                }
+                long n = 0;
+                while (running.get()) {
+                    if (queue.isEmpty()) {
+                        // both queues throw on an empty poll, which is too slow to spin on
+                        Thread.yield();
+                        continue;
+                    }
+                    Long value;
+                    long start = System.nanoTime();
+                    try {
+                        value = queue.poll();
+                    } catch (NoSuchElementException e) {
+                        continue;
+                    }
+                    latency.record(System.nanoTime() - start);
+                    if (value == null)
+                        continue; // the blocking poll may lose a race after its emptiness check
+                    int producer = (int) (value >>> COUNTER_BITS);
+                    long counter = value & ((1L << COUNTER_BITS) - 1);
+                    if (counter <= last[producer])
+                        violation(violations, name + ": consumer " + consumer + " got " + counter
+                                + " of producer " + producer + " after " + last[producer]);
+                    last[producer] = counter;
+                    if (counter < TRACKED)
+                        seen[producer].set((int) counter);
+                    polled.lazySet(consumer, ++n);
+                }
+            }, name + "-consumer-" + c));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long previousOffers = 0;
+        long previousPolls = 0;
+        for (int elapsed = 0; elapsed < SECONDS; elapsed += INTERVAL) {
+            long deadline = System.nanoTime() + INTERVAL * 1_000_000_000L;
+            while (System.nanoTime() < deadline) {
+                int size = queue.size();
+                if (size > CAPACITY)
+                    violation(violations, name + ": size " + size + " over capacity " + CAPACITY);
+                Thread.sleep(10);
+            }
+            long offers = sum(offered);
+            long polls = sum(polled);
+            System.out.printf("%s t=%4ds offers/s %,12d polls/s %,12d size %5d%n", name, elapsed + INTERVAL,
+                    (offers - previousOffers) / INTERVAL, (polls - previousPolls) / INTERVAL, queue.size());
+            previousOffers = offers;
+            previousPolls = polls;
+        }
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int p = 0; p < PRODUCERS; p++) {
+            BitSet union = new BitSet();
+            for (int c = 0; c < CONSUMERS; c++) {
+                if (union.intersects(received[c][p]))
+                    violation(violations, name + ": a value of producer " + p + " was received twice");
+                union.or(received[c][p]);
+            }
+            if (union.length() > Math.min(offered.get(p), TRACKED))
+                violation(violations, name + ": received a value producer " + p + " never offered");
+        }
+        report(name, "offer", offerLatency);
+        report(name, "poll", pollLatency);
+        Assert.assertTrue(violations.toString(), violations.isEmpty());
+    }
+
+    private static void violation(List<String> violations, String message) {
+        synchronized (violations) {
+            if (violations.size() < 20)
+                violations.add(message);
+        }
+    }
+
+    private static long sum(AtomicLongArray counters) {
+        long sum = 0;
+        for (int i = 0; i < counters.length(); i++) {
+            sum += counters.get(i);
+        }
+        return sum;
+    }
+
+    private static void report(String name, String operation, LatencyHistogram[] histograms) {
+        LatencyHistogram total = new LatencyHistogram(11);
+        for (LatencyHistogram histogram : histograms) {
+            total.add(histogram);
+        }
+        System.out.println(name + " " + operation + " latency");
+        total.printPercentiles(System.out, 1.0, "ns");
+    }
+}
@@ -0,0 +1,142 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import blocking.SpillStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class SpillStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<SpillStore<?>> stores = new ArrayList<>();
+
+    @After
+    public void close() throws IOException {
+        for (SpillStore<?> store : stores) {
+            store.close();
+        }
+    }
+
+    private <E> SpillStore<E> store(checkpoint.ElementCodec<E> codec, long maxElements, long segmentBytes)
+            throws IOException {
+        SpillStore<E> store = SpillStore.open(folder.getRoot().toPath().resolve("spill"), codec,
+                maxElements, segmentBytes);
+        stores.add(store);
+        return store;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath().resolve("spill"))) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void overflowIsTakenBackInOrderTest() throws Exception {
+        SpillStore<Integer> spill = store(CheckpointTest.INT_CODEC, 1000, 64);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4, spill);
+        for (int i = 0; i < 100; i++) {
+            queue.put(i);
+        }
+        Assert.assertEquals(100, queue.size());
+        Assert.assertEquals(96, spill.size());
+        Assert.assertEquals(0, queue.remainingCapacity());
+        Assert.assertEquals("[0, 1, 2, 3]", queue.toString());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals((Integer) i, queue.take());
+        }
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals(0, spill.size());
+    }
+
+    @Test
+    public void diskCapacityEvictsOldestTest() throws Exception {
+        SpillStore<Integer> spill = store(CheckpointTest.INT_CODEC, 5, 1024);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3, spill);
+        for (int i = 0; i < 12; i++) {
+            queue.offer(i);
+        }
+        Assert.assertEquals(8, queue.size());
+        List<Integer> taken = new ArrayList<>();
+        queue.drainTo(taken);
+        while (!queue.isEmpty()) {
+            queue.drainTo(taken);
+        }
+        Assert.assertEquals(Arrays.asList(4, 5, 6, 7, 8, 9, 10, 11), taken);
+    }
+
+    @Test
+    public void consumedSegmentsAreDeletedTest() throws Exception {
+        SpillStore<Integer> spill = store(CheckpointTest.INT_CODEC, 10000, 80);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(2, spill);
+        for (int i = 0; i < 202; i++) {
+            queue.offer(i);
+        }
+        // 8 byte records, 10 per segment
+        Assert.assertEquals(20, segmentFiles());
+        for (int i = 0; i < 150; i++) {
+            Assert.assertEquals((Integer) i, queue.poll());
+        }
+        Assert.assertTrue(segmentFiles() <= 6);
+        queue.clear();
+        Assert.assertEquals(0, queue.size());
+        Assert.assertEquals(0, segmentFiles());
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+        Assert.assertEquals((Integer) 1, queue.poll());
+        Assert.assertEquals((Integer) 2, queue.poll());
+        Assert.assertEquals((Integer) 3, queue.poll());
+    }
+
+    @Test
+    public void elementsLargerThanTheBuffersTest() throws Exception {
+        SpillStore<String> spill = store(CheckpointTest.STRING_CODEC, 100, 1 << 20);
+        MostRecentlyInsertedBlockingQueue<String> queue = new MostRecentlyInsertedBlockingQueue<>(1, spill);
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 60000; i++) {
+            big.append((char) ('a' + i % 26));
+        }
+        queue.offer("first");
+        queue.offer(big.toString());
+        queue.offer(big.reverse().toString());
+        queue.offer("last");
+        Assert.assertEquals("first", queue.take());
+        Assert.assertEquals(big.reverse().toString(), queue.take());
+        Assert.assertEquals(big.reverse().toString(), queue.take());
+        Assert.assertEquals("last", queue.take());
+    }
+
+    @Test
+    public void concurrentTakesSeeEveryElementOnceTest() throws Exception {
+        SpillStore<Integer> spill = store(CheckpointTest.INT_CODEC, 1_000_000, 4096);
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(16, spill);
+        final int total = 50000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < total; i++) {
+                queue.offer(i);
+            }
+        });
+        producer.start();
+        for (int i = 0; i < total; i++) {
+            Integer value = queue.poll(5, TimeUnit.SECONDS);
+            Assert.assertEquals((Integer) i, value);
+        }
+        producer.join();
+        Assert.assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,227 @@
+package core;
+
+import blocking.MostRecentlyInsertedBlockingQueue;
+import concurrent.ConcurrentMostRecentlyInsertedQueue;
+import org.junit.Assert;
+import org.junit.Test;
+import summary.CountMinTopK;
+import summary.HyperLogLog;
+import summary.LinearCounter;
+import summary.QuantileSketch;
+import summary.QueueListener;
+import summary.Summaries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SummaryTest {
+
+    /**
+     * Counts the reports, so that a test can check that every element
+     * entering a queue is reported leaving it exactly once.
+     */
+    private static final class Counting<E> implements QueueListener<E> {
+        final AtomicInteger inserted = new AtomicInteger();
+        final AtomicInteger removed = new AtomicInteger();
+        final AtomicInteger evicted = new AtomicInteger();
+
+        public void inserted(E element) {
+            inserted.incrementAndGet();
+        }
+
+        public void removed(E element) {
+            removed.incrementAndGet();
+        }
+
+        public void evicted(E element) {
+            evicted.incrementAndGet();
+        }
+
+        int inWindow() {
+            return inserted.get() - removed.get() - evicted.get();
+        }
+    }
+
+    @Test
+    public void countMinFollowsTheWindowTest() {
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(100);
+        CountMinTopK<Integer> sketch = new CountMinTopK<>(256, 4, 8);
+        queue.setListener(Summaries.window(sketch));
+        // 7 is hot at first, 3 is hot in the last hundred
+        for (int i = 0; i < 500; i++) {
+            queue.offer(i % 2 == 0 ? 7 : 1000 + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            queue.offer(i % 4 == 0 ? 2000 + i : 3);
+        }
+        Assert.assertEquals(0, sketch.estimate(7));
+        Assert.assertTrue(sketch.estimate(3) >= 75);
+        List<Map.Entry<Integer, Long>> top = sketch.topK(1);
+        Assert.assertEquals((Integer) 3, top.get(0).getKey());
+        for (int i = 0; i < 100; i++) {
+            queue.poll();
+        }
+        Assert.assertEquals(0, sketch.estimate(3));
+        Assert.assertTrue(sketch.topK(8).isEmpty());
+    }
+
+    @Test
+    public void topKFindsHeavyHittersTest() {
+        CountMinTopK<String> sketch = new CountMinTopK<>(1024, 4, 16);
+        for (int i = 0; i < 20000; i++) {
+            sketch.add("key" + (i % 200));
+            if (i % 10 == 0)
+                sketch.add("hot" + (i % 3));
+        }
+        List<Map.Entry<String, Long>> top = sketch.topK(3);
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : top) {
+            keys.add(entry.getKey());
+            Assert.assertTrue(entry.getValue() >= 666);
+        }
+        Assert.assertTrue(keys.containsAll(List.of("hot0", "hot1", "hot2")));
+    }
+
+    @Test
+    public void distinctEvictedElementsTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(100);
+        HyperLogLog<Integer> distinct = new HyperLogLog<>(12);
+        Counting<Integer> counting = new Counting<>();
+        queue.setListener(Summaries.all(Summaries.evicted(distinct), counting));
+        for (int i = 0; i < 50000; i++) {
+            queue.offer(i % 20000);
+        }
+        Assert.assertEquals(49900, counting.evicted.get());
+        Assert.assertEquals(100, counting.inWindow());
+        long estimate = distinct.estimate();
+        Assert.assertTrue("estimate " + estimate, Math.abs(estimate - 20000) < 20000 * 0.05);
+
+        HyperLogLog<Integer> small = new HyperLogLog<>(12);
+        for (int i = 0; i < 100; i++) {
+            small.add(i % 40);
+        }
+        Assert.assertEquals(40, small.estimate(), 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hyperLogLogCanNotFollowWindowTest() {
+        Summaries.window(new HyperLogLog<Integer>(4));
+    }
+
+    @Test
+    public void distinctElementsOfWindowTest() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(1000);
+        LinearCounter<Integer> distinct = new LinearCounter<>(1024);
+        queue.setListener(Summaries.window(distinct));
+        for (int i = 0; i < 20000; i++) {
+            queue.offer(i % 5000);
+        }
+        long estimate = distinct.estimate();
+        Assert.assertTrue("estimate " + estimate, Math.abs(estimate - 1000) < 1000 * 0.1);
+        // the last thousand now repeat 250 values
+        for (int i = 0; i < 1000; i++) {
+            queue.offer(i % 250);
+        }
+        estimate = distinct.estimate();
+        Assert.assertTrue("estimate " + estimate, Math.abs(estimate - 250) < 250 * 0.1);
+        queue.clear();
+        Assert.assertEquals(0, distinct.estimate());
+    }
+
+    @Test
+    public void throwingListenerLeavesQueueConsistentTest() throws Exception {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(1);
+        queue.setListener(new QueueListener<Integer>() {
+            public void inserted(Integer element) {
+            }
+
+            public void removed(Integer element) {
+            }
+
+            public void evicted(Integer element) {
+                throw new IllegalStateException("listener bug");
+            }
+        });
+        List<Throwable> uncaught = new ArrayList<>();
+        Thread thread = Thread.currentThread();
+        thread.setUncaughtExceptionHandler((t, e) -> uncaught.add(e));
+        try {
+            queue.offer(1);
+            queue.offer(2);
+        } finally {
+            thread.setUncaughtExceptionHandler(null);
+        }
+        Assert.assertEquals(1, uncaught.size());
+        Assert.assertEquals("listener bug", uncaught.get(0).getMessage());
+        Assert.assertEquals("[2]", queue.toString());
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals((Integer) 2, queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void windowQuantilesOfBlockingQueueTest() throws Exception {
+        MostRecentlyInsertedBlockingQueue<Long> queue = new MostRecentlyInsertedBlockingQueue<>(1000);
+        QuantileSketch<Long> latencies = new QuantileSketch<>(Long::longValue, 7);
+        queue.setListener(Summaries.window(latencies));
+        for (long i = 1; i <= 3000; i++) {
+            queue.offer(i * 1000);
+        }
+        // the window holds 2,001,000 to 3,000,000
+        Assert.assertEquals(1000, latencies.count());
+        assertClose(2_500_000, latencies.quantile(0.5));
+        assertClose(2_990_000, latencies.quantile(0.99));
+        assertClose(3_000_000, latencies.quantile(1));
+        List<Long> drained = new ArrayList<>();
+        queue.drainTo(drained, 500);
+        queue.take();
+        queue.removeIf(v -> v % 2000 == 0);
+        Assert.assertEquals(queue.size(), latencies.count());
+        assertClose(2_750_000, latencies.quantile(0.5));
+        queue.clear();
+        Assert.assertEquals(0, latencies.count());
+        Assert.assertEquals(0, latencies.quantile(0.5));
+    }
+
+    @Test
+    public void everyQueueReportsEachElementOnceTest() throws Exception {
+        Counting<Integer> core = new Counting<>();
+        MostRecentlyInsertedQueue<Integer> coreQueue = new MostRecentlyInsertedQueue<>(10);
+        coreQueue.setListener(core);
+        Counting<Integer> concurrent = new Counting<>();
+        ConcurrentMostRecentlyInsertedQueue<Integer> concurrentQueue = new ConcurrentMostRecentlyInsertedQueue<>(10);
+        concurrentQueue.setListener(concurrent);
+        Counting<Integer> blocking = new Counting<>();
+        MostRecentlyInsertedBlockingQueue<Integer> blockingQueue = new MostRecentlyInsertedBlockingQueue<>(10);
+        blockingQueue.setListener(blocking);
+
+        for (int i = 0; i < 25; i++) {
+            coreQueue.offer(i);
+            concurrentQueue.offer(i);
+            blockingQueue.offer(i);
+        }
+        coreQueue.poll();
+        concurrentQueue.poll();
+        blockingQueue.poll();
+        concurrentQueue.removeIf(i -> i % 2 == 0);
+        blockingQueue.remove(20);
+        blockingQueue.offerAll(List.of(100, 101, 102));
+
+        Assert.assertEquals(15, core.evicted.get());
+        Assert.assertEquals(1, core.removed.get());
+        Assert.assertEquals(coreQueue.size(), core.inWindow());
+        Assert.assertEquals(15, concurrent.evicted.get());
+        Assert.assertEquals(1 + 5, concurrent.removed.get());
+        Assert.assertEquals(concurrentQueue.size(), concurrent.inWindow());
+        Assert.assertEquals(15 + 1, blocking.evicted.get());
+        Assert.assertEquals(2, blocking.removed.get());
+        Assert.assertEquals(blockingQueue.size(), blocking.inWindow());
+    }
+
+    private static void assertClose(long expected, long actual) {
+        Assert.assertTrue("expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 50);
+    }
+}
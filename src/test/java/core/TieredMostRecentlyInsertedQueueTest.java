@@ -0,0 +1,112 @@
+package core;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class TieredMostRecentlyInsertedQueueTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private static TieredMostRecentlyInsertedQueue<Integer> queue(int capacity, int hot, int segment) {
+        return new TieredMostRecentlyInsertedQueue<>(capacity, hot, segment, CheckpointTest.INT_CODEC);
+    }
+
+    @Test
+    public void olderElementsAreFrozenTest() {
+        TieredMostRecentlyInsertedQueue<Integer> queue = queue(100, 10, 4);
+        for (int i = 0; i < 30; i++) {
+            queue.offer(i);
+        }
+        Assert.assertEquals(30, queue.size());
+        Assert.assertEquals(5, queue.segments());
+        List<Integer> seen = new ArrayList<>(queue);
+        for (int i = 0; i < 30; i++) {
+            Assert.assertEquals((Integer) i, seen.get(i));
+        }
+    }
+
+    @Test
+    public void pollDecodesInFifoOrderTest() {
+        TieredMostRecentlyInsertedQueue<Integer> queue = queue(100, 10, 4);
+        for (int i = 0; i < 30; i++) {
+            queue.offer(i);
+        }
+        Assert.assertEquals((Integer) 0, queue.peek());
+        for (int i = 0; i < 30; i++) {
+            Assert.assertEquals((Integer) i, queue.poll());
+            Assert.assertEquals(29 - i, queue.size());
+        }
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals(0, queue.segments());
+    }
+
+    @Test
+    public void fullQueueDropsOldestSegmentTest() {
+        TieredMostRecentlyInsertedQueue<Integer> queue = queue(20, 8, 4);
+        for (int i = 0; i < 20; i++) {
+            queue.offer(i);
+        }
+        Assert.assertEquals(20, queue.size());
+        queue.offer(20);
+        // elements 0 to 3 went with their segment
+        Assert.assertEquals(17, queue.size());
+        Assert.assertEquals((Integer) 4, queue.peek());
+        Assert.assertEquals((Integer) 20, new ArrayList<>(queue).get(16));
+    }
+
+    @Test
+    public void partlyPolledSegmentIsIteratedFromItsHeadTest() {
+        TieredMostRecentlyInsertedQueue<Integer> queue = queue(100, 4, 4);
+        for (int i = 0; i < 12; i++) {
+            queue.offer(i);
+        }
+        queue.poll();
+        queue.poll();
+        Assert.assertEquals("[2, 3, 4, 5, 6, 7, 8, 9, 10, 11]", queue.toString());
+    }
+
+    @Test
+    public void smallCapacityBehavesLikeCoreQueueTest() {
+        TieredMostRecentlyInsertedQueue<Integer> queue = queue(3, 3, 3);
+        for (int i = 1; i <= 5; i++) {
+            queue.offer(i);
+        }
+        Assert.assertEquals("[3, 4, 5]", queue.toString());
+    }
+
+    @Test
+    public void iteratorEndsTest() {
+        thrown.expect(NoSuchElementException.class);
+
+        TieredMostRecentlyInsertedQueue<Integer> queue = queue(10, 2, 1);
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+        Iterator<Integer> it = queue.iterator();
+        for (int i = 0; i < 4; i++) {
+            it.next();
+        }
+    }
+
+    @Test
+    public void emptyPollTest() {
+        thrown.expect(NoSuchElementException.class);
+
+        queue(10, 4, 2).poll();
+    }
+
+    @Test
+    public void invalidTiersTest() {
+        thrown.expect(IllegalArgumentException.class);
+
+        queue(10, 4, 8);
+    }
+}